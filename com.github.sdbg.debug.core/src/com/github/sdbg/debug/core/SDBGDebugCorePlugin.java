@@ -101,6 +101,19 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
 
   public static final String PREFS_EXCLUDE_FROM_LOGICAL_STRUCTURE = "excludeFromLogicalStructure";
 
+  public static final String PREFS_SCOPE_SNAPSHOT_DEPTH = "scopeSnapshotDepth";
+
+  /**
+   * The depth of the scope snapshots unless the preferences set it: only the variables of the local
+   * scopes are fetched when pausing, and their objects are expanded on demand.
+   */
+  public static final int DEFAULT_SCOPE_SNAPSHOT_DEPTH = 1;
+
+  /**
+   * The deepest scope snapshot the preferences offer.
+   */
+  public static final int MAX_SCOPE_SNAPSHOT_DEPTH = 3;
+
   private ServiceTracker<DebugOptions, Object> debugTracker;
 
   private IEclipsePreferences prefs;
@@ -251,6 +264,14 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     return prefs;
   }
 
+  /**
+   * @return how many levels of variables to fetch at once when the debugger pauses, for all the
+   *         stack frames; 0 to fetch the variables of each frame separately
+   */
+  public int getScopeSnapshotDepth() {
+    return getPrefs().getInt(PREFS_SCOPE_SNAPSHOT_DEPTH, DEFAULT_SCOPE_SNAPSHOT_DEPTH);
+  }
+
   public IUserAgentManager getUserAgentManager() {
     return userAgentManager;
   }
@@ -316,6 +337,16 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     getPrefs().putBoolean(PREFS_INVOKE_TOSTRING, value);
   }
 
+  public void setScopeSnapshotDepth(int value) {
+    getPrefs().putInt(PREFS_SCOPE_SNAPSHOT_DEPTH, value);
+
+    try {
+      getPrefs().flush();
+    } catch (BackingStoreException exception) {
+      logError(exception);
+    }
+  }
+
   public void setShowRunResumeDialogPref(boolean value) {
     getPrefs().putBoolean(PREFS_SHOW_RUN_RESUME_DIALOG, value);
   }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+/**
+ * The "mappings" of a source map, decoded on demand. The generated lines are grouped into blocks of
+ * {@link #LINES_PER_BLOCK} lines; only the offsets of the block boundaries are recorded up front.
+ * A block is decoded into its own {@link SourceMapEntryTable} when it is first asked for.
+ * <p>
+ * Since the VLQ fields are relative to the previous segment, decoding a block needs the running
+ * state at its start. These checkpoints are computed as far as needed, without recording the
+ * entries of the blocks in between.
+ * <p>
+ * The first blocks may already be decoded, when a map is found to be long only after they are
+ * read. The syntax of the rest is checked up front, so decoding a block never fails.
+ */
+class LazyMappings {
+  static final int LINES_PER_BLOCK = 64;
+
+  /**
+   * The mappings of the lines which are not already decoded, from the start of a block.
+   */
+  private CharSequence mappings;
+
+  /**
+   * The number of blocks which were already decoded when the mappings were created.
+   */
+  private int decodedBlocks;
+
+  private int lineCount;
+
+  /**
+   * The offset in {@link #mappings} of the first character of each block which is not already
+   * decoded; <code>blockStarts[blockCount]</code> is one past the end of the mappings.
+   */
+  private int[] blockStarts;
+
+  /**
+   * The running decoder state at the start of each block, for the first {@link #checkpointCount}
+   * blocks.
+   */
+  private int[] checkpoints;
+  private int checkpointCount;
+
+  private SourceMapEntryTable[] blocks;
+
+  LazyMappings(CharSequence mappings) {
+    this(new SourceMapEntryTable(0), 0, new int[MappingsDecoder.STATE_SIZE], mappings);
+  }
+
+  /**
+   * Create the mappings of a map whose first blocks of lines are already decoded.
+   * 
+   * @param decoded the entries of the first <code>decodedBlocks</code> blocks of lines
+   * @param state the running decoder state at the end of these blocks
+   * @param mappings the mappings of the following lines
+   */
+  LazyMappings(SourceMapEntryTable decoded, int decodedBlocks, int[] state, CharSequence mappings) {
+    this.mappings = mappings;
+    this.decodedBlocks = decodedBlocks;
+
+    // Check the syntax while counting the lines, so that a malformed map fails to load instead of
+    // failing a lookup once the bad block is decoded.
+    lineCount = decodedBlocks * LINES_PER_BLOCK + 1;
+    boolean continuation = false;
+    for (int i = 0; i < mappings.length(); i++) {
+      char c = mappings.charAt(i);
+
+      if (c == ',' || c == ';') {
+        checkComplete(continuation);
+
+        if (c == ';') {
+          lineCount++;
+        }
+      } else {
+        int digit = VlqDecoder.fromBase64(c);
+
+        if (digit == -1) {
+          throw new IllegalArgumentException("invalid character in source map mappings: '" + c
+              + "'");
+        }
+
+        continuation = (digit & VlqDecoder.VLQ_CONTINUATION_BIT) != 0;
+      }
+    }
+
+    checkComplete(continuation);
+
+    int blockCount = (lineCount + LINES_PER_BLOCK - 1) / LINES_PER_BLOCK;
+
+    blockStarts = new int[blockCount + 1];
+    blockStarts[blockCount] = mappings.length() + 1;
+
+    int line = 0;
+    for (int i = 0; i < mappings.length(); i++) {
+      if (mappings.charAt(i) == ';') {
+        line++;
+
+        if (line % LINES_PER_BLOCK == 0) {
+          blockStarts[decodedBlocks + line / LINES_PER_BLOCK] = i + 1;
+        }
+      }
+    }
+
+    // The state at the start of the first block which is not decoded is known.
+    checkpoints = new int[blockCount * MappingsDecoder.STATE_SIZE];
+    System.arraycopy(
+        state,
+        0,
+        checkpoints,
+        decodedBlocks * MappingsDecoder.STATE_SIZE,
+        MappingsDecoder.STATE_SIZE);
+    checkpointCount = decodedBlocks + 1;
+
+    blocks = new SourceMapEntryTable[blockCount];
+
+    // Split the decoded entries into their blocks.
+    int index = 0;
+    for (int block = 0; block < decodedBlocks; block++) {
+      int start = index;
+      while (index < decoded.size && decoded.lines[index] < (block + 1) * LINES_PER_BLOCK) {
+        index++;
+      }
+
+      blocks[block] = new SourceMapEntryTable(index - start);
+      blocks[block].addAll(decoded, start, index);
+    }
+  }
+
+  int getBlockCount() {
+    return blocks.length;
+  }
+
+  /**
+   * Return the number of blocks which were already decoded when the mappings were created.
+   */
+  int getDecodedBlockCount() {
+    return decodedBlocks;
+  }
+
+  /**
+   * Return the entries of the blocks which were already decoded when the mappings were created.
+   */
+  SourceMapEntryTable getDecodedEntries() {
+    int size = 0;
+    for (int block = 0; block < decodedBlocks; block++) {
+      size += blocks[block].size();
+    }
+
+    SourceMapEntryTable table = new SourceMapEntryTable(size);
+
+    for (int block = 0; block < decodedBlocks; block++) {
+      table.addAll(blocks[block], 0, blocks[block].size());
+    }
+
+    return table;
+  }
+
+  /**
+   * Return the mappings of the lines which were not already decoded when the mappings were created.
+   */
+  CharSequence getMappings() {
+    return mappings;
+  }
+
+  /**
+   * Return the running decoder state at the start of {@link #getMappings()}.
+   */
+  int[] getState() {
+    int[] state = new int[MappingsDecoder.STATE_SIZE];
+    System.arraycopy(
+        checkpoints,
+        decodedBlocks * MappingsDecoder.STATE_SIZE,
+        state,
+        0,
+        MappingsDecoder.STATE_SIZE);
+
+    return state;
+  }
+
+  int getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Return the decoded entries of the given block, or null if there is no such block.
+   */
+  synchronized SourceMapEntryTable getBlock(int block) {
+    if (block < 0 || block >= blocks.length) {
+      return null;
+    }
+
+    if (blocks[block] == null) {
+      while (checkpointCount <= block) {
+        decodeBlock(checkpointCount - 1, null);
+      }
+
+      blocks[block] = decodeBlock(block, new SourceMapEntryTable(
+          (blockStarts[block + 1] - blockStarts[block]) / 6));
+    }
+
+    return blocks[block];
+  }
+
+  /**
+   * Decode all the blocks into a single table.
+   */
+  SourceMapEntryTable decodeAll() {
+    int decodedSize = 0;
+    for (int block = 0; block < decodedBlocks; block++) {
+      decodedSize += blocks[block].size();
+    }
+
+    SourceMapEntryTable table = new SourceMapEntryTable(decodedSize + mappings.length() / 6);
+
+    for (int block = 0; block < decodedBlocks; block++) {
+      table.addAll(blocks[block], 0, blocks[block].size());
+    }
+
+    MappingsDecoder decoder = new MappingsDecoder(
+        table,
+        decodedBlocks * LINES_PER_BLOCK,
+        checkpoints,
+        decodedBlocks * MappingsDecoder.STATE_SIZE);
+
+    for (int i = 0; i < mappings.length(); i++) {
+      decoder.append(mappings.charAt(i));
+    }
+
+    return decoder.finish();
+  }
+
+  private void checkComplete(boolean continuation) {
+    if (continuation) {
+      throw new IllegalArgumentException("truncated VLQ value in source map mappings at line "
+          + (lineCount - 1));
+    }
+  }
+
+  private SourceMapEntryTable decodeBlock(int block, SourceMapEntryTable table) {
+    MappingsDecoder decoder = new MappingsDecoder(
+        table,
+        block * LINES_PER_BLOCK,
+        checkpoints,
+        block * MappingsDecoder.STATE_SIZE);
+
+    // Leave out the ';' which ends the last line of the block.
+    int end = Math.min(blockStarts[block + 1] - 1, mappings.length());
+    for (int i = blockStarts[block]; i < end; i++) {
+      decoder.append(mappings.charAt(i));
+    }
+
+    table = decoder.finish();
+
+    if (block + 1 == checkpointCount && checkpointCount < blocks.length) {
+      decoder.saveState(checkpoints, checkpointCount * MappingsDecoder.STATE_SIZE);
+      checkpointCount++;
+    }
+
+    return table;
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+/**
+ * A single-pass decoder for the "mappings" field of a source map. Unlike {@link SourceMapDecoder},
+ * it walks the mappings character by character and writes the decoded segments straight into a
+ * {@link SourceMapEntryTable}, without splitting the string or boxing the VLQ values.
+ * <p>
+ * The decoder keeps its state between calls to {@link #append(char[], int, int)}, so the mappings
+ * can be fed to it in chunks as they are read. It can also be started in the middle of the mappings
+ * from a saved state (see {@link #saveState(int[], int)}), and can run without a table to only
+ * track that state.
+ */
+class MappingsDecoder {
+
+  public static SourceMapEntryTable decode(CharSequence mappings) {
+    MappingsDecoder decoder = new MappingsDecoder(mappings.length() / 6);
+
+    for (int i = 0; i < mappings.length(); i++) {
+      decoder.append(mappings.charAt(i));
+    }
+
+    return decoder.finish();
+  }
+
+  // A segment has 1, 4 or 5 fields; any further fields are ignored.
+  private static final int MAX_FIELDS = 5;
+
+  /**
+   * The number of ints written by {@link #saveState(int[], int)}.
+   */
+  static final int STATE_SIZE = 4;
+
+  private SourceMapEntryTable table;
+
+  // The state of the VLQ value being decoded.
+  private int value;
+  private int shift;
+
+  // The fields of the segment being decoded.
+  private int[] fields = new int[MAX_FIELDS];
+  private int fieldCount;
+
+  private int line;
+  private int generatedColumn;
+  private int previousEntry = -1;
+
+  private int originalFileIndex;
+  private int originalLine;
+  private int originalColumn;
+  private int nameIndex;
+
+  MappingsDecoder(int capacity) {
+    table = new SourceMapEntryTable(capacity);
+  }
+
+  /**
+   * Create a decoder starting at the beginning of the given line, with the running state saved by
+   * {@link #saveState(int[], int)}. If the table is null, the segments are decoded but not
+   * recorded.
+   */
+  MappingsDecoder(SourceMapEntryTable table, int line, int[] state, int offset) {
+    this.table = table;
+    this.line = line;
+
+    originalFileIndex = state[offset];
+    originalLine = state[offset + 1];
+    originalColumn = state[offset + 2];
+    nameIndex = state[offset + 3];
+  }
+
+  void append(char c) {
+    // In the given string, semi-colons demarcate lines and commas demarcate groups.
+    // A;A;;;;;;;A;A;;A;A;A,mB,W,C,C,I,C,C;A,cAyVEA;AAAiB,QAAK,MAAFC
+
+    if (c == ',') {
+      endSegment();
+    } else if (c == ';') {
+      endSegment();
+
+      line++;
+      generatedColumn = 0;
+      previousEntry = -1;
+    } else {
+      int digit = VlqDecoder.fromBase64(c);
+
+      if (digit == -1) {
+        throw new IllegalArgumentException("invalid character in source map mappings: '" + c + "'");
+      }
+
+      value += (digit & VlqDecoder.VLQ_BASE_MASK) << shift;
+
+      if ((digit & VlqDecoder.VLQ_CONTINUATION_BIT) != 0) {
+        shift += VlqDecoder.VLQ_BASE_SHIFT;
+      } else {
+        if (fieldCount < MAX_FIELDS) {
+          fields[fieldCount] = VlqDecoder.fromVLQSigned(value);
+        }
+
+        fieldCount++;
+        value = 0;
+        shift = 0;
+      }
+    }
+  }
+
+  void append(char[] chars, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      append(chars[i]);
+    }
+  }
+
+  SourceMapEntryTable finish() {
+    endSegment();
+
+    if (table != null) {
+      table.trimToSize();
+    }
+
+    return table;
+  }
+
+  /**
+   * Save the running state - the fields which are relative to the previous segment, across lines.
+   * This should be called at the start of a line.
+   */
+  void saveState(int[] state, int offset) {
+    state[offset] = originalFileIndex;
+    state[offset + 1] = originalLine;
+    state[offset + 2] = originalColumn;
+    state[offset + 3] = nameIndex;
+  }
+
+  private void endSegment() {
+    if (shift != 0) {
+      throw new IllegalArgumentException("truncated VLQ value in source map mappings at line "
+          + line);
+    }
+
+    if (fieldCount == 1 || fieldCount == 4 || fieldCount == 5) {
+      generatedColumn += fields[0];
+
+      if (previousEntry != -1) {
+        table.endColumns[previousEntry] = generatedColumn;
+      }
+
+      if (fieldCount >= 4) {
+        originalFileIndex += fields[1];
+        originalLine += fields[2];
+        originalColumn += fields[3];
+
+        int entryNameIndex = -1;
+
+        if (fieldCount > 4) {
+          nameIndex += fields[4];
+          entryNameIndex = nameIndex;
+        }
+
+        if (table != null) {
+          previousEntry = table.add(
+              line,
+              generatedColumn,
+              originalFileIndex,
+              originalLine,
+              originalColumn,
+              entryNameIndex);
+        }
+      }
+    }
+
+    fieldCount = 0;
+  }
+
+}
@@ -14,16 +14,15 @@
 
 package com.github.sdbg.debug.core.internal.sourcemaps;
 
-import com.github.sdbg.utilities.Streams;
-
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.core.resources.IFile;
@@ -49,6 +48,12 @@ public class SourceMap {
 
   public static final String SOURCE_MAP_EXT = ".map";
 
+  /**
+   * Source maps whose mappings are at least this long are decoded lazily, one block of lines at a
+   * time.
+   */
+  static final int LAZY_DECODING_THRESHOLD = 1024 * 1024;
+
   private IPath path;
 
   /**
@@ -85,56 +90,76 @@ public class SourceMap {
   private String sourcesContent[];
 
   /**
-   * The full list of source map entries.
+   * The full list of source map entries, stored column-wise. This is null while the entries are
+   * decoded lazily.
    */
-  private SourceMapInfoEntry[] entries;
+  private volatile SourceMapEntryTable entries;
 
-  public static SourceMap createFrom(File file) throws IOException {
-    String contents = Streams.loadAndClose(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+  /**
+   * The lazily decoded mappings, if the map is not fully decoded.
+   */
+  private volatile LazyMappings lazyMappings;
 
-    try {
-      return createFrom(Path.fromOSString(file.getAbsolutePath()), contents);
-    } catch (JSONException e) {
-      throw new IOException(e);
-    }
+  /**
+   * The index from original source lines back to the entries; built lazily.
+   */
+  private SourceMapReverseIndex reverseIndex;
+
+  public static SourceMap createFrom(File file) throws IOException {
+    return createFrom(
+        Path.fromOSString(file.getAbsolutePath()),
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
   }
 
   public static SourceMap createFrom(IStorage storage) throws IOException, CoreException {
+    return createFrom(storage, storage.getContents());
+  }
+
+  /**
+   * Read a source map from the given contents of the storage. The stream is read to its end, so it
+   * can be hashed while the map is parsed.
+   */
+  public static SourceMap createFrom(IStorage storage, InputStream in) throws IOException,
+      CoreException {
     Reader reader;
     if (storage instanceof IFile) {
-      reader = new InputStreamReader(storage.getContents(), ((IFile) storage).getCharset());
+      reader = new InputStreamReader(in, ((IFile) storage).getCharset());
     } else {
-      reader = new InputStreamReader(storage.getContents());
+      reader = new InputStreamReader(in);
     }
 
+    return createFrom(storage.getFullPath(), reader);
+  }
+
+  /**
+   * Read a source map from the given reader, which is read to its end and closed afterwards. The map is streamed: the
+   * document is never held in memory as a whole.
+   */
+  static SourceMap createFrom(IPath path, Reader reader) throws IOException {
     try {
-      String contents = Streams.loadAndClose(reader);
+      SourceMapReader mapReader = new SourceMapReader(reader, LAZY_DECODING_THRESHOLD);
+      mapReader.read();
+
+      // Skip anything after the map, such as a trailing newline.
+      char[] buf = new char[1024];
+      while (reader.read(buf) >= 0) {
+      }
 
-      return createFrom(storage.getFullPath(), contents);
-    } catch (JSONException e) {
-      throw new IOException(e);
+      return new SourceMap(path, mapReader);
     } finally {
       reader.close();
     }
   }
 
-  private static SourceMap createFrom(IPath path, JSONObject jsonObject) throws JSONException {
-    return new SourceMap(path, jsonObject);
-  }
-
-  private static SourceMap createFrom(IPath path, String contents) throws JSONException {
-    if (contents.startsWith(")]}")) {
-      contents = contents.substring(3);
-    }
-
-    return createFrom(path, new JSONObject(contents));
-  }
-
   public SourceMap() {
 
   }
 
   public SourceMap(IPath path, JSONObject obj) throws JSONException {
+    this(path, obj, obj.getString("mappings").length() >= LAZY_DECODING_THRESHOLD);
+  }
+
+  SourceMap(IPath path, JSONObject obj, boolean lazy) throws JSONException {
     // {
     //     version : 3,
     //     file: "out.js",
@@ -154,17 +179,48 @@ public class SourceMap {
     sourcesContent = parseStringArray(obj.optJSONArray("sourcesContent"));
     names = parseStringArray(obj.getJSONArray("names"));
 
-    // Prepend sourceRoot to the sources entries.
-    if (sourceRoot != null && sourceRoot.length() > 0) {
-      for (int i = 0; i < sources.length; i++) {
-        sources[i] = sourceRoot + sources[i];
-      }
-    }
+    prependSourceRoot();
 
     String mapStr = obj.getString("mappings");
 
-    List<SourceMapInfoEntry> result = SourceMapDecoder.decode(sources, names, mapStr);
-    entries = result.toArray(new SourceMapInfoEntry[result.size()]);
+    if (lazy) {
+      lazyMappings = new LazyMappings(mapStr);
+    } else {
+      entries = MappingsDecoder.decode(mapStr);
+    }
+  }
+
+  SourceMap(IPath path, SourceMapReader reader) {
+    this.path = path;
+
+    version = reader.getVersion();
+    file = reader.getFile();
+    sourceRoot = reader.getSourceRoot();
+
+    sources = reader.getSources();
+    names = reader.getNames();
+
+    prependSourceRoot();
+
+    entries = reader.getEntries();
+    lazyMappings = reader.getLazyMappings();
+  }
+
+  /**
+   * Create a source map from its decoded parts, as stored by the {@link SourceMapCache}. The
+   * sources are expected to already include the source root. Either the entries or the lazily
+   * decoded mappings are given.
+   */
+  SourceMap(IPath path, int version, String file, String sourceRoot, String[] sources,
+      String[] names, SourceMapEntryTable entries, LazyMappings lazyMappings) {
+    this.path = path;
+    this.version = version;
+    this.file = file;
+    this.sourceRoot = sourceRoot;
+    this.sources = sources;
+    this.names = names;
+    this.entries = entries;
+    this.lazyMappings = lazyMappings;
   }
 
   public String getFile() {
@@ -179,34 +235,48 @@ public class SourceMap {
    * @return the corresponding location in the original source
    */
   public SourceMapInfo getMappingFor(int line, int column) {
-    int index = findIndexForLine(line);
+    LazyMappings lazy = lazyMappings;
+    SourceMapEntryTable table = entries;
+
+    int block = 0;
+    if (table == null) {
+      block = line / LazyMappings.LINES_PER_BLOCK;
+      table = lazy.getBlock(block);
+    } else {
+      lazy = null;
+    }
+
+    int index = table != null ? findIndexForLine(table, line) : -1;
 
     if (index == -1) {
       return null;
     }
 
-    SourceMapInfoEntry entry = entries[index];
-
     // If column == -1, return the first mapping for that line.
     if (column == -1) {
-      return entry.getInfo();
+      return createInfo(table, index);
     }
 
     // Search for a matching mapping.
-    while (index < entries.length) {
-      entry = entries[index];
-
-      if (entry.column <= column) {
-        if (entry.endColumn == -1) {
-          return entry.getInfo();
-        }
-
-        if (column < entry.endColumn) {
-          return entry.getInfo();
+    while (table != null) {
+      int[] columns = table.columns;
+      int[] endColumns = table.endColumns;
+
+      for (; index < table.size; index++) {
+        if (columns[index] <= column) {
+          if (endColumns[index] == -1) {
+            return createInfo(table, index);
+          }
+
+          if (column < endColumns[index]) {
+            return createInfo(table, index);
+          }
         }
       }
 
-      index++;
+      // Continue with the following lines.
+      table = lazy != null ? lazy.getBlock(++block) : null;
+      index = 0;
     }
 
     // no mapping found
@@ -236,36 +306,31 @@ public class SourceMap {
   }
 
   /**
-   * Map from a location in a source file to a location in the generated source file.
+   * Map from a location in a source file to the locations in the generated source file. A source
+   * line can map to several generated lines; one location is returned for each of them, in generated
+   * order.
    * 
    * @param file
    * @param line
-   * @param column
    * @return
    */
   public List<SourceMapInfo> getReverseMappingsFor(String file, int line) {
-    // TODO(devoncarew): calculate this information once for O(1) lookup
-    for (SourceMapInfoEntry entry : entries) {
-      SourceMapInfo info = entry.getInfo();
+    SourceMapReverseIndex index = getReverseIndex();
 
-      if (info == null) {
-        continue;
-      }
-
-      if (line == info.getLine()) {
-        if (file.equals(info.getFile())) {
-          // TODO(devoncarew): there will be several entries on this line
-          // We need to choose one that has a non-zero range, or is a catch-all entry
+    List<SourceMapInfo> result = new ArrayList<SourceMapInfo>();
 
-          return Collections.singletonList(new SourceMapInfo(
+    for (int i = 0; i < sources.length; i++) {
+      if (file.equals(sources[i])) {
+        for (int entry : index.find(i, line)) {
+          result.add(new SourceMapInfo(
               path.toString(),
-              entry.line,
-              entry.column));
+              index.getEntries().lines[entry],
+              index.getEntries().columns[entry]));
         }
       }
     }
 
-    return Collections.emptyList();
+    return result;
   }
 
   public String[] getSourceNames() {
@@ -285,39 +350,110 @@ public class SourceMap {
 
   @Override
   public String toString() {
+    SourceMapEntryTable table = entries;
+
+    if (table == null) {
+      return "[" + getPath().lastSegment() + ", "
+          + NumberFormat.getNumberInstance().format(lazyMappings.getLineCount())
+          + " lines, lazily decoded]";
+    }
+
     return "[" + getPath().lastSegment() + ", "
-        + NumberFormat.getNumberInstance().format(entries.length) + " lines]";
+        + NumberFormat.getNumberInstance().format(table.size()) + " lines]";
+  }
+
+  /**
+   * Create the SourceMapInfo for the entry at the given index. These are created on demand, so that
+   * only the packed entry table needs to be kept in memory.
+   */
+  private SourceMapInfo createInfo(SourceMapEntryTable table, int index) {
+    SourceMapInfo info = new SourceMapInfo(
+        getString(sources, table.sourceIndexes[index]),
+        table.originalLines[index],
+        table.originalColumns[index]);
+
+    if (table.nameIndexes[index] != -1) {
+      info.setName(getString(names, table.nameIndexes[index]));
+    }
+
+    return info;
+  }
+
+  /**
+   * The reverse index is only needed once breakpoints are set in the original sources, so it is
+   * built on first use. It needs all the entries, so a lazily decoded map is fully decoded first.
+   */
+  private synchronized SourceMapReverseIndex getReverseIndex() {
+    if (reverseIndex == null) {
+      if (entries == null) {
+        entries = lazyMappings.decodeAll();
+        lazyMappings = null;
+      }
+
+      reverseIndex = new SourceMapReverseIndex(entries, sources.length);
+    }
+
+    return reverseIndex;
   }
 
-  private int findIndexForLine(int line) {
-    // TODO(devoncarew): test this binary search
+  /**
+   * Return all the entries of the map. Unlike {@link #getReverseIndex()}, this does not keep the
+   * fully decoded entries of a lazily decoded map.
+   */
+  SourceMapEntryTable decodeAllEntries() {
+    LazyMappings lazy = lazyMappings;
+    SourceMapEntryTable table = entries;
+
+    return table != null ? table : lazy.decodeAll();
+  }
+
+  /**
+   * Return the entries of the map, or null if it is decoded lazily.
+   */
+  SourceMapEntryTable getEntries() {
+    return entries;
+  }
+
+  /**
+   * Return the lazily decoded mappings of the map, or null if it is fully decoded.
+   */
+  LazyMappings getLazyMappings() {
+    return lazyMappings;
+  }
+
+  String[] getNames() {
+    return names;
+  }
 
-    int location = Arrays.binarySearch(
-        entries,
-        SourceMapInfoEntry.forLine(line),
-        SourceMapInfoEntry.lineComparator());
+  private int findIndexForLine(SourceMapEntryTable table, int line) {
+    int location = Arrays.binarySearch(table.lines, 0, table.size, line);
 
     if (location < 0) {
       return -1;
     }
 
-    while (location > 0 && entries[location - 1].line == line) {
+    while (location > 0 && table.lines[location - 1] == line) {
       location--;
     }
 
     return location;
+  }
+
+  private String getString(String[] strs, int index) {
+    if (index >= 0 && index < strs.length) {
+      return strs[index];
+    } else {
+      return null;
+    }
+  }
 
-//    for (int i = 0; i < entries.length; i++) {
-//      SourceMapInfoEntry entry = entries[i];
-//
-//      if (entry.line == line) {
-//        return i;
-//      } else if (entry.line > line) {
-//        return -1;
-//      }
-//    }
-//
-//    return -1;
+  private void prependSourceRoot() {
+    // Prepend sourceRoot to the sources entries.
+    if (sourceRoot != null && sourceRoot.length() > 0) {
+      for (int i = 0; i < sources.length; i++) {
+        sources[i] = sourceRoot + sources[i];
+      }
+    }
   }
 
   private String[] parseStringArray(JSONArray arr) throws JSONException {
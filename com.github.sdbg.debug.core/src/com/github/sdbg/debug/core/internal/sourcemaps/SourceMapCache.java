@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.util.Trace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * A persistent cache of decoded source maps, kept in the plugin's state location across debug
+ * sessions. Each map is stored in a compact binary file holding its sources, names and packed entry
+ * table, keyed by a hash of the map's contents. Files are read back through a memory-mapped
+ * {@link FileChannel}. The entry columns are copied into the heap, as the lookups work on arrays;
+ * the encoded mappings of a lazily decoded map are decoded straight from the mapped file instead.
+ * <p>
+ * The total size of the cache is bounded; the least recently used maps are evicted first.
+ */
+public class SourceMapCache {
+  /**
+   * The encoded mappings of a lazily decoded map, read in place from the mapped cache file. They
+   * are base64 characters and separators, so each byte is a character.
+   */
+  private static class MappedMappings implements CharSequence {
+    private final ByteBuffer buffer;
+
+    MappedMappings(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) buffer.get(index);
+    }
+
+    @Override
+    public int length() {
+      return buffer.limit();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(start);
+      slice.limit(end);
+
+      return new MappedMappings(slice.slice());
+    }
+
+    @Override
+    public String toString() {
+      char[] chars = new char[length()];
+
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = charAt(i);
+      }
+
+      return new String(chars);
+    }
+  }
+
+  private static final int MAGIC = 0x53444d43; // "SDMC"
+  private static final int FORMAT_VERSION = 2;
+
+  private static final String EXTENSION = ".smc";
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+  private static final int COLUMN_COUNT = 7;
+
+  private static SourceMapCache cache;
+
+  /**
+   * Compute the cache key for the given map contents; the stream is closed afterwards.
+   */
+  public static String computeKey(InputStream in) throws IOException {
+    try {
+      MessageDigest digest = createDigest();
+
+      byte[] buf = new byte[8192];
+      for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+        digest.update(buf, 0, read);
+      }
+
+      return getKey(digest);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Compute the cache key for a map in a local file from its path, size and modification time, so
+   * the key is known without reading the map. A file which is changed gets a new modification time,
+   * and so a new key.
+   */
+  public static String computeKey(File file) throws IOException {
+    MessageDigest digest = createDigest();
+
+    String stamp = file.getAbsolutePath() + "\n" + file.length() + "\n" + file.lastModified();
+    digest.update(stamp.getBytes("UTF-8"));
+
+    return getKey(digest);
+  }
+
+  /**
+   * Create the digest from which the cache key of map contents is computed, e.g. to hash the
+   * contents while they are parsed.
+   */
+  public static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Return the cache key of the contents hashed into the given digest. This is the SHA-1 digest of
+   * the contents as a hex string, so the digests computed by the URL content cache are valid keys.
+   */
+  public static String getKey(MessageDigest digest) {
+    StringBuilder builder = new StringBuilder();
+
+    for (byte b : digest.digest()) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * @return the shared cache, or null if the plugin is not running
+   */
+  public static synchronized SourceMapCache getCache() {
+    if (cache == null && SDBGDebugCorePlugin.getPlugin() != null) {
+      cache = new SourceMapCache(
+          SDBGDebugCorePlugin.getPlugin().getStateLocation().append("sourcemaps").toFile(),
+          DEFAULT_MAX_SIZE);
+    }
+
+    return cache;
+  }
+
+  private static String readString(ByteBuffer buffer) throws IOException {
+    int length = buffer.getInt();
+
+    if (length == -1) {
+      return null;
+    }
+
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+
+    return new String(bytes, "UTF-8");
+  }
+
+  private static String[] readStrings(ByteBuffer buffer) throws IOException {
+    String[] strs = new String[buffer.getInt()];
+
+    for (int i = 0; i < strs.length; i++) {
+      strs[i] = readString(buffer);
+    }
+
+    return strs;
+  }
+
+  private static void trace(String message) {
+    Trace.trace(Trace.SOURCEMAPS, message);
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = str.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strs) throws IOException {
+    out.writeInt(strs.length);
+
+    for (String str : strs) {
+      writeString(out, str);
+    }
+  }
+
+  private File directory;
+
+  private long maxSize;
+
+  public SourceMapCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+
+    deleteTempFiles();
+  }
+
+  /**
+   * Return the cached map with the given key, or null if it is not in the cache. Cached files are
+   * never changed once written, so they are read without holding the cache lock.
+   */
+  public SourceMap get(String key, IPath path) {
+    File file = getFile(key);
+
+    if (!file.exists()) {
+      return null;
+    }
+
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+      try {
+        FileChannel channel = raf.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        SourceMap map = read(buffer, key, path);
+
+        // Keep track of the use, for the eviction order.
+        file.setLastModified(System.currentTimeMillis());
+
+        trace("Loaded cached sourcemap: " + path);
+
+        return map;
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      trace("Reading cached sourcemap " + file + " failed: " + e.getMessage());
+    } catch (RuntimeException e) {
+      // A truncated or otherwise corrupt file.
+      trace("Reading cached sourcemap " + file + " failed: " + e);
+    }
+
+    file.delete();
+
+    return null;
+  }
+
+  /**
+   * Store the given map in the cache in the background.
+   */
+  public void put(final String key, final SourceMap map) {
+    Job job = new Job("Caching source map") {
+      @Override
+      protected IStatus run(IProgressMonitor monitor) {
+        try {
+          write(key, map);
+        } catch (IOException e) {
+          trace("Caching sourcemap " + map.getPath() + " failed: " + e.getMessage());
+        }
+
+        return Status.OK_STATUS;
+      }
+    };
+
+    job.setSystem(true);
+    job.setPriority(Job.DECORATE);
+    job.schedule();
+  }
+
+  /**
+   * Evict the least recently used maps until the cache is within its size bound. A map which can
+   * not be deleted is still in use, i.e. mapped by a loaded map on Windows; it is skipped, and more
+   * recently used maps are evicted instead.
+   */
+  synchronized void evict() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(EXTENSION);
+      }
+    });
+
+    if (files == null) {
+      return;
+    }
+
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+      }
+    });
+
+    for (int i = 0; i < files.length && size > maxSize; i++) {
+      long length = files[i].length();
+
+      if (files[i].delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  /**
+   * Write the given map to the cache. A lazily decoded map is written as it is, along with its
+   * encoded mappings, so it is not decoded just to be cached.
+   * <p>
+   * The map is written to a temporary file of its own, outside of the cache lock. A cached file is
+   * never replaced: its key identifies its contents, and it may still be mapped by a loaded map,
+   * which keeps it from being deleted or renamed over on Windows.
+   */
+  void write(String key, SourceMap map) throws IOException {
+    File file = getFile(key);
+
+    if (file.exists()) {
+      file.setLastModified(System.currentTimeMillis());
+      return;
+    }
+
+    LazyMappings lazy = map.getLazyMappings();
+    SourceMapEntryTable entries = lazy != null ? lazy.getDecodedEntries() : map.getEntries();
+    CharSequence mappings = lazy != null ? lazy.getMappings() : "";
+
+    if (entries.size() * 4L * COLUMN_COUNT + mappings.length() > maxSize) {
+      return;
+    }
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(header);
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    writeString(out, key);
+    out.writeInt(map.getVersion());
+    writeString(out, map.getFile());
+    writeString(out, map.getSourceRoot());
+    writeStrings(out, map.getSourceNames());
+    writeStrings(out, map.getNames());
+
+    // The number of blocks already decoded by the lazy mappings, or -1 for a fully decoded map.
+    if (lazy != null) {
+      out.writeInt(lazy.getDecodedBlockCount());
+
+      for (int value : lazy.getState()) {
+        out.writeInt(value);
+      }
+    } else {
+      out.writeInt(-1);
+    }
+
+    out.writeInt(mappings.length());
+    out.writeInt(entries.size());
+    out.close();
+
+    directory.mkdirs();
+
+    File tempFile = File.createTempFile("write-" + key, TEMP_EXTENSION, directory);
+
+    FileOutputStream stream = new FileOutputStream(tempFile);
+
+    try {
+      FileChannel channel = stream.getChannel();
+
+      channel.write(ByteBuffer.wrap(header.toByteArray()));
+
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      IntBuffer intBuffer = buffer.asIntBuffer();
+
+      for (int[] column : getColumns(entries)) {
+        for (int offset = 0; offset < entries.size(); offset += intBuffer.capacity()) {
+          int length = Math.min(intBuffer.capacity(), entries.size() - offset);
+
+          intBuffer.clear();
+          intBuffer.put(column, offset, length);
+
+          buffer.clear();
+          buffer.limit(length * 4);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      }
+
+      // The mappings are base64 characters and separators, so they are written as ASCII.
+      for (int offset = 0; offset < mappings.length(); offset += buffer.capacity()) {
+        int length = Math.min(buffer.capacity(), mappings.length() - offset);
+
+        buffer.clear();
+        for (int i = 0; i < length; i++) {
+          buffer.put((byte) mappings.charAt(offset + i));
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    } catch (IOException e) {
+      stream.close();
+      tempFile.delete();
+
+      throw e;
+    }
+
+    stream.close();
+
+    synchronized (this) {
+      if (file.exists()) {
+        // Written by another job in the meantime.
+        tempFile.delete();
+        return;
+      }
+
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+        throw new IOException("Unable to rename " + tempFile + " to " + file);
+      }
+    }
+
+    trace("Cached sourcemap " + map.getPath() + " as " + file.getName());
+
+    evict();
+  }
+
+  /**
+   * Delete the temporary files left behind by writes which never completed, e.g. because the
+   * workbench crashed.
+   */
+  private void deleteTempFiles() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(TEMP_EXTENSION);
+      }
+    });
+
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  private int[][] getColumns(SourceMapEntryTable entries) {
+    return new int[][] {
+        entries.lines, entries.columns, entries.endColumns, entries.sourceIndexes,
+        entries.originalLines, entries.originalColumns, entries.nameIndexes};
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + EXTENSION);
+  }
+
+  private SourceMap read(ByteBuffer buffer, String key, IPath path) throws IOException {
+    if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+        || !key.equals(readString(buffer))) {
+      throw new IOException("unknown format");
+    }
+
+    int version = buffer.getInt();
+    String file = readString(buffer);
+    String sourceRoot = readString(buffer);
+    String[] sources = readStrings(buffer);
+    String[] names = readStrings(buffer);
+
+    int decodedBlocks = buffer.getInt();
+
+    int[] state = null;
+    if (decodedBlocks != -1) {
+      state = new int[MappingsDecoder.STATE_SIZE];
+
+      for (int i = 0; i < state.length; i++) {
+        state[i] = buffer.getInt();
+      }
+    }
+
+    int mappingsLength = buffer.getInt();
+
+    SourceMapEntryTable entries = SourceMapEntryTable.createWithSize(buffer.getInt());
+
+    IntBuffer intBuffer = buffer.slice().asIntBuffer();
+    for (int[] column : getColumns(entries)) {
+      intBuffer.get(column);
+    }
+
+    if (state == null) {
+      return new SourceMap(path, version, file, sourceRoot, sources, names, entries, null);
+    }
+
+    buffer.position(buffer.position() + entries.size() * 4 * COLUMN_COUNT);
+
+    // The mapping stays valid once the file is closed. Cache files are replaced rather than written
+    // to, so the mapped contents never change.
+    ByteBuffer mappings = buffer.slice();
+    mappings.limit(mappingsLength);
+
+    return new SourceMap(path, version, file, sourceRoot, sources, names, null, new LazyMappings(
+        entries,
+        decodedBlocks,
+        state,
+        new MappedMappings(mappings)));
+  }
+
+}
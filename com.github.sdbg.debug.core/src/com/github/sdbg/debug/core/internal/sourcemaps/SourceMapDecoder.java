@@ -17,6 +17,11 @@ package com.github.sdbg.debug.core.internal.sourcemaps;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A straightforward decoder for the "mappings" field of a source map, which splits the mappings
+ * into lines and segments. Source maps are decoded with the allocation-free
+ * {@link MappingsDecoder}; this class is kept as the reference it is verified against.
+ */
 class SourceMapDecoder {
 
   public static List<SourceMapInfoEntry> decode(String[] sources, String[] names, String mapStr) {
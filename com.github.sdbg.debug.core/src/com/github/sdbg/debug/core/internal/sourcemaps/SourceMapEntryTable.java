@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.util.Arrays;
+
+/**
+ * The decoded entries of a source map, stored column-wise in parallel primitive arrays. Entry
+ * <code>i</code> is described by the <code>i</code>th element of each column. Entries are ordered by
+ * generated line.
+ */
+class SourceMapEntryTable {
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * The number of entries in the table.
+   */
+  int size;
+
+  /**
+   * The generated line.
+   */
+  int[] lines;
+
+  /**
+   * The starting generated column (inclusive).
+   */
+  int[] columns;
+
+  /**
+   * The ending generated column (non-inclusive), or -1 if the entry extends to the end of the line.
+   */
+  int[] endColumns;
+
+  /**
+   * The index into the source map's "sources" list.
+   */
+  int[] sourceIndexes;
+
+  /**
+   * The line in the original source.
+   */
+  int[] originalLines;
+
+  /**
+   * The column in the original source.
+   */
+  int[] originalColumns;
+
+  /**
+   * The index into the source map's "names" list, or -1 if the entry has no name.
+   */
+  int[] nameIndexes;
+
+  /**
+   * Create a table of exactly the given number of entries, whose columns are to be filled in.
+   */
+  static SourceMapEntryTable createWithSize(int size) {
+    SourceMapEntryTable table = new SourceMapEntryTable();
+    table.allocate(size);
+    table.size = size;
+
+    return table;
+  }
+
+  SourceMapEntryTable(int capacity) {
+    allocate(Math.max(capacity, MIN_CAPACITY));
+  }
+
+  private SourceMapEntryTable() {
+  }
+
+  /**
+   * Append an entry with an open end column.
+   *
+   * @return the index of the new entry
+   */
+  int add(int line, int column, int sourceIndex, int originalLine, int originalColumn,
+      int nameIndex) {
+    if (size == lines.length) {
+      resize(Math.max(size + (size >> 1), MIN_CAPACITY));
+    }
+
+    lines[size] = line;
+    columns[size] = column;
+    endColumns[size] = -1;
+    sourceIndexes[size] = sourceIndex;
+    originalLines[size] = originalLine;
+    originalColumns[size] = originalColumn;
+    nameIndexes[size] = nameIndex;
+
+    return size++;
+  }
+
+  /**
+   * Append the entries of the given range of another table.
+   */
+  void addAll(SourceMapEntryTable table, int from, int to) {
+    int count = to - from;
+
+    if (size + count > lines.length) {
+      resize(Math.max(size + count, size + (size >> 1)));
+    }
+
+    System.arraycopy(table.lines, from, lines, size, count);
+    System.arraycopy(table.columns, from, columns, size, count);
+    System.arraycopy(table.endColumns, from, endColumns, size, count);
+    System.arraycopy(table.sourceIndexes, from, sourceIndexes, size, count);
+    System.arraycopy(table.originalLines, from, originalLines, size, count);
+    System.arraycopy(table.originalColumns, from, originalColumns, size, count);
+    System.arraycopy(table.nameIndexes, from, nameIndexes, size, count);
+
+    size += count;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Release any unused capacity.
+   */
+  void trimToSize() {
+    if (size < lines.length) {
+      resize(size);
+    }
+  }
+
+  private void allocate(int capacity) {
+    lines = new int[capacity];
+    columns = new int[capacity];
+    endColumns = new int[capacity];
+    sourceIndexes = new int[capacity];
+    originalLines = new int[capacity];
+    originalColumns = new int[capacity];
+    nameIndexes = new int[capacity];
+  }
+
+  private void resize(int capacity) {
+    lines = Arrays.copyOf(lines, capacity);
+    columns = Arrays.copyOf(columns, capacity);
+    endColumns = Arrays.copyOf(endColumns, capacity);
+    sourceIndexes = Arrays.copyOf(sourceIndexes, capacity);
+    originalLines = Arrays.copyOf(originalLines, capacity);
+    originalColumns = Arrays.copyOf(originalColumns, capacity);
+    nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+  }
+
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A streaming reader for version 3 source maps. It pulls the fields it needs straight from the
+ * reader, feeding the "mappings" to a {@link MappingsDecoder} as they are read, and skips everything
+ * else (such as "sourcesContent") without materializing it.
+ * <p>
+ * Mappings are decoded while they are read. Once they are longer than the lazy decoding threshold,
+ * the lines which follow the current block are only kept, and decoded on demand by
+ * {@link LazyMappings}.
+ */
+class SourceMapReader {
+  private static final int BUFFER_SIZE = 8192;
+
+  private Reader reader;
+  private int lazyThreshold;
+
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+
+  private StringBuilder builder = new StringBuilder();
+
+  private int version;
+  private String file = "";
+  private String sourceRoot = "";
+  private String[] sources;
+  private String[] names;
+
+  private SourceMapEntryTable entries;
+  private LazyMappings lazyMappings;
+
+  SourceMapReader(Reader reader, int lazyThreshold) {
+    this.reader = reader;
+    this.lazyThreshold = lazyThreshold;
+  }
+
+  String getFile() {
+    return file;
+  }
+
+  SourceMapEntryTable getEntries() {
+    return entries;
+  }
+
+  LazyMappings getLazyMappings() {
+    return lazyMappings;
+  }
+
+  String[] getNames() {
+    return names;
+  }
+
+  String getSourceRoot() {
+    return sourceRoot;
+  }
+
+  String[] getSources() {
+    return sources;
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  /**
+   * Read the source map.
+   */
+  void read() throws IOException {
+    skipXssiPrefix();
+
+    expect('{');
+
+    if (peek() == '}') {
+      next();
+    } else {
+      do {
+        String key = readString();
+
+        expect(':');
+
+        if (key.equals("version")) {
+          version = readInt();
+        } else if (key.equals("file")) {
+          file = readOptionalString();
+        } else if (key.equals("sourceRoot")) {
+          sourceRoot = readOptionalString();
+        } else if (key.equals("sources")) {
+          sources = readStringArray();
+        } else if (key.equals("names")) {
+          names = readStringArray();
+        } else if (key.equals("mappings")) {
+          readMappings();
+        } else {
+          skipValue();
+        }
+      } while (readSeparator('}'));
+    }
+
+    if (sources == null || names == null || (entries == null && lazyMappings == null)) {
+      throw new IOException("Source map is missing its sources, names or mappings");
+    }
+  }
+
+  private IOException error(String message) {
+    return new IOException("Malformed source map: " + message);
+  }
+
+  private void expect(char c) throws IOException {
+    if (peek() != c) {
+      throw error("expected '" + c + "'");
+    }
+
+    next();
+  }
+
+  private boolean fill() throws IOException {
+    limit = reader.read(buffer, 0, buffer.length);
+    position = 0;
+
+    if (limit <= 0) {
+      limit = 0;
+      return false;
+    }
+
+    return true;
+  }
+
+  private char next() throws IOException {
+    if (position == limit && !fill()) {
+      throw error("unexpected end of input");
+    }
+
+    return buffer[position++];
+  }
+
+  /**
+   * Skip any whitespace, and return the next character without consuming it, or -1 at the end of
+   * the input.
+   */
+  private int peek() throws IOException {
+    while (true) {
+      if (position == limit && !fill()) {
+        return -1;
+      }
+
+      char c = buffer[position];
+
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+        position++;
+      } else {
+        return c;
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    char c = next();
+
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(next(), 16);
+          if (digit == -1) {
+            throw error("invalid unicode escape");
+          }
+          value = (value << 4) + digit;
+        }
+        return (char) value;
+      default:
+        return c;
+    }
+  }
+
+  private int readInt() throws IOException {
+    builder.setLength(0);
+    while (peek() == '-' || Character.isDigit(peek())) {
+      builder.append(next());
+    }
+
+    try {
+      return Integer.parseInt(builder.toString());
+    } catch (NumberFormatException e) {
+      throw error("expected an integer");
+    }
+  }
+
+  private void readMappings() throws IOException {
+    expect('"');
+
+    MappingsDecoder decoder = new MappingsDecoder(BUFFER_SIZE);
+    int length = 0;
+    int line = 0;
+
+    // Once the mappings turn out to be long, the following lines are only kept, to be decoded on
+    // demand; the lines read so far are decoded already.
+    SourceMapEntryTable decoded = null;
+    int[] state = null;
+    StringBuilder mappings = null;
+
+    try {
+      for (char c = next(); c != '"'; c = next()) {
+        if (c == '\\') {
+          c = readEscape();
+        }
+
+        if (mappings != null) {
+          mappings.append(c);
+        } else {
+          decoder.append(c);
+          length++;
+
+          if (c == ';') {
+            line++;
+
+            if (length >= lazyThreshold && line % LazyMappings.LINES_PER_BLOCK == 0) {
+              state = new int[MappingsDecoder.STATE_SIZE];
+              decoder.saveState(state, 0);
+              decoded = decoder.finish();
+              mappings = new StringBuilder();
+            }
+          }
+        }
+      }
+
+      if (mappings == null) {
+        entries = decoder.finish();
+        lazyMappings = null;
+      } else {
+        // The builder is kept as it is rather than copied into a string.
+        entries = null;
+        lazyMappings = new LazyMappings(
+            decoded,
+            line / LazyMappings.LINES_PER_BLOCK,
+            state,
+            mappings);
+      }
+    } catch (IllegalArgumentException e) {
+      throw error(e.getMessage());
+    }
+  }
+
+  private String readOptionalString() throws IOException {
+    if (peek() == 'n') {
+      skipValue();
+      return "";
+    } else {
+      return readString();
+    }
+  }
+
+  /**
+   * Read a ',' and return true, or read the given closing character and return false.
+   */
+  private boolean readSeparator(char close) throws IOException {
+    int c = peek();
+
+    if (c == ',') {
+      next();
+      return true;
+    } else if (c == close) {
+      next();
+      return false;
+    } else {
+      throw error("expected ',' or '" + close + "'");
+    }
+  }
+
+  private String readString() throws IOException {
+    expect('"');
+
+    builder.setLength(0);
+    for (char c = next(); c != '"'; c = next()) {
+      builder.append(c == '\\' ? readEscape() : c);
+    }
+
+    return builder.toString();
+  }
+
+  private String[] readStringArray() throws IOException {
+    List<String> strs = new ArrayList<String>();
+
+    expect('[');
+
+    if (peek() == ']') {
+      next();
+    } else {
+      do {
+        if (peek() == 'n') {
+          skipValue();
+          strs.add(null);
+        } else {
+          strs.add(readString());
+        }
+      } while (readSeparator(']'));
+    }
+
+    return strs.toArray(new String[strs.size()]);
+  }
+
+  private void skipValue() throws IOException {
+    int c = peek();
+
+    if (c == '"') {
+      next();
+      for (char ch = next(); ch != '"'; ch = next()) {
+        if (ch == '\\') {
+          next();
+        }
+      }
+    } else if (c == '{' || c == '[') {
+      char close = c == '{' ? '}' : ']';
+
+      next();
+
+      if (peek() == close) {
+        next();
+      } else {
+        do {
+          if (close == '}') {
+            readString();
+            expect(':');
+          }
+
+          skipValue();
+        } while (readSeparator(close));
+      }
+    } else if (c != -1) {
+      // A number, true, false or null.
+      while (peek() != -1 && "{}[],:\"".indexOf(peek()) == -1) {
+        next();
+      }
+    } else {
+      throw error("unexpected end of input");
+    }
+  }
+
+  /**
+   * Skip the ")]}" line which servers may prepend to the map, to prevent it from being evaluated as
+   * a script (XSSI). The rest of that line, if any, is skipped up to the start of the map.
+   */
+  private void skipXssiPrefix() throws IOException {
+    if (peek() == ')') {
+      expect(')');
+      expect(']');
+      expect('}');
+
+      while (peek() != -1 && peek() != '{') {
+        next();
+      }
+    }
+  }
+
+}
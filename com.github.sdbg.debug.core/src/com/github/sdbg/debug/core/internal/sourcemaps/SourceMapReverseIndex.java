@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+/**
+ * An index from original locations (source, line) back to the entries of a
+ * {@link SourceMapEntryTable}. The entry indexes are sorted by source, then by original line, and
+ * then by generated location, so all the entries for a given source line are adjacent.
+ */
+class SourceMapReverseIndex {
+  private SourceMapEntryTable entries;
+
+  /**
+   * The entry indexes, ordered by source, original line and generated location.
+   */
+  private int[] order;
+
+  /**
+   * For each source, the position in {@link #order} where its entries start; the entries of source
+   * <code>i</code> are in <code>[sourceStarts[i], sourceStarts[i + 1])</code>.
+   */
+  private int[] sourceStarts;
+
+  SourceMapReverseIndex(SourceMapEntryTable entries, int sourceCount) {
+    this.entries = entries;
+
+    int maxLine = -1;
+    int count = 0;
+
+    for (int i = 0; i < entries.size; i++) {
+      if (isIndexable(i, sourceCount)) {
+        maxLine = Math.max(maxLine, entries.originalLines[i]);
+        count++;
+      }
+    }
+
+    int[] byLine = new int[count];
+
+    // Two stable counting sorts: by original line, then by source. The entries start out in
+    // generated order, so that order is kept within each source line.
+    int[] starts = new int[maxLine + 2];
+    for (int i = 0; i < entries.size; i++) {
+      if (isIndexable(i, sourceCount)) {
+        starts[entries.originalLines[i] + 1]++;
+      }
+    }
+    for (int i = 1; i < starts.length; i++) {
+      starts[i] += starts[i - 1];
+    }
+    for (int i = 0; i < entries.size; i++) {
+      if (isIndexable(i, sourceCount)) {
+        byLine[starts[entries.originalLines[i]]++] = i;
+      }
+    }
+
+    order = new int[count];
+    sourceStarts = new int[sourceCount + 1];
+    for (int index : byLine) {
+      sourceStarts[entries.sourceIndexes[index] + 1]++;
+    }
+    for (int i = 1; i < sourceStarts.length; i++) {
+      sourceStarts[i] += sourceStarts[i - 1];
+    }
+
+    starts = sourceStarts.clone();
+    for (int index : byLine) {
+      order[starts[entries.sourceIndexes[index]]++] = index;
+    }
+  }
+
+  SourceMapEntryTable getEntries() {
+    return entries;
+  }
+
+  /**
+   * Return the indexes of the entries that map to the given line of the given source, at most one
+   * per generated line. The entries are returned in generated order; for each generated line, the
+   * entry with the lowest column is chosen.
+   */
+  int[] find(int sourceIndex, int line) {
+    int low = sourceStarts[sourceIndex];
+    int high = sourceStarts[sourceIndex + 1];
+
+    // Find the first entry for the line.
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+
+      if (entries.originalLines[order[mid]] < line) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int end = low;
+    int count = 0;
+
+    for (int previousLine = -1; end < sourceStarts[sourceIndex + 1]
+        && entries.originalLines[order[end]] == line; end++) {
+      if (entries.lines[order[end]] != previousLine) {
+        previousLine = entries.lines[order[end]];
+        count++;
+      }
+    }
+
+    int[] result = new int[count];
+    count = 0;
+
+    for (int i = low, previousLine = -1; i < end; i++) {
+      if (entries.lines[order[i]] != previousLine) {
+        previousLine = entries.lines[order[i]];
+        result[count++] = order[i];
+      }
+    }
+
+    return result;
+  }
+
+  private boolean isIndexable(int index, int sourceCount) {
+    return entries.sourceIndexes[index] >= 0 && entries.sourceIndexes[index] < sourceCount
+        && entries.originalLines[index] >= 0;
+  }
+
+}
@@ -28,6 +28,13 @@ public class DOMResourceTrackersManager {
     trackers.clear();
   }
 
+  /**
+   * @return whether any tracker is installed
+   */
+  public boolean hasTrackers() {
+    return trackers != null && !trackers.isEmpty();
+  }
+
   protected void initialize(IProject project, IDOMResources domResources) {
     trackers = new ArrayList<IDOMResourceTracker>();
     IExtensionPoint extensionPoint = Platform.getExtensionRegistry().getExtensionPoint(
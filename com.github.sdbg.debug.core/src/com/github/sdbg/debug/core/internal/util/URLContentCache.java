@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.util;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.util.Trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A cache of the resources fetched over HTTP, such as source maps and the sources they refer to.
+ * <p>
+ * Every fetch is revalidated with a conditional request (If-None-Match / If-Modified-Since); when
+ * the server answers that the resource is unchanged, the cached bytes are returned instead. The
+ * contents are stored by their SHA-1 digest, so identical resources served from several URLs are
+ * kept once. Small contents are also kept in memory; both the memory and the disk usage are
+ * bounded, and the least recently used contents and entries are evicted first. Only the most
+ * recently used entries are kept in memory; the others are read from disk again when needed.
+ */
+public class URLContentCache {
+  /**
+   * The cached contents of a resource, along with their digest.
+   */
+  private static class DigestedInputStream extends FilterInputStream {
+    final String digest;
+
+    DigestedInputStream(InputStream in, String digest) {
+      super(in);
+      this.digest = digest;
+    }
+  }
+
+  /**
+   * The validators of a cached resource, and the digest of its contents.
+   */
+  private static class Entry {
+    final String eTag;
+    final long lastModified;
+    final String digest;
+
+    Entry(String eTag, long lastModified, String digest) {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+  }
+
+  public static final long DEFAULT_MEMORY_SIZE = 32L * 1024 * 1024;
+  public static final long DEFAULT_DISK_SIZE = 256L * 1024 * 1024;
+
+  /**
+   * The number of entries kept in memory.
+   */
+  private static final int MAX_MEMORY_ENTRIES = 1024;
+
+  private static final String CONTENT_EXTENSION = ".bin";
+  private static final String ENTRY_EXTENSION = ".properties";
+
+  private static final String TEMP_PREFIX = "fetch";
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  private static URLContentCache cache;
+
+  /**
+   * @return the shared cache; it is kept on disk as long as the plugin is running
+   */
+  public static synchronized URLContentCache getCache() {
+    if (cache == null) {
+      File directory = null;
+
+      if (SDBGDebugCorePlugin.getPlugin() != null) {
+        directory = SDBGDebugCorePlugin.getPlugin().getStateLocation().append("http").toFile();
+      }
+
+      cache = new URLContentCache(directory, DEFAULT_MEMORY_SIZE, DEFAULT_DISK_SIZE);
+    }
+
+    return cache;
+  }
+
+  /**
+   * Return the SHA-1 digest, as a hex string, of the contents served by
+   * {@link #getContents(URI)}. The digest is known without reading the contents whenever they come
+   * from the cache or were just stored in it; null is returned otherwise.
+   */
+  public static String getDigest(InputStream in) {
+    return in instanceof DigestedInputStream ? ((DigestedInputStream) in).digest : null;
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return builder.toString();
+  }
+
+  private static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static boolean isCacheable(URI uri) {
+    return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+  }
+
+  private static void trace(String message) {
+    Trace.trace(Trace.SOURCEMAPS, message);
+  }
+
+  private File directory;
+
+  private long maxMemorySize;
+  private long maxDiskSize;
+
+  /**
+   * The entries kept in memory, in access order.
+   */
+  @SuppressWarnings("serial")
+  private Map<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+      return size() > MAX_MEMORY_ENTRIES;
+    }
+  };
+
+  /**
+   * The contents kept in memory, by digest, in access order.
+   */
+  private LinkedHashMap<String, byte[]> contents = new LinkedHashMap<String, byte[]>(
+      16,
+      0.75f,
+      true);
+  private long memorySize;
+
+  /**
+   * The size of the files on disk, as far as it is known; -1 until the directory is first scanned.
+   * The directory is only scanned again once this exceeds its bound.
+   */
+  private long diskSize = -1;
+
+  /**
+   * @param directory the directory to keep the cache in, or null to keep it in memory only
+   */
+  public URLContentCache(File directory, long maxMemorySize, long maxDiskSize) {
+    this.directory = directory;
+    this.maxMemorySize = maxMemorySize;
+    this.maxDiskSize = maxDiskSize;
+
+    deleteTempFiles();
+  }
+
+  /**
+   * Return the contents of the given URI. HTTP resources are served from the cache if the server
+   * confirms they are unchanged; other URIs are simply opened.
+   */
+  public InputStream getContents(URI uri) throws IOException {
+    if (!isCacheable(uri)) {
+      return uri.toURL().openStream();
+    }
+
+    Entry entry = getEntry(uri);
+
+    URLConnection connection = uri.toURL().openConnection();
+
+    if (entry != null) {
+      if (entry.eTag != null) {
+        connection.setRequestProperty("If-None-Match", entry.eTag);
+      }
+
+      if (entry.lastModified != 0) {
+        connection.setIfModifiedSince(entry.lastModified);
+      }
+    }
+
+    if (entry != null && isNotModified(connection)) {
+      InputStream in = getContents(entry.digest);
+
+      if (in != null) {
+        trace("Not modified, serving " + uri + " from the cache");
+        return new DigestedInputStream(in, entry.digest);
+      }
+
+      // The contents were evicted; fetch them again.
+      removeEntry(uri);
+      ((HttpURLConnection) connection).disconnect();
+
+      return getContents(uri);
+    }
+
+    return fetch(uri, connection);
+  }
+
+  /**
+   * Evict the least recently used contents and entries until the disk usage is within its bound.
+   * An entry whose contents are evicted is dropped the next time it is used.
+   */
+  synchronized void evict() {
+    if (directory == null || diskSize != -1 && diskSize <= maxDiskSize) {
+      return;
+    }
+
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(CONTENT_EXTENSION)
+            || file.getName().endsWith(ENTRY_EXTENSION);
+      }
+    });
+
+    if (files == null) {
+      return;
+    }
+
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+      }
+    });
+
+    for (int i = 0; i < files.length && size > maxDiskSize; i++) {
+      long length = files[i].length();
+
+      if (files[i].delete()) {
+        size -= length;
+      }
+    }
+
+    diskSize = size;
+  }
+
+  private synchronized void addDiskSize(long delta) {
+    if (diskSize != -1) {
+      diskSize += delta;
+    }
+  }
+
+  private synchronized void addContents(String digest, byte[] bytes) {
+    if (contents.put(digest, bytes) == null) {
+      memorySize += bytes.length;
+    }
+
+    for (Iterator<byte[]> iter = contents.values().iterator(); iter.hasNext()
+        && memorySize > maxMemorySize;) {
+      memorySize -= iter.next().length;
+      iter.remove();
+    }
+  }
+
+  /**
+   * Delete the temporary files left behind by fetches which never completed, e.g. because the
+   * workbench crashed.
+   */
+  private void deleteTempFiles() {
+    if (directory == null) {
+      return;
+    }
+
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().startsWith(TEMP_PREFIX) && file.getName().endsWith(TEMP_EXTENSION);
+      }
+    });
+
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  private InputStream fetch(URI uri, URLConnection connection) throws IOException {
+    // Keep the contents in memory as well, unless they would take too much of it.
+    int length = connection.getContentLength();
+    ByteArrayOutputStream bytes = length <= maxMemorySize / 4 ? new ByteArrayOutputStream(
+        Math.max(length, 32)) : null;
+
+    if (bytes == null && directory == null) {
+      // Nowhere to cache the contents; serve them as they are.
+      return connection.getInputStream();
+    }
+
+    MessageDigest digest = createDigest();
+
+    File tempFile = null;
+    OutputStream out = null;
+
+    if (directory != null) {
+      directory.mkdirs();
+      tempFile = File.createTempFile(TEMP_PREFIX, TEMP_EXTENSION, directory);
+      out = new FileOutputStream(tempFile);
+    }
+
+    InputStream in = connection.getInputStream();
+
+    try {
+      byte[] buffer = new byte[8192];
+
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+
+        if (bytes != null) {
+          bytes.write(buffer, 0, read);
+
+          if (bytes.size() > maxMemorySize / 4) {
+            if (out == null) {
+              // Nowhere to cache the contents; serve them as they are.
+              return new SequenceInputStream(new ByteArrayInputStream(bytes.toByteArray()), in);
+            }
+
+            bytes = null;
+          }
+        }
+
+        if (out != null) {
+          out.write(buffer, 0, read);
+        }
+      }
+
+      in.close();
+    } catch (IOException e) {
+      in.close();
+
+      if (out != null) {
+        out.close();
+        tempFile.delete();
+      }
+
+      throw e;
+    }
+
+    String hex = toHex(digest.digest());
+
+    File file = null;
+    if (out != null) {
+      out.close();
+
+      file = getContentFile(hex);
+
+      if (file.exists()) {
+        tempFile.delete();
+        file.setLastModified(System.currentTimeMillis());
+      } else if (tempFile.renameTo(file)) {
+        addDiskSize(file.length());
+      } else {
+        tempFile.delete();
+        file = null;
+      }
+    }
+
+    byte[] data = null;
+    if (bytes != null) {
+      data = bytes.toByteArray();
+      addContents(hex, data);
+    }
+
+    String eTag = connection.getHeaderField("ETag");
+    long lastModified = connection.getLastModified();
+
+    if ((eTag != null || lastModified != 0) && (data != null || file != null)) {
+      putEntry(uri, new Entry(eTag, lastModified, hex));
+    }
+
+    trace("Fetched " + uri);
+
+    InputStream result;
+    if (data != null) {
+      result = new ByteArrayInputStream(data);
+    } else if (file != null) {
+      result = new FileInputStream(file);
+    } else {
+      throw new IOException("Unable to store the contents of " + uri);
+    }
+
+    if (file != null) {
+      evict();
+    }
+
+    return new DigestedInputStream(result, hex);
+  }
+
+  private boolean isNotModified(URLConnection connection) throws IOException {
+    if (connection instanceof HttpURLConnection) {
+      int responseCode = ((HttpURLConnection) connection).getResponseCode();
+      return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    } else {
+      return false;
+    }
+  }
+
+  private File getContentFile(String digest) {
+    return new File(directory, digest + CONTENT_EXTENSION);
+  }
+
+  private InputStream getContents(String digest) throws IOException {
+    synchronized (this) {
+      byte[] bytes = contents.get(digest);
+
+      if (bytes != null) {
+        return new ByteArrayInputStream(bytes);
+      }
+    }
+
+    if (directory != null) {
+      File file = getContentFile(digest);
+
+      if (file.exists()) {
+        // Keep track of the use, for the eviction order.
+        file.setLastModified(System.currentTimeMillis());
+
+        try {
+          return new FileInputStream(file);
+        } catch (IOException e) {
+          // Evicted in the meantime.
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private synchronized Entry getEntry(URI uri) {
+    Entry entry = entries.get(uri);
+
+    if (directory != null) {
+      File file = getEntryFile(uri);
+
+      if (entry == null && file.exists()) {
+        try {
+          Properties properties = new Properties();
+          InputStream in = new FileInputStream(file);
+
+          try {
+            properties.load(in);
+          } finally {
+            in.close();
+          }
+
+          if (uri.toString().equals(properties.getProperty("uri"))) {
+            entry = new Entry(
+                properties.getProperty("etag"),
+                Long.parseLong(properties.getProperty("lastModified", "0")),
+                properties.getProperty("digest"));
+            entries.put(uri, entry);
+          }
+        } catch (IOException e) {
+          file.delete();
+        } catch (NumberFormatException e) {
+          file.delete();
+        }
+      }
+
+      if (entry != null) {
+        // Keep track of the use, for the eviction order.
+        file.setLastModified(System.currentTimeMillis());
+      }
+    }
+
+    return entry;
+  }
+
+  private File getEntryFile(URI uri) {
+    try {
+      return new File(directory, toHex(createDigest().digest(uri.toString().getBytes("UTF-8")))
+          + ENTRY_EXTENSION);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private synchronized void putEntry(URI uri, Entry entry) {
+    entries.put(uri, entry);
+
+    if (directory != null) {
+      Properties properties = new Properties();
+      properties.setProperty("uri", uri.toString());
+      if (entry.eTag != null) {
+        properties.setProperty("etag", entry.eTag);
+      }
+      properties.setProperty("lastModified", Long.toString(entry.lastModified));
+      properties.setProperty("digest", entry.digest);
+
+      File file = getEntryFile(uri);
+      long oldLength = file.length();
+
+      try {
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+          properties.store(out, null);
+        } finally {
+          out.close();
+        }
+
+        addDiskSize(file.length() - oldLength);
+      } catch (IOException e) {
+        trace("Caching " + uri + " failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private synchronized void removeEntry(URI uri) {
+    entries.remove(uri);
+
+    if (directory != null) {
+      File file = getEntryFile(uri);
+      long length = file.length();
+
+      if (file.delete()) {
+        addDiskSize(-length);
+      }
+    }
+  }
+
+}
@@ -4,6 +4,9 @@ import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import org.eclipse.core.resources.IStorage;
@@ -12,11 +15,25 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.PlatformObject;
 
+/**
+ * An IStorage for a resource identified by a URI. HTTP resources are fetched through the shared
+ * {@link URLContentCache}.
+ * <p>
+ * The storages are compared by their URIs; unlike URL equality, this never does a DNS lookup.
+ */
 public class URLStorage extends PlatformObject implements IStorage {
-  private URL url;
+  private URI uri;
+
+  public URLStorage(URI uri) {
+    this.uri = uri;
+  }
 
   public URLStorage(URL url) {
-    this.url = url;
+    try {
+      this.uri = url.toURI();
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
   }
 
   @Override
@@ -31,11 +48,11 @@ public class URLStorage extends PlatformObject implements IStorage {
       return false;
     }
     URLStorage other = (URLStorage) obj;
-    if (url == null) {
-      if (other.url != null) {
+    if (uri == null) {
+      if (other.uri != null) {
         return false;
       }
-    } else if (!url.equals(other.url)) {
+    } else if (!uri.equals(other.uri)) {
       return false;
     }
     return true;
@@ -44,7 +61,7 @@ public class URLStorage extends PlatformObject implements IStorage {
   @Override
   public InputStream getContents() throws CoreException {
     try {
-      return url.openStream();
+      return URLContentCache.getCache().getContents(uri);
     } catch (IOException e) {
       throw SDBGDebugCorePlugin.wrapError(e);
     }
@@ -52,7 +69,7 @@ public class URLStorage extends PlatformObject implements IStorage {
 
   @Override
   public IPath getFullPath() {
-    return Path.fromPortableString(url.getPath());
+    return Path.fromPortableString(uri.getPath());
   }
 
   @Override
@@ -60,15 +77,23 @@ public class URLStorage extends PlatformObject implements IStorage {
     return getFullPath().lastSegment();
   }
 
+  public URI getURI() {
+    return uri;
+  }
+
   public URL getURL() {
-    return url;
+    try {
+      return uri.toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((url == null) ? 0 : url.hashCode());
+    result = prime * result + ((uri == null) ? 0 : uri.hashCode());
     return result;
   }
 
@@ -79,6 +104,6 @@ public class URLStorage extends PlatformObject implements IStorage {
 
   @Override
   public String toString() {
-    return "URLStorage[" + url + "]";
+    return "URLStorage[" + uri + "]";
   }
 }
@@ -17,6 +17,7 @@ package com.github.sdbg.debug.core.internal.webkit.model;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.breakpoints.IBreakpointPathResolver;
 import com.github.sdbg.debug.core.breakpoints.SDBGBreakpoint;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitBatch;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitBreakpoint;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitLocation;
@@ -97,8 +98,15 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
   private Map<IBreakpoint, List<String>> breakpointToIdMap = new HashMap<IBreakpoint, List<String>>();
 
+  /**
+   * Guarded by the {@link #breakpointToIdMap} lock, like the map itself: breakpoints are added from
+   * the source map loader threads and resolved on the event dispatcher thread.
+   */
   private Map<String, IBreakpoint> breakpointsToUpdateMap = new HashMap<String, IBreakpoint>();
 
+  /**
+   * Guarded by the {@link #breakpointToIdMap} lock.
+   */
   private List<IBreakpoint> ignoredBreakpoints = new ArrayList<IBreakpoint>();
 
   static synchronized Collection<IBreakpointPathResolver> getBreakpointPathResolvers() {
@@ -120,6 +128,15 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
     return breakpointPathResolvers;
   }
 
+  /**
+   * Use the given resolvers instead of the contributed ones, or look them up again if null. The
+   * tests run without the extension registry.
+   */
+  static synchronized void setBreakpointPathResolvers(
+      Collection<IBreakpointPathResolver> resolvers) {
+    breakpointPathResolvers = resolvers;
+  }
+
   public BreakpointManager(WebkitDebugTarget debugTarget) {
     this.debugTarget = debugTarget;
   }
@@ -127,7 +144,7 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void addBreakpointsConcerningScript(IStorage script) {
     SourceMapManager sourceMapManager = debugTarget.getSourceMapManager();
-    for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
+    for (IBreakpoint breakpoint : getBreakpoints()) {
       if (!isJSBreakpoint(breakpoint)
           && sourceMapManager.isMapTarget(script, getBreakpointPath(breakpoint))) {
         breakpointAdded(breakpoint);
@@ -154,9 +171,10 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
     // We generate this change event in the handleBreakpointResolved() method - ignore one
     // instance of the event.
-    if (ignoredBreakpoints.contains(breakpoint)) {
-      ignoredBreakpoints.remove(breakpoint);
-      return;
+    synchronized (breakpointToIdMap) {
+      if (ignoredBreakpoints.remove(breakpoint)) {
+        return;
+      }
     }
 
     if (debugTarget.supportsBreakpoint(breakpoint)) {
@@ -168,12 +186,19 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void breakpointRemoved(IBreakpoint breakpoint, IMarkerDelta delta) {
     if (debugTarget.supportsBreakpoint(breakpoint)) {
-      List<String> breakpointIds = breakpointToIdMap.remove(breakpoint);
+      List<String> breakpointIds;
+      synchronized (breakpointToIdMap) {
+        breakpointIds = breakpointToIdMap.remove(breakpoint);
+
+        if (breakpointIds != null) {
+          for (String breakpointId : breakpointIds) {
+            breakpointsToUpdateMap.remove(breakpointId);
+          }
+        }
+      }
 
       if (breakpointIds != null) {
         for (String breakpointId : breakpointIds) {
-          breakpointsToUpdateMap.remove(breakpointId);
-
           try {
             debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(breakpointId);
           } catch (IOException exception) {
@@ -189,10 +214,17 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void connect() throws IOException {
     IBreakpoint[] breakpoints = DebugPlugin.getDefault().getBreakpointManager().getBreakpoints();
-    for (IBreakpoint breakpoint : breakpoints) {
-      if (debugTarget.supportsBreakpoint(breakpoint)) {
-        addBreakpoint(breakpoint);
+
+    WebkitBatch batch = debugTarget.getWebkitConnection().beginBatch();
+
+    try {
+      for (IBreakpoint breakpoint : breakpoints) {
+        if (debugTarget.supportsBreakpoint(breakpoint)) {
+          addBreakpoint(breakpoint);
+        }
       }
+    } finally {
+      batch.end();
     }
 
     DebugPlugin.getDefault().getBreakpointManager().addBreakpointListener(this);
@@ -203,14 +235,20 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
     // Null check for when the editor is shutting down.
     if (DebugPlugin.getDefault() != null) {
       if (deleteAll) {
-        try {
-          for (List<String> ids : breakpointToIdMap.values()) {
-            if (ids != null) {
-              for (String id : ids) {
-                debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(id);
-              }
+        // The source map loader threads may still be adding ids; remove a copy of them.
+        List<String> ids = new ArrayList<String>();
+        synchronized (breakpointToIdMap) {
+          for (List<String> breakpointIds : breakpointToIdMap.values()) {
+            if (breakpointIds != null) {
+              ids.addAll(breakpointIds);
             }
           }
+        }
+
+        try {
+          for (String id : ids) {
+            debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(id);
+          }
         } catch (IOException exception) {
           if (!debugTarget.isTerminated()) {
             SDBGDebugCorePlugin.logError(exception);
@@ -272,7 +310,10 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void handleBreakpointResolved(WebkitBreakpoint webkitBreakpoint) {
     try {
-      IBreakpoint bp = breakpointsToUpdateMap.get(webkitBreakpoint.getBreakpointId());
+      IBreakpoint bp;
+      synchronized (breakpointToIdMap) {
+        bp = breakpointsToUpdateMap.get(webkitBreakpoint.getBreakpointId());
+      }
 
       if (bp != null && bp instanceof ILineBreakpoint) {
         ILineBreakpoint breakpoint = (ILineBreakpoint) bp;
@@ -280,7 +321,9 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
         int eclipseLine = WebkitLocation.webkitToElipseLine(webkitBreakpoint.getLocation().getLineNumber());
 
         if (breakpoint.getLineNumber() != eclipseLine) {
-          ignoredBreakpoints.add(breakpoint);
+          synchronized (breakpointToIdMap) {
+            ignoredBreakpoints.add(breakpoint);
+          }
 
           String message = "[breakpoint in "
               + (breakpoint instanceof SDBGBreakpoint ? ((SDBGBreakpoint) breakpoint).getName()
@@ -298,20 +341,26 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
   @Override
   public void handleGlobalObjectCleared() {
-    for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
-      if (!isJSBreakpoint(breakpoint)) {
-        // This excercise is necessary so that the V8 breakpoints are removed 
-        // and re-added later when the sourcemaps are re-parsed
-        breakpointRemoved(breakpoint, null/*delta*/);
-        breakpointAdded(breakpoint);
+    WebkitBatch batch = debugTarget.getWebkitConnection().beginBatch();
+
+    try {
+      for (IBreakpoint breakpoint : getBreakpoints()) {
+        if (!isJSBreakpoint(breakpoint)) {
+          // This excercise is necessary so that the V8 breakpoints are removed 
+          // and re-added later when the sourcemaps are re-parsed
+          breakpointRemoved(breakpoint, null/*delta*/);
+          breakpointAdded(breakpoint);
+        }
       }
+    } finally {
+      batch.end();
     }
   }
 
   @Override
   public void removeBreakpointsConcerningScript(IStorage script) {
     SourceMapManager sourceMapManager = debugTarget.getSourceMapManager();
-    for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
+    for (IBreakpoint breakpoint : getBreakpoints()) {
       if (!isJSBreakpoint(breakpoint)
           && sourceMapManager.isMapTarget(script, getBreakpointPath(breakpoint))) {
         breakpointRemoved(breakpoint, null/*delta*/);
@@ -348,45 +397,43 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
                   }
                 });
           } else {
-            // Handle source mapped breakpoints
+            // Handle source mapped breakpoints; a line may map to several generated locations
             SourceMapManager sourceMapManager = debugTarget.getSourceMapManager();
-            if (sourceMapManager.isMapTarget(path)) {
-              List<SourceMapManager.SourceLocation> locations = sourceMapManager.getReverseMappingsFor(
-                  path,
-                  line);
-
-              for (SourceMapManager.SourceLocation location : locations) {
-                String mappedPath;
-                if (location.getStorage() instanceof IFile) {
-                  mappedPath = getResourceResolver().getUrlRegexForResource(
-                      (IFile) location.getStorage());
-                } else if (location.getStorage() != null) {
-                  mappedPath = location.getStorage().getFullPath().toPortableString();
-                } else {
-                  mappedPath = location.getPath();
-                }
-
-                if (mappedPath != null) {
-                  trace("Breakpoint [" + path + ","
-                      + (breakpoint instanceof ILineBreakpoint ? breakpoint.getLineNumber() : "")
-                      + ",-1] ==> mapped to [" + mappedPath + "," + location.getLine() + ","
-                      + location.getColumn() + "]");
-                  trace("Set breakpoint [" + mappedPath + "," + location.getLine() + "]");
-
-                  debugTarget.getWebkitConnection().getDebugger().setBreakpointByUrl(
-                      null,
-                      mappedPath,
-                      location.getLine(),
-                      location.getColumn(),
-                      new WebkitCallback<String>() {
-                        @Override
-                        public void handleResult(WebkitResult<String> result) {
-                          if (!result.isError()) {
-                            addToBreakpointMap(breakpoint, result.getResult(), false);
-                          }
+            List<SourceMapManager.SourceLocation> locations = sourceMapManager.getReverseMappingsFor(
+                path,
+                line);
+
+            for (SourceMapManager.SourceLocation location : locations) {
+              String mappedPath;
+              if (location.getStorage() instanceof IFile) {
+                mappedPath = getResourceResolver().getUrlRegexForResource(
+                    (IFile) location.getStorage());
+              } else if (location.getStorage() != null) {
+                mappedPath = location.getStorage().getFullPath().toPortableString();
+              } else {
+                mappedPath = location.getPath();
+              }
+
+              if (mappedPath != null) {
+                trace("Breakpoint [" + path + ","
+                    + (breakpoint instanceof ILineBreakpoint ? breakpoint.getLineNumber() : "")
+                    + ",-1] ==> mapped to [" + mappedPath + "," + location.getLine() + ","
+                    + location.getColumn() + "]");
+                trace("Set breakpoint [" + mappedPath + "," + location.getLine() + "]");
+
+                debugTarget.getWebkitConnection().getDebugger().setBreakpointByUrl(
+                    null,
+                    mappedPath,
+                    location.getLine(),
+                    location.getColumn(),
+                    new WebkitCallback<String>() {
+                      @Override
+                      public void handleResult(WebkitResult<String> result) {
+                        if (!result.isError()) {
+                          addToBreakpointMap(breakpoint, result.getResult(), false);
                         }
-                      });
-                }
+                      }
+                    });
               }
             }
           }
@@ -413,6 +460,15 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
     }
   }
 
+  /**
+   * Breakpoints are re-armed from the source map loader threads as well, so iterate over a copy.
+   */
+  private List<IBreakpoint> getBreakpoints() {
+    synchronized (breakpointToIdMap) {
+      return new ArrayList<IBreakpoint>(breakpointToIdMap.keySet());
+    }
+  }
+
   private String getBreakpointPath(IBreakpoint bp) {
     String path = null;
     for (IBreakpointPathResolver resolver : getBreakpointPathResolvers()) {
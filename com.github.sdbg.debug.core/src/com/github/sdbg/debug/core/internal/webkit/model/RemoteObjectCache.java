@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What is known about the remote objects of the current suspension, by object id: their
+ * properties, their toString() detail and, for lists, their length. The views ask for the same
+ * objects over and over; they are fetched once per suspension.
+ * <p>
+ * Object ids are only valid while the debugger is suspended, so the cache is cleared when it
+ * suspends, resumes, or the global object is cleared.
+ */
+class RemoteObjectCache {
+  private Map<String, WebkitPropertyDescriptor[]> properties = new ConcurrentHashMap<String, WebkitPropertyDescriptor[]>();
+
+  private Map<String, String> details = new ConcurrentHashMap<String, String>();
+
+  private Map<String, Integer> listLengths = new ConcurrentHashMap<String, Integer>();
+
+  RemoteObjectCache() {
+  }
+
+  void clear() {
+    properties.clear();
+    details.clear();
+    listLengths.clear();
+  }
+
+  /**
+   * @return the toString() detail of the given object, or null if it is not known
+   */
+  String getDetail(WebkitRemoteObject object) {
+    return object.getObjectId() == null ? null : details.get(object.getObjectId());
+  }
+
+  /**
+   * @return the length of the given list, or null if it is not known
+   */
+  Integer getListLength(WebkitRemoteObject list) {
+    return list.getObjectId() == null ? null : listLengths.get(list.getObjectId());
+  }
+
+  /**
+   * Return the length of the given list, fetching it if it is not known. A length which could not
+   * be fetched is not cached.
+   */
+  int getListLength(WebkitRemoteObject list, WebkitConnection connection) {
+    Integer length = getListLength(list);
+
+    if (length == null) {
+      length = list.getListLength(connection);
+
+      if (list.hasListLength()) {
+        putListLength(list, length);
+      }
+    }
+
+    return length.intValue();
+  }
+
+  /**
+   * @return a copy of the own properties of the given object, or null if they are not known
+   */
+  WebkitPropertyDescriptor[] getProperties(WebkitRemoteObject object) {
+    WebkitPropertyDescriptor[] result = object.getObjectId() == null ? null
+        : properties.get(object.getObjectId());
+
+    return result == null ? null : Arrays.copyOf(result, result.length);
+  }
+
+  void putDetail(WebkitRemoteObject object, String detail) {
+    if (object.getObjectId() != null && detail != null) {
+      details.put(object.getObjectId(), detail);
+    }
+  }
+
+  void putListLength(WebkitRemoteObject list, int length) {
+    if (list.getObjectId() != null) {
+      listLengths.put(list.getObjectId(), length);
+    }
+  }
+
+  void putProperties(WebkitRemoteObject object, WebkitPropertyDescriptor[] result) {
+    if (object.getObjectId() != null && result != null) {
+      properties.put(object.getObjectId(), Arrays.copyOf(result, result.length));
+    }
+  }
+
+}
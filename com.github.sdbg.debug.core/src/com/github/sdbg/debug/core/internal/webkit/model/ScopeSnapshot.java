@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallFrame;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScope;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The local variables of all the stack frames of a suspended thread, fetched at once instead of
+ * frame by frame, with Runtime#getPropertiesSnapshot().
+ * <p>
+ * The properties of a scope which could not be part of the snapshot are fetched on their own.
+ */
+class ScopeSnapshot {
+  static interface PropertiesCallback {
+    /**
+     * @param properties the properties, or null if they could not be fetched
+     */
+    void handleProperties(WebkitPropertyDescriptor[] properties);
+  }
+
+  private static class Request {
+    final WebkitRemoteObject scope;
+    final PropertiesCallback callback;
+
+    Request(WebkitRemoteObject scope, PropertiesCallback callback) {
+      this.scope = scope;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * Take a snapshot of the local scopes of the given frames.
+   * 
+   * @return the snapshot, or null if snapshots are disabled
+   */
+  static ScopeSnapshot create(WebkitDebugTarget target, List<WebkitCallFrame> frames) {
+    SDBGDebugCorePlugin plugin = SDBGDebugCorePlugin.getPlugin();
+    int depth = plugin != null ? plugin.getScopeSnapshotDepth()
+        : SDBGDebugCorePlugin.DEFAULT_SCOPE_SNAPSHOT_DEPTH;
+
+    if (depth <= 0) {
+      return null;
+    }
+
+    List<WebkitRemoteObject> scopes = new ArrayList<WebkitRemoteObject>();
+
+    for (WebkitCallFrame frame : frames) {
+      for (WebkitScope scope : frame.getScopeChain()) {
+        if (scope.isLocal() && scope.getObject().hasObjectId()) {
+          scopes.add(scope.getObject());
+        }
+      }
+    }
+
+    if (scopes.isEmpty()) {
+      return null;
+    }
+
+    ScopeSnapshot snapshot = new ScopeSnapshot(target, scopes);
+    snapshot.fetch(depth);
+
+    return snapshot;
+  }
+
+  private WebkitDebugTarget target;
+
+  private List<WebkitRemoteObject> scopes;
+
+  private boolean done;
+
+  private List<WebkitPropertyDescriptor[]> properties;
+
+  private List<Request> requests = new ArrayList<Request>();
+
+  private ScopeSnapshot(WebkitDebugTarget target, List<WebkitRemoteObject> scopes) {
+    this.target = target;
+    this.scopes = scopes;
+  }
+
+  /**
+   * Return the properties of the given scope, once the snapshot is taken.
+   */
+  void getProperties(WebkitRemoteObject scope, PropertiesCallback callback) {
+    synchronized (this) {
+      if (!done) {
+        requests.add(new Request(scope, callback));
+        return;
+      }
+    }
+
+    handleRequest(new Request(scope, callback));
+  }
+
+  private void fetch(int depth) {
+    try {
+      target.getConnection().getRuntime().getPropertiesSnapshot(
+          scopes,
+          depth,
+          new WebkitCallback<List<WebkitPropertyDescriptor[]>>() {
+            @Override
+            public void handleResult(WebkitResult<List<WebkitPropertyDescriptor[]>> result) {
+              if (result.isError()) {
+                SDBGDebugCorePlugin.logWarning("Unable to take a snapshot of the local variables: "
+                    + result.getErrorMessage());
+              }
+
+              handleSnapshot(result.isError() ? null : result.getResult());
+            }
+          });
+    } catch (IOException e) {
+      SDBGDebugCorePlugin.logError(e);
+
+      handleSnapshot(null);
+    }
+  }
+
+  private void handleRequest(final Request request) {
+    int index = scopes.indexOf(request.scope);
+
+    if (properties != null && index != -1 && properties.get(index) != null) {
+      request.callback.handleProperties(properties.get(index));
+      return;
+    }
+
+    try {
+      target.getConnection().getRuntime().getProperties(
+          request.scope,
+          true,
+          false,
+          new WebkitCallback<WebkitPropertyDescriptor[]>() {
+            @Override
+            public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
+              request.callback.handleProperties(result.isError() ? null : result.getResult());
+            }
+          });
+    } catch (IOException e) {
+      SDBGDebugCorePlugin.logError(e);
+
+      request.callback.handleProperties(null);
+    }
+  }
+
+  private void handleSnapshot(List<WebkitPropertyDescriptor[]> properties) {
+    List<Request> pending;
+
+    synchronized (this) {
+      this.properties = properties;
+      done = true;
+
+      pending = requests;
+      requests = null;
+    }
+
+    for (Request request : pending) {
+      handleRequest(request);
+    }
+  }
+
+}
@@ -17,24 +17,36 @@ package com.github.sdbg.debug.core.internal.webkit.model;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.internal.source.WorkspaceSourceContainer;
 import com.github.sdbg.debug.core.internal.sourcemaps.SourceMap;
+import com.github.sdbg.debug.core.internal.sourcemaps.SourceMapCache;
 import com.github.sdbg.debug.core.internal.sourcemaps.SourceMapInfo;
+import com.github.sdbg.debug.core.internal.util.URLContentCache;
 import com.github.sdbg.debug.core.internal.util.URLStorage;
 import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.debug.core.util.Trace;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -100,89 +112,133 @@ public class SourceMapManager {
     }
   }
 
-  private static class TargetPathCheckingVisitor implements Visitor {
-    private String targetPath;
-    private boolean stopOnInexactMatch;
-
-    private IStorage matchingScriptStorage;
-    private IStorage matchingSourceMapStorage;
-    private SourceMap matchingSourceMap;
-    private String matchingSourcePath;
-
-    public TargetPathCheckingVisitor(String targetPath) {
-      this(targetPath, false);
+  /**
+   * An immutable snapshot of the parsed source maps. Lookups use the current snapshot without any
+   * locking, while updates publish a modified copy.
+   */
+  private static class State {
+    /**
+     * Incremented whenever the global object is cleared, so that maps parsed for the previous
+     * global object are not published afterwards.
+     */
+    final int generation;
+
+    final Map<IStorage, IStorage> sourceMapsStorages;
+    final Map<IStorage, SourceMap> sourceMaps;
+    final SourcePathIndex sourcePathIndex;
+
+    State(int generation) {
+      this(
+          generation,
+          new HashMap<IStorage, IStorage>(),
+          new HashMap<IStorage, SourceMap>(),
+          new SourcePathIndex());
     }
 
-    public TargetPathCheckingVisitor(String targetPath, boolean stopOnInexactMatch) {
-      this.targetPath = targetPath;
-      this.stopOnInexactMatch = stopOnInexactMatch;
+    private State(int generation, Map<IStorage, IStorage> sourceMapsStorages,
+        Map<IStorage, SourceMap> sourceMaps, SourcePathIndex sourcePathIndex) {
+      this.generation = generation;
+      this.sourceMapsStorages = sourceMapsStorages;
+      this.sourceMaps = sourceMaps;
+      this.sourcePathIndex = sourcePathIndex;
     }
 
-    public IStorage getMatchingScriptStorage() {
-      return matchingScriptStorage;
-    }
+    /**
+     * Return a copy of this state, with the given source map for the script. A null map storage
+     * removes the script's source map.
+     */
+    State put(IStorage script, IStorage mapStorage, SourceMap map) {
+      State state = new State(
+          generation,
+          new HashMap<IStorage, IStorage>(sourceMapsStorages),
+          new HashMap<IStorage, SourceMap>(sourceMaps),
+          new SourcePathIndex(sourcePathIndex));
+
+      IStorage oldMapStorage = state.sourceMapsStorages.remove(script);
+      if (oldMapStorage != null) {
+        if (!state.sourceMapsStorages.containsValue(oldMapStorage)) {
+          state.sourceMaps.remove(oldMapStorage);
+        }
 
-    public SourceMap getMatchingSourceMap() {
-      return matchingSourceMap;
-    }
+        state.sourcePathIndex.remove(script);
+      }
 
-    public IStorage getMatchingSourceMapStorage() {
-      return matchingSourceMapStorage;
-    }
+      if (mapStorage != null) {
+        state.sourceMapsStorages.put(script, mapStorage);
+        state.sourceMaps.put(mapStorage, map);
+        state.sourcePathIndex.add(script, mapStorage, map);
+      }
 
-    public String getMatchingSourcePath() {
-      return matchingSourcePath;
+      return state;
     }
+  }
 
-    @Override
-    public String toString() {
-      return "[Script: " + matchingScriptStorage + ", Source map: " + matchingSourceMapStorage
-          + ", Source path: " + matchingSourcePath + "]";
+  /**
+   * The loading of the source map of one script, run on the loader pool.
+   */
+  private class SourceMapLoad implements Runnable {
+    final IStorage script;
+    final String scriptUrl;
+    final String sourceMapUrl;
+    final String scriptKey;
+    final int generation;
+    final Runnable loadedCallback;
+
+    /**
+     * The tasks to run once the load is done; guarded by the manager.
+     */
+    final List<Runnable> doneTasks = new ArrayList<Runnable>();
+
+    final FutureTask<Void> future = new FutureTask<Void>(this, null) {
+      @Override
+      protected void done() {
+        handleLoadDone(SourceMapLoad.this);
+      }
+    };
+
+    SourceMapLoad(IStorage script, String scriptUrl, String sourceMapUrl, String scriptKey,
+        int generation, Runnable loadedCallback) {
+      this.script = script;
+      this.scriptUrl = scriptUrl;
+      this.sourceMapUrl = sourceMapUrl;
+      this.scriptKey = scriptKey;
+      this.generation = generation;
+      this.loadedCallback = loadedCallback;
     }
 
     @Override
-    public boolean visit(IStorage scriptStorage, IStorage sourceMapStorage, SourceMap sourceMap,
-        String sourcePath) {
-      String sourceRoot = sourceMap.getSourceRoot();
-      String relativePath = sourceRoot != null && sourceRoot.length() > 0
-          ? sourcePath.substring(sourceRoot.length()) : sourcePath;
-      if (relativePath.endsWith(targetPath)) {
-        if (matchingSourcePath == null || matchingSourcePath.length() > sourcePath.length()) {
-          matchingSourcePath = sourcePath;
-          matchingSourceMap = sourceMap;
-          matchingSourceMapStorage = sourceMapStorage;
-          matchingScriptStorage = scriptStorage;
-
-          if (stopOnInexactMatch || relativePath.length() == targetPath.length()) {
-            trace();
-            return true;
-          }
-        }
-      }
-
-      trace();
-      return false;
-    }
+    public void run() {
+      trace("Checking script for sourcemaps: " + script);
 
-    private void trace() {
-      if (isTracing()) {
-        if (matchingSourcePath != null) {
-          SourceMapManager.trace("Match: " + toString());
-        } else {
-          SourceMapManager.trace("No match");
-        }
+      try {
+        processScript(this);
+      } catch (CoreException e) {
+        // Processing a source map is always a best effort, because the sourcemap could be missing or broken
+        SDBGDebugCorePlugin.logError(e);
+        trace("Processing script " + script + " failed: " + e.getMessage());
       }
     }
   }
 
-  private static interface Visitor {
-    boolean visit(IStorage scriptStorage, IStorage mapStorage, SourceMap map, String path);
-  }
+  /**
+   * The maximum number of source maps which are downloaded and parsed at the same time.
+   */
+  private static final int MAX_LOADER_THREADS = Math.max(
+      1,
+      Math.min(4, Runtime.getRuntime().availableProcessors()));
 
   private IResourceResolver resourceResolver;
 
-  private Map<IStorage, IStorage> sourceMapsStorages = new HashMap<IStorage, IStorage>();
-  private Map<IStorage, SourceMap> sourceMaps = new HashMap<IStorage, SourceMap>();
+  private volatile State state = new State(0);
+
+  private ThreadPoolExecutor loaderPool;
+
+  private ConcurrentMap<IStorage, SourceMapLoad> pendingLoads = new ConcurrentHashMap<IStorage, SourceMapLoad>();
+
+  /**
+   * The scripts whose source map, if any, is loaded, with the key they were loaded for.
+   */
+  private ConcurrentMap<IStorage, String> loadedScripts = new ConcurrentHashMap<IStorage, String>();
 
   static boolean isTracing() {
     return Trace.isTracing(Trace.SOURCEMAPS);
@@ -192,11 +248,33 @@ public class SourceMapManager {
     Trace.trace(Trace.SOURCEMAPS, message);
   }
 
+  private static String getScriptKey(String scriptUrl, String sourceMapUrl, String scriptHash) {
+    return scriptUrl + "\n" + sourceMapUrl + "\n" + scriptHash;
+  }
+
   public SourceMapManager(IResourceResolver resourceResolver) {
     this.resourceResolver = resourceResolver;
+
+    loaderPool = new ThreadPoolExecutor(
+        MAX_LOADER_THREADS,
+        MAX_LOADER_THREADS,
+        30,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Source map loader");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    loaderPool.allowCoreThreadTimeOut(true);
   }
 
   public void dispose() {
+    cancelPendingLoads();
+    loaderPool.shutdown();
   }
 
   /**
@@ -213,35 +291,35 @@ public class SourceMapManager {
       trace("Get mappings for " + storage + ":" + line + ":" + column);
     }
 
-    synchronized (sourceMaps) {
-      IStorage mapStorage = sourceMapsStorages.get(storage);
-      if (mapStorage != null) {
-        SourceMap map = sourceMaps.get(mapStorage);
-        if (map != null) {
-          SourceMapInfo mapping = map.getMappingFor(line, column);
-
-          if (mapping != null) {
-            IStorage resolvedStorage = resolveStorage(mapStorage, mapping.getFile());
-            if (resolvedStorage != null) {
-              String sourceRoot = map.getSourceRoot();
-              String relativePath = mapping.getFile();
-              if (sourceRoot != null && sourceRoot.length() > 0) {
-                relativePath = relativePath.substring(sourceRoot.length());
-              }
+    State state = this.state;
 
-              SourceLocation location = new SourceLocation(
-                  resolvedStorage,
-                  relativePath,
-                  mapping.getLine(),
-                  mapping.getColumn(),
-                  mapping.getName());
+    IStorage mapStorage = state.sourceMapsStorages.get(storage);
+    if (mapStorage != null) {
+      SourceMap map = state.sourceMaps.get(mapStorage);
+      if (map != null) {
+        SourceMapInfo mapping = map.getMappingFor(line, column);
+
+        if (mapping != null) {
+          IStorage resolvedStorage = resolveStorage(mapStorage, mapping.getFile());
+          if (resolvedStorage != null) {
+            String sourceRoot = map.getSourceRoot();
+            String relativePath = mapping.getFile();
+            if (sourceRoot != null && sourceRoot.length() > 0) {
+              relativePath = relativePath.substring(sourceRoot.length());
+            }
 
-              if (isTracing()) {
-                trace("Found mapping: " + location);
-              }
+            SourceLocation location = new SourceLocation(
+                resolvedStorage,
+                relativePath,
+                mapping.getLine(),
+                mapping.getColumn(),
+                mapping.getName());
 
-              return location;
+            if (isTracing()) {
+              trace("Found mapping: " + location);
             }
+
+            return location;
           }
         }
       }
@@ -265,26 +343,20 @@ public class SourceMapManager {
 
     List<SourceLocation> mappings = new ArrayList<SourceMapManager.SourceLocation>();
 
-    TargetPathCheckingVisitor visitor = new TargetPathCheckingVisitor(targetPath);
-
-    synchronized (sourceMaps) {
-      visit(visitor);
-
-      if (visitor.getMatchingSourcePath() != null) {
-        List<SourceMapInfo> reverseMappings = visitor.getMatchingSourceMap().getReverseMappingsFor(
-            visitor.getMatchingSourcePath(),
-            line);
-        for (SourceMapInfo reverseMapping : reverseMappings) {
-          if (reverseMapping != null) {
-            IStorage mapSource = visitor.getMatchingScriptStorage(); //&&&!!! visitor.getMAtchingSourceMapStorage();
-            if (mapSource != null) {
-              mappings.add(new SourceLocation(
-                  mapSource,
-                  mapSource.getFullPath().toPortableString(),
-                  reverseMapping.getLine(),
-                  reverseMapping.getColumn(),
-                  reverseMapping.getName()));
-            }
+    SourcePathIndex.Source source = findSource(null/*scriptStorage*/, targetPath);
+
+    if (source != null) {
+      List<SourceMapInfo> reverseMappings = source.map.getReverseMappingsFor(source.path, line);
+      for (SourceMapInfo reverseMapping : reverseMappings) {
+        if (reverseMapping != null) {
+          IStorage mapSource = source.scriptStorage; //&&&!!! source.mapStorage;
+          if (mapSource != null) {
+            mappings.add(new SourceLocation(
+                mapSource,
+                mapSource.getFullPath().toPortableString(),
+                reverseMapping.getLine(),
+                reverseMapping.getColumn(),
+                reverseMapping.getName()));
           }
         }
       }
@@ -293,21 +365,15 @@ public class SourceMapManager {
     return mappings;
   }
 
-  public IStorage getSource(String targetPath) { //&&&!!! There can be race conditions because of that method
+  public IStorage getSource(String targetPath) {
     if (targetPath != null) {
       if (isTracing()) {
         trace("Get source storage: " + targetPath);
       }
 
-      TargetPathCheckingVisitor visitor = new TargetPathCheckingVisitor(targetPath);
-
-      synchronized (sourceMaps) {
-        visit(visitor);
-        if (visitor.getMatchingSourcePath() != null) {
-          return resolveStorage(
-              visitor.getMatchingSourceMapStorage(),
-              visitor.getMatchingSourcePath());
-        }
+      SourcePathIndex.Source source = findSource(null/*scriptStorage*/, targetPath);
+      if (source != null) {
+        return resolveStorage(source.mapStorage, source.path);
       }
     }
 
@@ -321,38 +387,31 @@ public class SourceMapManager {
    * @param resource
    * @return true if the the source map manager contains mapping information for the given file
    */
-  public boolean isMapSource(IStorage storage) { //&&&!!! There can be race conditions because of that method
+  public boolean isMapSource(IStorage storage) {
     if (storage != null) {
       if (isTracing()) {
         trace("Check for map source: " + storage);
       }
 
-      synchronized (sourceMaps) {
-        boolean result = sourceMapsStorages.containsKey(storage);
+      boolean result = state.sourceMapsStorages.containsKey(storage);
 
-        if (isTracing() && result) {
-          trace("Confirmed - map source");
-        }
-
-        return result;
+      if (isTracing() && result) {
+        trace("Confirmed - map source");
       }
+
+      return result;
     }
 
     return false;
   }
 
-  public boolean isMapTarget(IStorage scriptStorage, String targetPath) { //&&&!!! There can be race conditions because of that method
+  public boolean isMapTarget(IStorage scriptStorage, String targetPath) {
     if (targetPath != null) {
       if (isTracing()) {
         trace("Check for map target: " + targetPath);
       }
 
-      TargetPathCheckingVisitor visitor = new TargetPathCheckingVisitor(targetPath, true/*stopOnInexactMatch*/);
-
-      synchronized (sourceMaps) {
-        visit(scriptStorage, visitor);
-        return visitor.getMatchingSourcePath() != null;
-      }
+      return findSource(scriptStorage, targetPath) != null;
     } else {
       return false;
     }
@@ -362,31 +421,200 @@ public class SourceMapManager {
     return isMapTarget(null/*scriptStorage*/, targetPath);
   }
 
-  void handleGlobalObjectCleared() {
-    synchronized (sourceMaps) {
-      sourceMapsStorages.clear();
-      sourceMaps.clear();
+  /**
+   * Take over the source maps of the manager of a previous connection to the same page. They are
+   * used right away; the maps of the scripts the new connection reports unchanged are not loaded
+   * again, see {@link #isLoaded}.
+   */
+  synchronized void adopt(SourceMapManager manager) {
+    synchronized (manager) {
+      state = manager.state;
+      loadedScripts.putAll(manager.loadedScripts);
     }
+
+    trace("Adopted " + state.sourceMaps.size() + " sourcemaps");
   }
 
-  void handleScriptParsed(IStorage script, String scriptUrl, String sourceMapUrl) {
-    synchronized (sourceMaps) {
-      IStorage mapStorage = sourceMapsStorages.remove(script);
-      if (mapStorage != null) {
-        sourceMaps.remove(script);
+  /**
+   * Wait until the loads which were still running when the manager was disposed are done.
+   */
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return loaderPool.awaitTermination(timeout, unit);
+  }
+
+  synchronized void handleGlobalObjectCleared() {
+    cancelPendingLoads();
+    loadedScripts.clear();
+
+    state = new State(state.generation + 1);
+  }
+
+  /**
+   * Load the source map of the given script, if any, in the background. The map is downloaded and
+   * parsed on the loader pool, without blocking lookups or the loading of other scripts; only
+   * publishing the result is synchronized.
+   * 
+   * @param loadedCallback run once the map is loaded, or once it is known that there is none
+   */
+  void handleScriptParsed(IStorage script, String scriptUrl, String sourceMapUrl,
+      String scriptHash, Runnable loadedCallback) {
+    SourceMapLoad load;
+
+    synchronized (this) {
+      loadedScripts.remove(script);
+
+      if (state.sourceMapsStorages.containsKey(script)) {
+        state = state.put(script, null, null);
       }
-      trace("Checking script for sourcemaps: " + script);
 
+      load = new SourceMapLoad(
+          script,
+          scriptUrl,
+          sourceMapUrl,
+          getScriptKey(scriptUrl, sourceMapUrl, scriptHash),
+          state.generation,
+          loadedCallback);
+
+      SourceMapLoad previousLoad = pendingLoads.put(script, load);
+      if (previousLoad != null) {
+        previousLoad.future.cancel(false);
+      }
+    }
+
+    try {
+      loaderPool.execute(load.future);
+    } catch (RejectedExecutionException e) {
+      // The manager has been disposed.
+      load.future.cancel(false);
+    }
+  }
+
+  /**
+   * @return whether the source map of the given script, if it has any, is already loaded for the
+   *         same url, source map url and hash; typically when a connection is re-established
+   */
+  boolean isLoaded(IStorage script, String scriptUrl, String sourceMapUrl, String scriptHash) {
+    return getScriptKey(scriptUrl, sourceMapUrl, scriptHash).equals(loadedScripts.get(script))
+        && !pendingLoads.containsKey(script);
+  }
+
+  /**
+   * Run the given task once the source maps of the given scripts are loaded, if any of them is
+   * still being loaded. This does not wait for them; the task is run on a loader thread.
+   * 
+   * @return whether the task will be run
+   */
+  boolean runWhenSourceMapsLoaded(Collection<IStorage> scripts, final Runnable task) {
+    final List<SourceMapLoad> loads = new ArrayList<SourceMapLoad>();
+
+    synchronized (this) {
+      for (IStorage script : scripts) {
+        SourceMapLoad load = pendingLoads.get(script);
+
+        if (load != null && !loads.contains(load)) {
+          loads.add(load);
+        }
+      }
+
+      Runnable countDown = new Runnable() {
+        private AtomicInteger remaining = new AtomicInteger(loads.size());
+
+        @Override
+        public void run() {
+          if (remaining.decrementAndGet() == 0) {
+            task.run();
+          }
+        }
+      };
+
+      for (SourceMapLoad load : loads) {
+        load.doneTasks.add(countDown);
+      }
+    }
+
+    return !loads.isEmpty();
+  }
+
+  private synchronized void addSourceMap(SourceMapLoad load, IStorage mapStorage, SourceMap map) {
+    if (state.generation == load.generation && pendingLoads.get(load.script) == load) {
+      state = state.put(load.script, mapStorage, map);
+    } else {
+      trace("Discarding superseded sourcemap: " + mapStorage);
+    }
+  }
+
+  private synchronized void cancelPendingLoads() {
+    for (SourceMapLoad load : pendingLoads.values()) {
+      load.future.cancel(false);
+    }
+
+    pendingLoads.clear();
+  }
+
+  private SourcePathIndex.Source findSource(IStorage scriptStorage, String targetPath) {
+    SourcePathIndex.Source source = state.sourcePathIndex.find(scriptStorage, targetPath);
+
+    if (isTracing()) {
+      trace(source != null ? "Match: " + source : "No match");
+    }
+
+    return source;
+  }
+
+  private void handleLoadDone(SourceMapLoad load) {
+    List<Runnable> doneTasks;
+
+    synchronized (this) {
+      if (pendingLoads.remove(load.script, load) && !load.future.isCancelled()
+          && state.generation == load.generation) {
+        loadedScripts.put(load.script, load.scriptKey);
+      }
+
+      doneTasks = new ArrayList<Runnable>(load.doneTasks);
+      load.doneTasks.clear();
+    }
+
+    if (!load.future.isCancelled() && load.loadedCallback != null) {
       try {
-        processScript(script, scriptUrl, sourceMapUrl);
-      } catch (CoreException e) {
-        // Processing a source map is always a best effort, because the sourcemap could be missing or broken
+        load.loadedCallback.run();
+      } catch (RuntimeException e) {
+        SDBGDebugCorePlugin.logError(e);
+      }
+    }
+
+    for (Runnable task : doneTasks) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
         SDBGDebugCorePlugin.logError(e);
-        trace("Processing script " + script + " failed: " + e.getMessage());
       }
     }
   }
 
+  /**
+   * Return the local file of the given storage, or null if it is not backed by one.
+   */
+  private File getLocalFile(IStorage storage) {
+    File file = null;
+
+    if (storage instanceof IFile) {
+      IPath location = ((IFile) storage).getLocation();
+
+      if (location != null) {
+        file = location.toFile();
+      }
+    } else if (storage instanceof URLStorage
+        && "file".equals(((URLStorage) storage).getURI().getScheme())) {
+      try {
+        file = new File(((URLStorage) storage).getURI());
+      } catch (IllegalArgumentException e) {
+        // Not a plain file URI, e.g. one with a host.
+      }
+    }
+
+    return file != null && file.isFile() ? file : null;
+  }
+
   private boolean isDownloadable(URI uri) {
     if (uri == null || uri.getScheme() == null) {
       return false;
@@ -399,14 +627,50 @@ public class SourceMapManager {
 
   private SourceMap parseSourceMap(IStorage mapStorage) throws IOException, CoreException {
     if (mapStorage != null) {
-      return SourceMap.createFrom(mapStorage);
+      SourceMapCache cache = SourceMapCache.getCache();
+
+      if (cache == null) {
+        return SourceMap.createFrom(mapStorage);
+      }
+
+      // Maps are cached by a key known before they are read, so that a cached map is not read at
+      // all: the digest of fetched maps, known once the URL content cache has revalidated them, or
+      // the path, size and modification time of local maps. Other maps are not cached.
+      InputStream in = mapStorage.getContents();
+      String key = URLContentCache.getDigest(in);
+
+      if (key == null) {
+        File file = getLocalFile(mapStorage);
+
+        if (file != null) {
+          key = SourceMapCache.computeKey(file);
+        }
+      }
+
+      if (key == null) {
+        return SourceMap.createFrom(mapStorage, in);
+      }
+
+      SourceMap map = cache.get(key, mapStorage.getFullPath());
+
+      if (map != null) {
+        in.close();
+        return map;
+      }
+
+      map = SourceMap.createFrom(mapStorage, in);
+      cache.put(key, map);
+
+      return map;
     } else {
       return null;
     }
   }
 
-  private void processScript(IStorage script, String scriptUrl, String sourceMapUrl)
-      throws CoreException {
+  private void processScript(SourceMapLoad load) throws CoreException {
+    IStorage script = load.script;
+    String sourceMapUrl = load.sourceMapUrl;
+
     try {
       if (sourceMapUrl == null) {
         BufferedReader reader;
@@ -446,7 +710,7 @@ public class SourceMapManager {
       if (sourceMapUrl != null && sourceMapUrl.length() > 0) {
         trace("Found sourcemap with URL: " + sourceMapUrl);
 
-        mapStorage = resolveStorage(script, scriptUrl, sourceMapUrl);
+        mapStorage = resolveStorage(script, load.scriptUrl, sourceMapUrl);
         if (mapStorage == null) {
           trace("Sourcemap with URL " + sourceMapUrl + " was not resolved");
         }
@@ -457,8 +721,7 @@ public class SourceMapManager {
       if (mapStorage != null) {
         SourceMap map = parseSourceMap(mapStorage);
         if (map != null) {
-          sourceMapsStorages.put(script, mapStorage);
-          sourceMaps.put(mapStorage, map);
+          addSourceMap(load, mapStorage, map);
           trace("Parsing sourcemap succeeded: " + mapStorage);
         }
       }
@@ -518,7 +781,7 @@ public class SourceMapManager {
 
           // Next, try with the storage URI
           if (!isDownloadable(relativeUri) && relativeStorage instanceof URLStorage) {
-            relativeUri = ((URLStorage) relativeStorage).getURL().toURI();
+            relativeUri = ((URLStorage) relativeStorage).getURI();
           }
 
           if (isDownloadable(relativeUri)) {
@@ -536,40 +799,15 @@ public class SourceMapManager {
         }
 
         if (isDownloadable(uri)) {
-          return new URLStorage(uri.toURL());
+          return new URLStorage(uri);
         }
       } catch (URISyntaxException e) {
         SDBGDebugCorePlugin.logError(e);
         trace("Resolving storage " + relativeStorage + " with path " + path + " failed: "
             + e.getMessage());
-      } catch (MalformedURLException e) {
-        SDBGDebugCorePlugin.logError(e);
-        trace("Resolving storage " + relativeStorage + " with path " + path + " failed: "
-            + e.getMessage());
       }
     }
 
     return null;
   }
-
-  private void visit(IStorage forScriptStorage, Visitor visitor) { //&&&!!! There can be race conditions because of that method
-    synchronized (sourceMaps) {
-      for (IStorage scriptStorage : forScriptStorage != null
-          ? Collections.singleton(forScriptStorage) : sourceMapsStorages.keySet()) {
-        IStorage sourceMapStorage = sourceMapsStorages.get(scriptStorage);
-        if (sourceMapStorage != null) {
-          SourceMap sourceMap = sourceMaps.get(sourceMapStorage);
-          for (String sourcePath : sourceMap.getSourceNames()) {
-            if (visitor.visit(scriptStorage, sourceMapStorage, sourceMap, sourcePath)) {
-              break;
-            }
-          }
-        }
-      }
-    }
-  }
-
-  private void visit(Visitor visitor) {
-    visit(null/*forScriptStorage*/, visitor);
-  }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.sourcemaps.SourceMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IStorage;
+
+/**
+ * An index of the source paths of all the parsed source maps, used to find the sources whose path
+ * ends with a given target path.
+ * <p>
+ * The sources are keyed by their reversed file name (the part of the path after the last '/'). A
+ * target path containing a '/' must then match a file name exactly, while a target path without one
+ * is a prefix of the reversed file names it can match; either way only a handful of candidates are
+ * checked, instead of every source of every map.
+ * <p>
+ * An index is copied before it is modified when it is shared between threads; the lists of sources
+ * are never modified in place, so a copy only needs to copy the maps.
+ */
+class SourcePathIndex {
+  static class Source {
+    final IStorage scriptStorage;
+    final IStorage mapStorage;
+    final SourceMap map;
+
+    /**
+     * The path of the source, including the source root of the map.
+     */
+    final String path;
+
+    /**
+     * The path of the source, relative to the source root of the map.
+     */
+    final String relativePath;
+
+    Source(IStorage scriptStorage, IStorage mapStorage, SourceMap map, String path) {
+      this.scriptStorage = scriptStorage;
+      this.mapStorage = mapStorage;
+      this.map = map;
+      this.path = path;
+
+      String sourceRoot = map.getSourceRoot();
+      relativePath = sourceRoot != null && sourceRoot.length() > 0
+          ? path.substring(sourceRoot.length()) : path;
+    }
+
+    @Override
+    public String toString() {
+      return "[Script: " + scriptStorage + ", Source map: " + mapStorage + ", Source path: " + path
+          + "]";
+    }
+  }
+
+  private static String getReversedName(String path) {
+    return new StringBuilder(path.substring(path.lastIndexOf('/') + 1)).reverse().toString();
+  }
+
+  private TreeMap<String, List<Source>> sourcesByName = new TreeMap<String, List<Source>>();
+
+  private Map<IStorage, List<Source>> sourcesByScript = new HashMap<IStorage, List<Source>>();
+
+  SourcePathIndex() {
+  }
+
+  SourcePathIndex(SourcePathIndex index) {
+    sourcesByName = new TreeMap<String, List<Source>>(index.sourcesByName);
+    sourcesByScript = new HashMap<IStorage, List<Source>>(index.sourcesByScript);
+  }
+
+  /**
+   * Index the sources of the given script's source map.
+   */
+  void add(IStorage scriptStorage, IStorage mapStorage, SourceMap map) {
+    remove(scriptStorage);
+
+    List<Source> scriptSources = new ArrayList<Source>();
+
+    for (String path : map.getSourceNames()) {
+      Source source = new Source(scriptStorage, mapStorage, map, path);
+
+      String name = getReversedName(source.relativePath);
+      List<Source> sources = sourcesByName.get(name);
+      if (sources == null) {
+        sources = new ArrayList<Source>(1);
+      } else {
+        sources = new ArrayList<Source>(sources);
+      }
+
+      sources.add(source);
+      sourcesByName.put(name, sources);
+
+      scriptSources.add(source);
+    }
+
+    sourcesByScript.put(scriptStorage, scriptSources);
+  }
+
+  void clear() {
+    sourcesByName.clear();
+    sourcesByScript.clear();
+  }
+
+  /**
+   * Find the source whose path relative to its source root ends with the given target path. If
+   * several do, the one with the shortest path is returned, as the closest match.
+   * 
+   * @param scriptStorage if not null, only the sources of this script's map are considered
+   * @param targetPath
+   * @return the matching source, or null
+   */
+  Source find(IStorage scriptStorage, String targetPath) {
+    Source match = null;
+
+    if (targetPath.indexOf('/') != -1) {
+      match = findMatch(
+          sourcesByName.get(getReversedName(targetPath)),
+          scriptStorage,
+          targetPath,
+          null);
+    } else {
+      String prefix = getReversedName(targetPath);
+
+      for (Map.Entry<String, List<Source>> entry : sourcesByName.tailMap(prefix).entrySet()) {
+        if (!entry.getKey().startsWith(prefix)) {
+          break;
+        }
+
+        match = findMatch(entry.getValue(), scriptStorage, targetPath, match);
+      }
+    }
+
+    return match;
+  }
+
+  /**
+   * Remove the sources of the given script's source map.
+   */
+  void remove(IStorage scriptStorage) {
+    List<Source> scriptSources = sourcesByScript.remove(scriptStorage);
+
+    if (scriptSources != null) {
+      for (Source source : scriptSources) {
+        String name = getReversedName(source.relativePath);
+        List<Source> sources = sourcesByName.get(name);
+
+        if (sources != null) {
+          sources = new ArrayList<Source>(sources);
+          sources.remove(source);
+
+          if (sources.isEmpty()) {
+            sourcesByName.remove(name);
+          } else {
+            sourcesByName.put(name, sources);
+          }
+        }
+      }
+    }
+  }
+
+  private Source findMatch(List<Source> sources, IStorage scriptStorage, String targetPath,
+      Source match) {
+    if (sources != null) {
+      for (Source source : sources) {
+        if ((scriptStorage == null || scriptStorage.equals(source.scriptStorage))
+            && source.relativePath.endsWith(targetPath)
+            && (match == null || match.path.length() > source.path.length())) {
+          match = source;
+        }
+      }
+    }
+
+    return match;
+  }
+
+}
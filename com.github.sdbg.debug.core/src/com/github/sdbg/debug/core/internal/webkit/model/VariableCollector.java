@@ -15,7 +15,9 @@
 package com.github.sdbg.debug.core.internal.webkit.model;
 
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
@@ -24,9 +26,12 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScope;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IVariable;
 
 /**
@@ -34,24 +39,54 @@ import org.eclipse.debug.core.model.IVariable;
  */
 class VariableCollector {
 
+  /**
+   * How long to wait for the variables to be collected, in milliseconds. The requests for them are
+   * bounded by the same time, so the variables are only missing if the browser does not answer.
+   */
+  static final long COLLECT_TIMEOUT = WebkitConnection.METADATA_REQUEST_TIMEOUT;
+
   private WebkitDebugTarget target;
 
   private WebkitDebugVariable parentVariable;
 
   private CountDownLatch latch;
 
+  private List<IVariablesCallback> callbacks = new ArrayList<IVariablesCallback>();
+
   private List<IVariable> variables = new ArrayList<IVariable>();
 
   private List<WebkitPropertyDescriptor> webkitProperties = new ArrayList<WebkitPropertyDescriptor>();
 
-  public static VariableCollector createCollector(WebkitDebugTarget target,
+  public static VariableCollector createCollector(final WebkitDebugTarget target,
       final WebkitDebugVariable variable, List<WebkitRemoteObject> remoteObjects) {
     final VariableCollector collector = new VariableCollector(
         target,
         remoteObjects.size(),
         variable);
 
+    final boolean isStatic = isScope(variable, "global");
+    final boolean isLocal = isScope(variable, "local");
+
     for (final WebkitRemoteObject obj : remoteObjects) {
+      if (obj.getPrefetchedProperties() != null) {
+        // Fetched along with the object, as part of a scope snapshot.
+        WebkitPropertyDescriptor[] properties = obj.getPrefetchedProperties();
+
+        collector.collectProperties(
+            Arrays.copyOf(properties, properties.length),
+            !obj.isList(),
+            isStatic,
+            isLocal);
+        continue;
+      }
+
+      WebkitPropertyDescriptor[] cachedProperties = target.getRemoteObjectCache().getProperties(obj);
+
+      if (cachedProperties != null) {
+        collector.collectProperties(cachedProperties, !obj.isList(), isStatic, isLocal);
+        continue;
+      }
+
       try {
         target.getConnection().getRuntime().getProperties(
             obj,
@@ -61,11 +96,11 @@ class VariableCollector {
               @Override
               public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
                 try {
-                  collector.collectFields(
-                      result,
-                      !obj.isList(),
-                      variable != null && variable.isScope() && "global".equals(variable.getName()),
-                      variable != null && variable.isScope() && "local".equals(variable.getName()));
+                  if (!result.isError()) {
+                    target.getRemoteObjectCache().putProperties(obj, result.getResult());
+                  }
+
+                  collector.collectFields(result, !obj.isList(), isStatic, isLocal);
                 } catch (Throwable t) {
                   SDBGDebugCorePlugin.logError(t);
                   collector.worked();
@@ -85,6 +120,15 @@ class VariableCollector {
   public static VariableCollector createCollector(WebkitDebugTarget target,
       WebkitRemoteObject thisObject, WebkitRemoteObject exception, boolean flattenLocalScope,
       WebkitScope... scopes) {
+    return createCollector(target, thisObject, exception, flattenLocalScope, null, scopes);
+  }
+
+  /**
+   * @param snapshot if not null, the snapshot to take the properties of the local scope from
+   */
+  static VariableCollector createCollector(WebkitDebugTarget target,
+      WebkitRemoteObject thisObject, WebkitRemoteObject exception, boolean flattenLocalScope,
+      ScopeSnapshot snapshot, WebkitScope... scopes) {
     final VariableCollector collector = new VariableCollector(target, flattenLocalScope ? 1 : 0);
 
     if (thisObject != null) {
@@ -97,7 +141,19 @@ class VariableCollector {
 
     if (flattenLocalScope) {
       for (WebkitScope scope : scopes) {
-        if (scope.isLocal()) {
+        if (scope.isLocal() && snapshot != null) {
+          snapshot.getProperties(scope.getObject(), new ScopeSnapshot.PropertiesCallback() {
+            @Override
+            public void handleProperties(WebkitPropertyDescriptor[] properties) {
+              try {
+                collector.collectProperties(properties, true, false, true);
+              } catch (Throwable t) {
+                SDBGDebugCorePlugin.logError(t);
+                collector.worked();
+              }
+            }
+          });
+        } else if (scope.isLocal()) {
           try {
             target.getConnection().getRuntime().getProperties(
                 scope.getObject(),
@@ -139,6 +195,14 @@ class VariableCollector {
     return new VariableCollector(target, variables);
   }
 
+  private static boolean isScope(WebkitDebugVariable variable, String name) {
+    try {
+      return variable != null && variable.isScope() && name.equals(variable.getName());
+    } catch (DebugException e) {
+      return false;
+    }
+  }
+
   public VariableCollector(WebkitDebugTarget target, List<IVariable> variables) {
     this.target = target;
     this.variables.addAll(variables);
@@ -155,23 +219,57 @@ class VariableCollector {
     this.latch = new CountDownLatch(work);
   }
 
+  /**
+   * Pass the variables to the given callback once they are collected, without waiting for them.
+   */
+  public void computeVariables(IVariablesCallback callback) {
+    synchronized (this) {
+      if (latch.getCount() > 0) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+
+    callback.variablesComputed(variables.toArray(new IVariable[variables.size()]));
+  }
+
+  /**
+   * Wait for the variables to be collected, for at most {@link #COLLECT_TIMEOUT}.
+   * 
+   * @return the variables, or none if they were not collected in time
+   */
   public IVariable[] getVariables() throws InterruptedException {
-    latch.await();
+    if (!latch.await(COLLECT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+      return new IVariable[0];
+    }
 
     return variables.toArray(new IVariable[variables.size()]);
   }
 
+  /**
+   * Wait for the properties to be collected, for at most {@link #COLLECT_TIMEOUT}.
+   * 
+   * @return the properties, or none if they were not collected in time
+   */
   public List<WebkitPropertyDescriptor> getWebkitProperties() throws InterruptedException {
-    latch.await();
+    if (!latch.await(COLLECT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+      return Collections.emptyList();
+    }
 
     return webkitProperties;
   }
 
   private void collectFields(WebkitResult<WebkitPropertyDescriptor[]> results, boolean shouldSort,
       boolean isStatic, boolean isLocal) {
-    if (!results.isError()) {
-      WebkitPropertyDescriptor[] properties = results.getResult();
+    collectProperties(results.isError() ? null : results.getResult(), shouldSort, isStatic, isLocal);
+  }
 
+  /**
+   * @param properties the properties, or null if they could not be fetched
+   */
+  private void collectProperties(WebkitPropertyDescriptor[] properties, boolean shouldSort,
+      boolean isStatic, boolean isLocal) {
+    if (properties != null) {
       if (shouldSort) {
         properties = sort(properties);
       }
@@ -195,7 +293,7 @@ class VariableCollector {
       }
     }
 
-    latch.countDown();
+    worked();
   }
 
   @SuppressWarnings("unused")
@@ -315,7 +413,24 @@ class VariableCollector {
   }
 
   private void worked() {
-    latch.countDown();
+    List<IVariablesCallback> done;
+
+    synchronized (this) {
+      latch.countDown();
+
+      if (latch.getCount() > 0 || callbacks.isEmpty()) {
+        return;
+      }
+
+      done = callbacks;
+      callbacks = new ArrayList<IVariablesCallback>();
+    }
+
+    IVariable[] result = variables.toArray(new IVariable[variables.size()]);
+
+    for (IVariablesCallback callback : done) {
+      callback.variablesComputed(result);
+    }
   }
 
 }
@@ -14,6 +14,7 @@
 
 package com.github.sdbg.debug.core.internal.webkit.model;
 
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.internal.util.DOMResourceTrackersManager;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitNode;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScript;
@@ -57,6 +58,8 @@ class WebkitDOMResourceTrackersManager extends DOMResourceTrackersManager implem
 
   private WebkitDebugTarget target;
 
+  private boolean domainsAcquired;
+
   public WebkitDOMResourceTrackersManager(WebkitDebugTarget target) {
     this.target = target;
     initialize(target.getProject(), this);
@@ -65,6 +68,18 @@ class WebkitDOMResourceTrackersManager extends DOMResourceTrackersManager implem
   @Override
   public void dispose() {
     super.dispose();
+
+    if (domainsAcquired) {
+      domainsAcquired = false;
+
+      try {
+        target.getConnection().getCSS().release();
+        target.getConnection().getDom().release();
+        target.getConnection().getPage().release();
+      } catch (IOException e) {
+        SDBGDebugCorePlugin.logError(e);
+      }
+    }
   }
 
   @Override
@@ -96,6 +111,20 @@ class WebkitDOMResourceTrackersManager extends DOMResourceTrackersManager implem
     return references;
   }
 
+  /**
+   * Enable the domains the trackers rely on. The page, DOM and CSS notifications are only useful
+   * to the trackers, so the domains are left disabled when there are none.
+   */
+  void connect() throws IOException {
+    if (hasTrackers() && !domainsAcquired) {
+      target.getConnection().getPage().acquire();
+      target.getConnection().getDom().acquire();
+      target.getConnection().getCSS().acquire();
+
+      domainsAcquired = true;
+    }
+  }
+
   @Override
   public void reload() throws IOException {
     target.getConnection().getPage().reload();
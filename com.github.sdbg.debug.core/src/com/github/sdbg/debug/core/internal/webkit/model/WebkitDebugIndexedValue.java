@@ -14,19 +14,21 @@
 
 package com.github.sdbg.debug.core.internal.webkit.model;
 
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitFuture;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+import com.github.sdbg.debug.core.model.ISDBGIndexedValue;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.debug.core.DebugException;
-import org.eclipse.debug.core.model.IIndexedValue;
 import org.eclipse.debug.core.model.IVariable;
 
 /**
@@ -34,7 +36,12 @@ import org.eclipse.debug.core.model.IVariable;
  * framework will display arrays in groups of 100 elements if it can identify which IValues are
  * arrays.
  */
-public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexedValue {
+public class WebkitDebugIndexedValue extends WebkitDebugValue implements ISDBGIndexedValue {
+
+  /**
+   * How long to wait for a range of elements, in seconds.
+   */
+  private static final int ELEMENTS_TIMEOUT = 10;
 
   WebkitDebugIndexedValue(WebkitDebugTarget target, WebkitDebugVariable variable,
       WebkitRemoteObject value) {
@@ -42,41 +49,107 @@ public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexe
   }
 
   @Override
-  public int getInitialOffset() {
-    return 0;
-  }
+  public void computeSize(final ISizeCallback callback) {
+    Integer length = getTarget().getRemoteObjectCache().getListLength(value);
 
-  @Override
-  public int getSize() throws DebugException {
-    return value.getListLength(getTarget().getConnection());
+    if (length == null && value.hasListLength()) {
+      length = value.getListLength(getConnection());
+    }
+
+    if (length != null) {
+      callback.sizeComputed(length.intValue());
+      return;
+    }
+
+    try {
+      getConnection().getRuntime().callListLength(
+          value.getObjectId(),
+          new WebkitCallback<Integer>() {
+            @Override
+            public void handleResult(WebkitResult<Integer> result) {
+              if (result.isError()) {
+                callback.sizeComputed(0);
+                return;
+              }
+
+              int length = result.getResult() == null ? 0 : result.getResult().intValue();
+
+              getTarget().getRemoteObjectCache().putListLength(value, length);
+              callback.sizeComputed(length);
+            }
+          });
+    } catch (IOException e) {
+      SDBGDebugCorePlugin.logError(e);
+
+      callback.sizeComputed(0);
+    }
   }
 
   @Override
-  public IVariable getVariable(int offset) throws DebugException {
-    try {
-      WebkitRemoteObject result = getIndexAt(value, offset);
+  public void computeVariables(final IVariablesCallback callback) {
+    if (variableCollector != null) {
+      super.computeVariables(callback);
+      return;
+    }
 
-      if (result == null) {
-        result = WebkitRemoteObject.createNull();
+    // Fetch the length, then all the elements at once, without waiting for either.
+    computeSize(new ISizeCallback() {
+      @Override
+      public void sizeComputed(int size) {
+        computeVariables(0, size, callback);
       }
+    });
+  }
+
+  @Override
+  public void computeVariables(final int offset, int length, final IVariablesCallback callback) {
+    if (length <= 0) {
+      callback.variablesComputed(new IVariable[0]);
+      return;
+    }
 
-      return new WebkitDebugVariable(getTarget(), WebkitPropertyDescriptor.createIndexProperty(
+    try {
+      getConnection().getRuntime().getElements(
+          value,
           offset,
-          result));
+          length,
+          new WebkitCallback<WebkitRemoteObject[]>() {
+            @Override
+            public void handleResult(WebkitResult<WebkitRemoteObject[]> result) {
+              callback.variablesComputed(result.isError() ? new IVariable[0] : createVariables(
+                  offset,
+                  result.getResult()));
+            }
+          });
     } catch (IOException e) {
-      throw createDebugException(e);
+      SDBGDebugCorePlugin.logError(e);
+
+      callback.variablesComputed(new IVariable[0]);
     }
   }
 
   @Override
-  public IVariable[] getVariables(int offset, int length) throws DebugException {
-    IVariable[] results = new IVariable[length];
+  public int getInitialOffset() {
+    return 0;
+  }
 
-    for (int i = 0; i < length; i++) {
-      results[i] = getVariable(offset + i);
-    }
+  @Override
+  public int getSize() throws DebugException {
+    return getTarget().getListLength(value);
+  }
 
-    return results;
+  @Override
+  public IVariable getVariable(int offset) throws DebugException {
+    return getVariables(offset, 1)[0];
+  }
+
+  @Override
+  public IVariable[] getVariables(int offset, int length) throws DebugException {
+    try {
+      return createVariables(offset, getElements(value, offset, length));
+    } catch (IOException e) {
+      throw createDebugException(e);
+    }
   }
 
   @Override
@@ -92,7 +165,7 @@ public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexe
   @Override
   protected void populate() {
     try {
-      int length = value.getListLength(getTarget().getConnection());
+      int length = getTarget().getListLength(value);
 
       IVariable[] variables = getVariables(0, length);
       List<IVariable> variablesList = new ArrayList<IVariable>();
@@ -107,32 +180,39 @@ public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexe
     }
   }
 
-  private WebkitRemoteObject getIndexAt(WebkitRemoteObject listObject, int offset)
-      throws IOException {
-    final WebkitRemoteObject[] results = new WebkitRemoteObject[1];
-
-    final CountDownLatch latch = new CountDownLatch(1);
-
-    getConnection().getRuntime().callFunctionOn(
-        listObject.getObjectId(),
-        "function(){return this[" + offset + "];}",
-        null,
-        false,
-        new WebkitCallback<WebkitRemoteObject>() {
-          @Override
-          public void handleResult(WebkitResult<WebkitRemoteObject> result) {
-            results[0] = result.getResult();
-            latch.countDown();
-          }
-        });
+  private IVariable[] createVariables(int offset, WebkitRemoteObject[] elements) {
+    IVariable[] results = new IVariable[elements.length];
 
-    try {
-      latch.await(3, TimeUnit.SECONDS);
-    } catch (InterruptedException e) {
-      return null;
+    for (int i = 0; i < elements.length; i++) {
+      WebkitRemoteObject element = elements[i];
+
+      // A hole of the list.
+      if (element == null) {
+        element = WebkitRemoteObject.createUndefined();
+      }
+
+      results[i] = new WebkitDebugVariable(
+          getTarget(),
+          WebkitPropertyDescriptor.createIndexProperty(offset + i, element));
+    }
+
+    return results;
+  }
+
+  /**
+   * Fetch a range of the elements of the given list at once.
+   */
+  private WebkitRemoteObject[] getElements(WebkitRemoteObject listObject, int offset, int length)
+      throws IOException {
+    if (length == 0) {
+      return new WebkitRemoteObject[0];
     }
 
-    return results[0];
+    WebkitFuture<WebkitRemoteObject[]> elements = new WebkitFuture<WebkitRemoteObject[]>();
+
+    getConnection().getRuntime().getElements(listObject, offset, length, elements);
+
+    return elements.getResult(ELEMENTS_TIMEOUT, TimeUnit.SECONDS);
   }
 
 }
@@ -28,14 +28,15 @@ import com.github.sdbg.debug.core.model.IExpressionEvaluator;
 import com.github.sdbg.debug.core.model.ISDBGStackFrame;
 import com.github.sdbg.debug.core.model.ISDBGValue.IValueCallback;
 import com.github.sdbg.debug.core.model.IVariableResolver;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.debug.core.DebugEvent;
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IDebugTarget;
 import org.eclipse.debug.core.model.IRegisterGroup;
@@ -62,18 +63,29 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
 
   private IValue globalScopeValue;
 
+  private AtomicBoolean exceptionDetailRequested = new AtomicBoolean();
+  private volatile String exceptionDetail;
+
   public WebkitDebugStackFrame(IDebugTarget target, IThread thread, WebkitCallFrame webkitFrame) {
     this(target, thread, webkitFrame, null);
   }
 
   public WebkitDebugStackFrame(IDebugTarget target, IThread thread, WebkitCallFrame webkitFrame,
       WebkitRemoteObject exception) {
+    this(target, thread, webkitFrame, exception, null);
+  }
+
+  /**
+   * @param snapshot if not null, the snapshot to take the local variables from
+   */
+  WebkitDebugStackFrame(IDebugTarget target, IThread thread, WebkitCallFrame webkitFrame,
+      WebkitRemoteObject exception, ScopeSnapshot snapshot) {
     super(target);
 
     this.thread = thread;
     this.webkitFrame = webkitFrame;
 
-    fillInWebkitVariables(exception);
+    fillInWebkitVariables(exception, snapshot);
   }
 
   @Override
@@ -106,6 +118,11 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
     return getThread().canTerminate();
   }
 
+  @Override
+  public void computeVariables(IVariablesCallback callback) {
+    variableCollector.computeVariables(callback);
+  }
+
   @Override
   public void evaluateExpression(final String expression, final IWatchExpressionListener listener) {
     try {
@@ -210,30 +227,32 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
     return -1;
   }
 
+  /**
+   * Return the text of the exception. This is called from the label and instruction pointer
+   * providers, so it does not wait for the exception's toString(): until it is computed, the value
+   * string is shown, and the label is updated once it arrives.
+   */
   @Override
   public String getExceptionDisplayText() throws DebugException {
     WebkitDebugVariable variable = (WebkitDebugVariable) getVariables()[0];
     WebkitDebugValue exceptionValue = (WebkitDebugValue) variable.getValue();
 
-    final String[] result = new String[1];
-    final CountDownLatch latch = new CountDownLatch(1);
-
-    exceptionValue.computeDetail(new IValueCallback() {
-      @Override
-      public void detailComputed(String stringValue) {
-        result[0] = stringValue;
-
-        latch.countDown();
-      }
-    });
+    if (exceptionDetailRequested.compareAndSet(false, true)) {
+      exceptionValue.computeDetail(new IValueCallback() {
+        @Override
+        public void detailComputed(String stringValue) {
+          if (stringValue != null) {
+            exceptionDetail = stringValue;
 
-    try {
-      latch.await(1000, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException e) {
-      return "Exception: " + exceptionValue.getValueString();
+            fireChangeEvent(DebugEvent.STATE);
+          }
+        }
+      });
     }
 
-    return "Exception: " + result[0];
+    String detail = exceptionDetail;
+
+    return "Exception: " + (detail != null ? detail : exceptionValue.getValueString());
   }
 
   @Override
@@ -484,7 +503,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
    * 
    * @param exception can be null
    */
-  private void fillInWebkitVariables(WebkitRemoteObject exception) {
+  private void fillInWebkitVariables(WebkitRemoteObject exception, ScopeSnapshot snapshot) {
     isExceptionStackFrame = (exception != null);
 
     WebkitRemoteObject thisObject = null;
@@ -497,6 +516,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
         thisObject,
         exception,
         true,
+        snapshot,
         webkitFrame.getScopeChain());
   }
 
@@ -19,7 +19,6 @@ import com.github.sdbg.debug.core.SDBGDebugCorePlugin.BreakOnExceptions;
 import com.github.sdbg.debug.core.breakpoints.IBreakpointPathResolver;
 import com.github.sdbg.debug.core.breakpoints.SDBGBreakpoint;
 import com.github.sdbg.debug.core.internal.android.ADBManager;
-import com.github.sdbg.debug.core.internal.util.DOMResourceTrackersManager;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitBreakpoint;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallFrame;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
@@ -39,6 +38,8 @@ import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.debug.core.model.ISDBGDebugTarget;
 
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.core.resources.IMarkerDelta;
@@ -51,6 +52,7 @@ import org.eclipse.debug.core.IBreakpointManager;
 import org.eclipse.debug.core.IBreakpointManagerListener;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchListener;
 import org.eclipse.debug.core.model.IBreakpoint;
 import org.eclipse.debug.core.model.IDebugTarget;
 import org.eclipse.debug.core.model.ILineBreakpoint;
@@ -76,14 +78,28 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
   private boolean enableBreakpoints;
   private WebkitDebugThread debugThread;
   private ISDBGBreakpointManager breakpointManager;
-  private DOMResourceTrackersManager domResourceTrackersManager;
+  private WebkitDOMResourceTrackersManager domResourceTrackersManager;
   private boolean canSetScriptSource;
   private SourceMapManager sourceMapManager;
+
+  /**
+   * The source maps of this target once DevTools replaced our connection, kept for the target
+   * reconnecting to the page as long as memory allows. Guarded by this target.
+   */
+  private SoftReference<SourceMapManager> retainedSourceMapManager;
+
+  /**
+   * Drops the retained source maps once the launch is removed. Guarded by this target.
+   */
+  private ILaunchListener retainedLaunchListener;
+
   private ADBManager adbManager;
   private IProject project;
 
   private WebkitNode rootNode;
 
+  private RemoteObjectCache remoteObjectCache = new RemoteObjectCache();
+
   public static WebkitDebugTarget getActiveTarget() {
     return activeTarget;
   }
@@ -129,12 +145,57 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     connection.getDebugger().setResteppingManager(new WebkitResteppingManagerImpl(this));
   }
 
+  /**
+   * A target which only talks to the given connection: it has no launch, breakpoints, source maps
+   * or DOM resource trackers, and does not become the active target. The model tests build their
+   * values against it.
+   */
+  WebkitDebugTarget(WebkitConnection connection) {
+    super(null);
+
+    this.connection = connection;
+
+    debugThread = new WebkitDebugThread(this);
+    breakpointManager = new BreakpointManager.NullBreakpointManager();
+  }
+
+  /**
+   * A target which only talks to the given connection, but which, unlike
+   * {@link #WebkitDebugTarget(WebkitConnection)}, loads the source maps of the parsed scripts and
+   * sets breakpoints. The breakpoints are not taken from the Eclipse breakpoint manager; the tests
+   * add them to {@link #getBreakpointManager()} themselves.
+   */
+  WebkitDebugTarget(WebkitConnection connection, IResourceResolver resourceResolver) {
+    super(null);
+
+    this.connection = connection;
+    this.resourceResolver = resourceResolver;
+
+    debugThread = new WebkitDebugThread(this);
+    breakpointManager = new BreakpointManager(this);
+    sourceMapManager = new SourceMapManager(resourceResolver);
+
+    addDebuggerListener();
+  }
+
   /**
    * A copy constructor for WebkitDebugTarget.
    * 
    * @param target
    */
   public WebkitDebugTarget(WebkitDebugTarget target) {
+    this(target, false);
+  }
+
+  /**
+   * A copy constructor for WebkitDebugTarget, reconnecting to the same page.
+   * 
+   * @param target
+   * @param reuseCaches whether to carry the parsed scripts and the decoded source maps of the given
+   *          target over; the scripts and maps the browser reports unchanged are then not fetched
+   *          and decoded again
+   */
+  public WebkitDebugTarget(WebkitDebugTarget target, boolean reuseCaches) {
     this(
         target.debugTargetName,
         new WebkitConnection(target.connection),
@@ -148,6 +209,21 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
 
     this.process = target.process;
     this.process.switchTo(this);
+
+    SourceMapManager retainedManager = target.takeRetainedSourceMapManager();
+
+    if (reuseCaches) {
+      connection.getDebugger().retainScripts(target.connection.getDebugger());
+
+      SourceMapManager previousManager = target.sourceMapManager;
+      if (previousManager == null) {
+        previousManager = retainedManager;
+      }
+
+      if (previousManager != null) {
+        sourceMapManager.adopt(previousManager);
+      }
+    }
   }
 
   @Override
@@ -256,6 +332,13 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     return launch;
   }
 
+  /**
+   * Return the length of the given list; the lengths are kept until the debugger resumes.
+   */
+  int getListLength(WebkitRemoteObject list) {
+    return remoteObjectCache.getListLength(list, connection);
+  }
+
   @Override
   public IMemoryBlock getMemoryBlock(long startAddress, long length) throws DebugException {
     return null;
@@ -344,9 +427,7 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
         resyncRootNode();
       }
     });
-    connection.getPage().enable();
-    connection.getDom().enable();
-    connection.getCSS().enable();
+    domResourceTrackersManager.connect();
 
     connection.getDom().addDomListener(new DomListener() {
       @Override
@@ -369,49 +450,8 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
       });
     }
 
-    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
-      @Override
-      public void debuggerBreakpointResolved(WebkitBreakpoint breakpoint) {
-        breakpointManager.handleBreakpointResolved(breakpoint);
-      }
-
-      @Override
-      public void debuggerGlobalObjectCleared() {
-        // It is important to first remove the sourcemaps 
-        // and only then the breakpoints  
-        sourceMapManager.handleGlobalObjectCleared();
-        breakpointManager.handleGlobalObjectCleared();
-      }
-
-      @Override
-      public void debuggerPaused(PausedReasonType reason, List<WebkitCallFrame> frames,
-          WebkitRemoteObject exception) {
-        if (exception != null) {
-          printExceptionToStdout(exception);
-        }
-
-        debugThread.handleDebuggerSuspended(reason, frames, exception);
-      }
-
-      @Override
-      public void debuggerResumed() {
-        debugThread.handleDebuggerResumed();
-      }
-
-      @Override
-      public void debuggerScriptParsed(final WebkitScript script) {
-        checkForDebuggerExtension(script);
-        //TODO: Too chatty Trace.trace("Script " + script + " loaded");
-
-        if (script.hasScriptSource() || script.getSourceMapURL() != null) {
-          IStorage storage = new WebkitScriptStorage(script, script.getScriptSource());
-          breakpointManager.removeBreakpointsConcerningScript(storage);
-          sourceMapManager.handleScriptParsed(storage, script.getUrl(), script.getSourceMapURL());
-          breakpointManager.addBreakpointsConcerningScript(storage);
-        }
-      }
-    });
-    connection.getDebugger().enable();
+    addDebuggerListener();
+    connection.getDebugger().acquire();
 
     IBreakpointManager eclipseBpManager = DebugPlugin.getDefault().getBreakpointManager();
     eclipseBpManager.addBreakpointManagerListener(this);
@@ -453,7 +493,19 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
    */
   @Override
   public WebkitDebugTarget reconnect() throws IOException {
-    WebkitDebugTarget newTarget = new WebkitDebugTarget(this);
+    return reconnect(true);
+  }
+
+  /**
+   * Attempt to re-connect to a debug target. If successful, it will return a new WebkitDebugTarget.
+   * 
+   * @param reuseCaches whether to carry the parsed scripts and the decoded source maps over to the
+   *          new target, instead of fetching and decoding them all again
+   * @return
+   * @throws IOException
+   */
+  public WebkitDebugTarget reconnect(boolean reuseCaches) throws IOException {
+    WebkitDebugTarget newTarget = new WebkitDebugTarget(this, reuseCaches);
 
     newTarget.reopenConnection();
 
@@ -551,6 +603,13 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     return breakpointManager;
   }
 
+  /**
+   * @return what is known about the remote objects of the current suspension
+   */
+  RemoteObjectCache getRemoteObjectCache() {
+    return remoteObjectCache;
+  }
+
   protected IResourceResolver getResourceResolver() {
     return resourceResolver;
   }
@@ -606,6 +665,9 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
         // Only show this message if the user launched Dartium with debugging enabled.
         disconnectMessage = "devtools disconnect";
 
+        // The user is offered to reconnect once DevTools is closed.
+        retainSourceMapManager();
+
         DebugUIHelper.getHelper().handleDevtoolsDisconnect(this);
       }
     }
@@ -671,6 +733,89 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
    * @param script the Debugger.scriptParsed event
    * @see dartbug.com/10298
    */
+  private void addDebuggerListener() {
+    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
+      @Override
+      public void debuggerBreakpointResolved(WebkitBreakpoint breakpoint) {
+        breakpointManager.handleBreakpointResolved(breakpoint);
+      }
+
+      @Override
+      public void debuggerGlobalObjectCleared() {
+        // It is important to first remove the sourcemaps 
+        // and only then the breakpoints  
+        sourceMapManager.handleGlobalObjectCleared();
+        breakpointManager.handleGlobalObjectCleared();
+
+        remoteObjectCache.clear();
+      }
+
+      @Override
+      public void debuggerPaused(PausedReasonType reason, List<WebkitCallFrame> frames,
+          WebkitRemoteObject exception) {
+        remoteObjectCache.clear();
+
+        if (exception != null) {
+          printExceptionToStdout(exception);
+        }
+
+        debugThread.handleDebuggerSuspended(reason, frames, exception);
+
+        // Source maps are loaded in the background. Rather than holding back the protocol events
+        // until the maps of the paused frames are there, show the frames again once they are.
+        sourceMapManager.runWhenSourceMapsLoaded(
+            getParsedScriptStorages(frames),
+            debugThread.createFramesRefresh());
+      }
+
+      @Override
+      public void debuggerResumed() {
+        // Object ids are only valid while suspended.
+        remoteObjectCache.clear();
+
+        debugThread.handleDebuggerResumed();
+      }
+
+      @Override
+      public void debuggerScriptParsed(final WebkitScript script) {
+        checkForDebuggerExtension(script);
+        //TODO: Too chatty Trace.trace("Script " + script + " loaded");
+
+        if (script.hasScriptSource() || script.getSourceMapURL() != null) {
+          final IStorage storage = new WebkitScriptStorage(script, script.getScriptSource());
+
+          if (sourceMapManager.isLoaded(
+              storage,
+              script.getUrl(),
+              script.getSourceMapURL(),
+              script.getHash())) {
+            // Reconnected to the same script; its breakpoints are already set.
+            return;
+          }
+
+          breakpointManager.removeBreakpointsConcerningScript(storage);
+
+          // Don't hold back the following protocol events while the source map is loaded; the
+          // breakpoints are re-armed once it is there.
+          sourceMapManager.handleScriptParsed(
+              storage,
+              script.getUrl(),
+              script.getSourceMapURL(),
+              script.getHash(),
+              new Runnable() {
+                @Override
+                public void run() {
+                  ISDBGBreakpointManager manager = breakpointManager;
+                  if (manager != null && !isTerminated()) {
+                    manager.addBreakpointsConcerningScript(storage);
+                  }
+                }
+              });
+        }
+      }
+    });
+  }
+
   private void checkForDebuggerExtension(WebkitScript script) {
     // {"method":"Debugger.scriptParsed","params":{"startLine":0,"libraryId":0,"endLine":154,
     //   "startColumn":0,"scriptId":"26","url":"chrome-extension://ognampngfcbddbfemdapefohjiobgbdl/data_loader.js",
@@ -687,6 +832,24 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     }
   }
 
+  /**
+   * Return the storages the source map manager knows the scripts of the given frames by.
+   */
+  private List<IStorage> getParsedScriptStorages(List<WebkitCallFrame> frames) {
+    List<IStorage> storages = new ArrayList<IStorage>();
+
+    for (WebkitCallFrame frame : frames) {
+      WebkitScript script = getConnection().getDebugger().getScript(
+          frame.getLocation().getScriptId());
+
+      if (script != null) {
+        storages.add(new WebkitScriptStorage(script, null));
+      }
+    }
+
+    return storages;
+  }
+
   private PauseOnExceptionsType getPauseType() {
     if (!enableBreakpoints) {
       return PauseOnExceptionsType.none;
@@ -704,6 +867,52 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     return pauseType;
   }
 
+  private synchronized void releaseRetainedSourceMapManager() {
+    retainedSourceMapManager = null;
+
+    if (retainedLaunchListener != null) {
+      DebugPlugin.getDefault().getLaunchManager().removeLaunchListener(retainedLaunchListener);
+      retainedLaunchListener = null;
+    }
+  }
+
+  /**
+   * Keep the source maps for the target reconnecting to the page, until it takes them over or the
+   * launch is removed.
+   */
+  private synchronized void retainSourceMapManager() {
+    SourceMapManager manager = sourceMapManager;
+
+    if (manager == null || DebugPlugin.getDefault() == null) {
+      return;
+    }
+
+    retainedSourceMapManager = new SoftReference<SourceMapManager>(manager);
+
+    if (retainedLaunchListener == null) {
+      retainedLaunchListener = new ILaunchListener() {
+        @Override
+        public void launchAdded(ILaunch launch) {
+
+        }
+
+        @Override
+        public void launchChanged(ILaunch launch) {
+
+        }
+
+        @Override
+        public void launchRemoved(ILaunch launch) {
+          if (launch == WebkitDebugTarget.this.launch) {
+            releaseRetainedSourceMapManager();
+          }
+        }
+      };
+
+      DebugPlugin.getDefault().getLaunchManager().addLaunchListener(retainedLaunchListener);
+    }
+  }
+
   private void resyncRootNode() {
     // Flush everything.
     rootNode = null;
@@ -723,4 +932,17 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
       SDBGDebugCorePlugin.logError(e);
     }
   }
+
+  /**
+   * @return the retained source maps, if they are still around; they are handed over only once
+   */
+  private synchronized SourceMapManager takeRetainedSourceMapManager() {
+    SourceMapManager manager = retainedSourceMapManager == null ? null
+        : retainedSourceMapManager.get();
+
+    releaseRetainedSourceMapManager();
+
+    return manager;
+  }
+
 }
@@ -40,7 +40,7 @@ public class WebkitDebugThread extends WebkitDebugElement implements ISDBGThread
   private int expectedResumeReason = DebugEvent.UNSPECIFIED;
 
   private boolean suspended;
-  private IStackFrame[] suspendedFrames = EMPTY_FRAMES;
+  private volatile IStackFrame[] suspendedFrames = EMPTY_FRAMES;
   private IBreakpoint[] suspendedBreakpoints = EMPTY_BREAKPOINTS;
 
   /**
@@ -262,22 +262,39 @@ public class WebkitDebugThread extends WebkitDebugElement implements ISDBGThread
     fireResumeEvent(reason);
   }
 
+  /**
+   * @return a task which refreshes the frames of the current suspension, when something they show
+   *         has changed; it does nothing once the thread has resumed
+   */
+  Runnable createFramesRefresh() {
+    final IStackFrame[] frames = suspendedFrames;
+
+    return new Runnable() {
+      @Override
+      public void run() {
+        if (suspendedFrames == frames && frames.length > 0) {
+          fireChangeEvent(DebugEvent.CONTENT);
+        }
+      }
+    };
+  }
+
   private IStackFrame[] createFrames(List<WebkitCallFrame> webkitFrames,
       WebkitRemoteObject exception) {
     List<IStackFrame> frames = new ArrayList<IStackFrame>();
 
+    // Fetch the local variables of all the frames at once.
+    ScopeSnapshot snapshot = ScopeSnapshot.create(getTarget(), webkitFrames);
+
     for (int i = 0; i < webkitFrames.size(); i++) {
       WebkitCallFrame webkitFrame = webkitFrames.get(i);
 
-      WebkitDebugStackFrame frame;
-
-      if (i == 0 && exception != null) {
-        frame = new WebkitDebugStackFrame(getTarget(), this, webkitFrame, exception);
-      } else {
-        frame = new WebkitDebugStackFrame(getTarget(), this, webkitFrame);
-      }
-
-      frames.add(frame);
+      frames.add(new WebkitDebugStackFrame(
+          getTarget(),
+          this,
+          webkitFrame,
+          i == 0 ? exception : null,
+          snapshot));
     }
 
     return frames.toArray(new IStackFrame[frames.size()]);
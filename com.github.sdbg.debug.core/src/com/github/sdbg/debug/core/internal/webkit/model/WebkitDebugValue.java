@@ -22,6 +22,7 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
 import com.github.sdbg.debug.core.model.IExpressionEvaluator;
 import com.github.sdbg.debug.core.model.ISDBGValue;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -75,11 +76,18 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
       return;
     }
 
-    if (value.isNull()) {
+    if (value.isNull() || value.isUndefined()) {
       callback.detailComputed(getDisplayString());
       return;
     }
 
+    String detail = getTarget().getRemoteObjectCache().getDetail(value);
+
+    if (detail != null) {
+      callback.detailComputed(detail);
+      return;
+    }
+
     // Otherwise try and call the toString() method of the object.
     try {
       getConnection().getRuntime().callToString(value.getObjectId(), new WebkitCallback<String>() {
@@ -88,6 +96,8 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
           if (result.isError()) {
             callback.detailComputed(result.getErrorMessage());
           } else {
+            getTarget().getRemoteObjectCache().putDetail(value, result.getResult());
+
             callback.detailComputed(result.getResult());
           }
         }
@@ -99,6 +109,15 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
     }
   }
 
+  @Override
+  public void computeVariables(IVariablesCallback callback) {
+    if (variableCollector == null) {
+      populate();
+    }
+
+    variableCollector.computeVariables(callback);
+  }
+
   @Override
   public void evaluateExpression(final String expression, final IWatchExpressionListener listener) {
     String exprText = expression;
@@ -206,7 +225,12 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
 
   @Override
   public int getListLength() {
-    return value.getListLength(getConnection());
+    return getTarget().getListLength(value);
+  }
+
+  @Override
+  public String getObjectId() {
+    return value == null ? null : value.getObjectId();
   }
 
   @Override
@@ -338,7 +362,7 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
     try {
       getConnection().getRuntime().evaluate(
           expression,
-          null,
+          getConnection().getDebugger().useObjectGroup(),
           false,
           new WebkitCallback<WebkitRemoteObject>() {
             @Override
@@ -23,7 +23,6 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
-import java.util.Collection;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -132,9 +131,9 @@ public class WebkitRemoteScriptSourceContainer extends AbstractSourceContainer {
 
       if (script == null) {
         // In WebkitDebugStackFrame.getActualLocationPath(), we strip off the leading part of the
-        // url. This traverses all the scripts that V8 knows about to locate a script with
-        // a url that ends with the given path fragment.
-        script = findMatchingScript(target.getConnection().getDebugger().getAllScripts(), name);
+        // url. This looks up a script that V8 knows about with a url that ends with the given
+        // path fragment.
+        script = target.getConnection().getDebugger().getScriptByUrlSuffix(name);
       }
 
       if (script != null) {
@@ -165,16 +164,6 @@ public class WebkitRemoteScriptSourceContainer extends AbstractSourceContainer {
     return EMPTY;
   }
 
-  private WebkitScript findMatchingScript(Collection<WebkitScript> scripts, String path) {
-    for (WebkitScript script : scripts) {
-      if (script.getUrl().endsWith(path)) {
-        return script;
-      }
-    }
-
-    return null;
-  }
-
   private LocalFileStorage getCreateStorageFor(WebkitScript script) throws IOException {
     if (script.getPrivateData() == null) {
       String url = script.getUrl();
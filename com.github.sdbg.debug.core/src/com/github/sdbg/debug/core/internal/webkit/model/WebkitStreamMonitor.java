@@ -121,12 +121,13 @@ class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListen
       messagesCleared();
 
       this.connection.getConsole().removeConsoleListener(this);
+      this.connection.getConsole().release();
     }
 
     this.connection = connection;
 
     connection.getConsole().addConsoleListener(this);
-    connection.getConsole().enable();
+    connection.getConsole().acquire();
   }
 
   protected void messageAdded(String message) {
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A batch of requests sent together. While a batch is open, the requests sent by its thread are
+ * held back, and they are all handed to the connection's writer at once when the batch is ended:
+ * 
+ * <pre>
+ * WebkitBatch batch = connection.beginBatch();
+ * try {
+ *   ... send requests ...
+ * } finally {
+ *   batch.end();
+ * }
+ * batch.waitForResults(5, TimeUnit.SECONDS);
+ * </pre>
+ * 
+ * Batches opened while another is open on the same thread join it; the requests are sent when the
+ * outermost batch ends. Do not wait for the result of a request while its batch is still open, as
+ * the request has not been sent yet.
+ */
+public class WebkitBatch {
+  private final WebkitConnection connection;
+
+  private int depth = 1;
+
+  private List<WebkitRequestWriter.Request> requests = new ArrayList<WebkitRequestWriter.Request>();
+
+  private int pendingResults;
+
+  WebkitBatch(WebkitConnection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * End the batch, and send its requests.
+   */
+  public void end() {
+    if (--depth == 0) {
+      connection.endBatch(requests);
+      requests = null;
+    }
+  }
+
+  /**
+   * Wait until the results of all the requests of the batch have been handled.
+   * 
+   * @return whether all the results were handled in time
+   */
+  public synchronized boolean waitForResults(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long end = System.nanoTime() + unit.toNanos(timeout);
+
+    while (pendingResults > 0) {
+      long remaining = end - System.nanoTime();
+
+      if (remaining <= 0) {
+        return false;
+      }
+
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+
+    return true;
+  }
+
+  void add(WebkitRequestWriter.Request request) {
+    requests.add(request);
+  }
+
+  void begin() {
+    depth++;
+  }
+
+  synchronized WebkitConnection.Callback track(final WebkitConnection.Callback callback) {
+    pendingResults++;
+
+    return new WebkitConnection.Callback() {
+      @Override
+      public void handleResult(JSONObject result) throws JSONException {
+        try {
+          callback.handleResult(result);
+        } finally {
+          resultHandled();
+        }
+      }
+    };
+  }
+
+  private synchronized void resultHandled() {
+    pendingResults--;
+
+    if (pendingResults == 0) {
+      notifyAll();
+    }
+  }
+
+}
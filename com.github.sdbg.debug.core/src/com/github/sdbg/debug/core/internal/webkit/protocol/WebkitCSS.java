@@ -40,7 +40,7 @@ import org.json.JSONObject;
  * using the <code>getStyleSheet[Text]()</code> methods.
  */
 @WebkitUnsupported
-public class WebkitCSS extends WebkitDomain {
+public class WebkitCSS extends WebkitEnableableDomain {
   public static interface CSSListener {
     /**
      * Fires whenever a MediaQuery result changes (for example, after a browser window has been
@@ -97,10 +97,12 @@ public class WebkitCSS extends WebkitDomain {
     listeners.add(listener);
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("CSS.disable");
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("CSS.enable");
   }
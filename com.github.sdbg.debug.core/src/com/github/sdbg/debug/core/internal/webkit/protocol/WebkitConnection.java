@@ -15,6 +15,8 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.utilities.instrumentation.Instrumentation;
+import com.github.sdbg.utilities.instrumentation.LatencyHistogram;
 
 import de.roderick.weberknecht.WebSocket;
 import de.roderick.weberknecht.WebSocketEventHandler;
@@ -25,9 +27,16 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -84,14 +93,79 @@ public class WebkitConnection {
     public void handleNotification(String method, JSONObject params) throws JSONException;
   }
 
+  /**
+   * A request waiting for its response.
+   */
+  private static class PendingRequest {
+    final String method;
+    final Callback callback;
+    final long startTime;
+    final long deadline;
+
+    PendingRequest(String method, Callback callback, long startTime, long timeout) {
+      this.method = method;
+      this.callback = callback;
+      this.startTime = startTime;
+      this.deadline = timeout > 0 ? startTime + TimeUnit.MILLISECONDS.toNanos(timeout)
+          : Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * The default timeout of the requests, in milliseconds. Requests have no deadline by default:
+   * evaluations may stop at a breakpoint, and script sources may take long to transfer.
+   */
+  public static final long DEFAULT_REQUEST_TIMEOUT = 0;
+
+  /**
+   * The timeout of the requests which only read or release the state of the debugger, and never
+   * run page code, in milliseconds.
+   */
+  public static final long METADATA_REQUEST_TIMEOUT = 30000;
+
+  /**
+   * The methods which are bounded by {@link #METADATA_REQUEST_TIMEOUT}.
+   */
+  private static final Set<String> METADATA_METHODS = new HashSet<String>(Arrays.asList(
+      "Runtime.getProperties",
+      "Runtime.releaseObject",
+      "Runtime.releaseObjectGroup"));
+
+  /**
+   * How often the pending requests are checked for timeouts, in milliseconds.
+   */
+  private static final long TIMEOUT_CHECK_PERIOD = 250;
+
+  /**
+   * @return the histogram of the round trip latency of the given method
+   */
+  public static LatencyHistogram getLatencyHistogram(String method) {
+    return Instrumentation.histogram("WebkitConnection-" + method);
+  }
+
+  /**
+   * @return the histogram of the time spent handling the results or notifications of the method
+   */
+  public static LatencyHistogram getCallbackHistogram(String method) {
+    return Instrumentation.histogram("WebkitConnection-" + method + "-callback");
+  }
+
   private URI webSocketUri;
 
   private String host;
   private int port;
   private String webSocketFile;
 
-  private WebSocket websocket;
-  private boolean connected;
+  private volatile WebkitTransport transport;
+  private volatile boolean connected;
+
+  private volatile WebkitRecorder recorder;
+
+  private volatile WebkitRequestWriter writer;
+
+  private ThreadLocal<WebkitBatch> batch = new ThreadLocal<WebkitBatch>();
+
+  private WebkitEventDispatcher eventDispatcher = new WebkitEventDispatcher();
 
   private WebkitConsole console;
   private WebkitDebugger debugger;
@@ -104,10 +178,15 @@ public class WebkitConnection {
   private WebkitNetwork network;
   private WebkitObservatory observatory;
 
-  private int requestId = 0;
+  private AtomicInteger requestId = new AtomicInteger();
+
+  private Map<String, NotificationHandler> notificationHandlers = new ConcurrentHashMap<String, NotificationHandler>();
+  private Map<Integer, PendingRequest> callbackMap = new ConcurrentHashMap<Integer, PendingRequest>();
+
+  private volatile long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+  private Map<String, Long> methodTimeouts = new ConcurrentHashMap<String, Long>();
 
-  private Map<String, NotificationHandler> notificationHandlers = new HashMap<String, NotificationHandler>();
-  private Map<Integer, Callback> callbackMap = new HashMap<Integer, Callback>();
+  private Timer timeoutTimer;
 
   private List<WebkitConnectionListener> connectionListeners = new ArrayList<WebkitConnectionListener>();
 
@@ -138,20 +217,47 @@ public class WebkitConnection {
     connectionListeners.add(listener);
   }
 
+  /**
+   * Begin a batch of requests on the current thread. The requests sent by this thread are held
+   * back until the batch is ended, and are then written together.
+   */
+  public WebkitBatch beginBatch() {
+    WebkitBatch current = batch.get();
+
+    if (current != null) {
+      current.begin();
+    } else {
+      current = new WebkitBatch(this);
+      batch.set(current);
+    }
+
+    return current;
+  }
+
   public void close() throws IOException {
-    if (websocket != null) {
+    if (writer != null) {
+      // Let the requests already sent reach the socket.
+      writer.close(1000);
+      writer = null;
+    }
+
+    stopTimeouts();
+
+    WebkitTransport currentTransport = transport;
+
+    if (currentTransport != null) {
       try {
-        websocket.close();
-      } catch (WebSocketException exception) {
-        throw new IOException(exception);
+        currentTransport.close();
       } finally {
-        websocket = null;
+        transport = null;
       }
     }
   }
 
   public void connect() throws IOException {
     try {
+      final WebSocket websocket;
+
       if (webSocketUri != null) {
         websocket = new WebSocket(webSocketUri);
       } else {
@@ -162,9 +268,7 @@ public class WebkitConnection {
       websocket.setEventHandler(new WebSocketEventHandler() {
         @Override
         public void onClose() {
-          websocket = null;
-
-          notifyClosed();
+          transportClosed();
         }
 
         @Override
@@ -190,10 +294,34 @@ public class WebkitConnection {
         }
       });
 
+      startWriter(new WebkitTransport() {
+        @Override
+        public void close() throws IOException {
+          try {
+            websocket.close();
+          } catch (WebSocketException exception) {
+            throw new IOException(exception);
+          }
+        }
+
+        @Override
+        public void send(String text) throws IOException {
+          try {
+            websocket.send(text);
+          } catch (WebSocketException exception) {
+            throw new IOException(exception);
+          }
+        }
+      });
+
       websocket.connect();
     } catch (WebSocketException exception) {
+      transport = null;
+      abortWriter();
       throw new IOException(exception);
     } catch (Throwable exception) {
+      transport = null;
+      abortWriter();
       // Defensively catch any programming errors from the weberknecht library.
       throw new IOException(exception);
     }
@@ -239,6 +367,13 @@ public class WebkitConnection {
     return domDebugger;
   }
 
+  /**
+   * @return the dispatcher of the notifications of this connection
+   */
+  public WebkitEventDispatcher getEventDispatcher() {
+    return eventDispatcher;
+  }
+
   public WebkitNetwork getNetwork() {
     if (network == null) {
       network = new WebkitNetwork(this);
@@ -255,6 +390,10 @@ public class WebkitConnection {
     return observatory;
   }
 
+  public WebkitRecorder getRecorder() {
+    return recorder;
+  }
+
   public WebkitPage getPage() {
     if (page == null) {
       page = new WebkitPage(this);
@@ -283,6 +422,21 @@ public class WebkitConnection {
     }
   }
 
+  /**
+   * @return the timeout of the requests for the given method, in milliseconds; 0 means none
+   */
+  public long getRequestTimeout(String method) {
+    Long timeout = methodTimeouts.get(method);
+
+    if (timeout != null) {
+      return timeout.longValue();
+    } else if (METADATA_METHODS.contains(method)) {
+      return METADATA_REQUEST_TIMEOUT;
+    } else {
+      return requestTimeout;
+    }
+  }
+
   public WebkitWorker getWorker() {
     if (worker == null) {
       worker = new WebkitWorker(this);
@@ -292,39 +446,79 @@ public class WebkitConnection {
   }
 
   public boolean isConnected() {
-    return websocket != null && connected;
+    return transport != null && connected;
   }
 
   public void removeConnectionListener(WebkitConnectionListener listener) {
     connectionListeners.remove(listener);
   }
 
+  /**
+   * Set the timeout of the requests, in milliseconds. A request which is not answered in time has
+   * its callback called with an error; 0 means no timeout. The methods bounded by
+   * {@link #METADATA_REQUEST_TIMEOUT} keep that bound unless it is overridden per method.
+   */
+  public void setRequestTimeout(long timeout) {
+    this.requestTimeout = timeout;
+  }
+
+  /**
+   * Set the timeout of the requests for the given method, in milliseconds, overriding the timeout
+   * of the connection; 0 means no timeout.
+   */
+  public void setRequestTimeout(String method, long timeout) {
+    methodTimeouts.put(method, timeout);
+  }
+
+  /**
+   * Record the traffic of this connection with the given recorder, or stop recording if it is
+   * null. The recording can be played back later with a {@link WebkitReplay}.
+   */
+  public void setRecorder(WebkitRecorder recorder) {
+    this.recorder = recorder;
+  }
+
   protected void notifyClosed() {
     for (WebkitConnectionListener listener : connectionListeners) {
       listener.connectionClosed(this);
     }
 
-    // Clean up the callbackMap on termination.
-    List<Callback> callbacks = new ArrayList<Callback>(callbackMap.values());
-
-    for (Callback callback : callbacks) {
-      try {
-        callback.handleResult(WebkitResult.createJsonErrorResult("connection termination"));
-      } catch (JSONException e) {
-
-      }
+    // Clean up the callbackMap on termination. Each callback is removed before it is called, so it
+    // is not called again by a late response.
+    for (Integer id : new ArrayList<Integer>(callbackMap.keySet())) {
+      failRequest(id, "connection termination");
     }
 
-    callbackMap.clear();
+    eventDispatcher.shutdown();
   }
 
   protected void processWebSocketMessage(WebSocketMessage message) {
+    processMessage(message.getText());
+  }
+
+  /**
+   * Connect through the given transport instead of a web socket.
+   */
+  void connect(WebkitTransport transport) {
+    startWriter(transport);
+
+    connected = true;
+  }
+
+  void processMessage(String text) {
+    WebkitRecorder currentRecorder = recorder;
+
+    if (currentRecorder != null) {
+      currentRecorder.recordInbound(text);
+    }
+
     try {
-      JSONObject object = new JSONObject(message.getText());
+      // Only the envelope is scanned here; the payload is decoded when it is asked for.
+      WebkitMessage object = WebkitMessage.parse(text);
 
       //TODO: too chatty SDBGDebugCorePlugin.log("<== " + object);
 
-      if (object.has("id")) {
+      if (object.isResponse()) {
         processResponse(object);
       } else {
         processNotification(object);
@@ -344,49 +538,195 @@ public class WebkitConnection {
 
   protected void sendRequest(JSONObject request, Callback callback) throws IOException,
       JSONException {
+    sendRequest(request, getRequestTimeout(request.optString("method")), callback);
+  }
+
+  /**
+   * Send a request with its own timeout, in milliseconds, instead of the timeout of its method.
+   */
+  protected void sendRequest(JSONObject request, long timeout, Callback callback)
+      throws IOException, JSONException {
     if (!isConnected()) {
       throw new IOException("connection terminated");
     }
 
-    int id = 0;
+    int id = requestId.incrementAndGet();
 
-    try {
-      synchronized (this) {
-        id = getNextRequestId();
+    request.put("id", id);
 
-        request.put("id", id);
+    WebkitBatch currentBatch = batch.get();
 
-        if (callback != null) {
-          callbackMap.put(id, callback);
-        }
+    if (callback != null) {
+      if (currentBatch != null) {
+        callback = currentBatch.track(callback);
       }
 
-      // TODO: Too chatty SDBGDebugCorePlugin.log("==> " + request);
+      callbackMap.put(id, new PendingRequest(
+          request.optString("method"),
+          callback,
+          System.nanoTime(),
+          timeout));
+    }
+
+    WebkitRequestWriter.Request outbound = new WebkitRequestWriter.Request(id, request);
 
-      websocket.send(request.toString());
-    } catch (WebSocketException exception) {
-      if (callback != null) {
-        synchronized (this) {
-          callbackMap.remove(id);
+    if (currentBatch != null) {
+      currentBatch.add(outbound);
+    } else {
+      WebkitRequestWriter currentWriter = writer;
+
+      if (currentWriter == null) {
+        callbackMap.remove(id);
+
+        throw new IOException("connection terminated");
+      }
+
+      currentWriter.enqueue(outbound);
+    }
+  }
+
+  /**
+   * Send the given request, and return a future for its response. The result of the future is the
+   * "result" object of the response. Domains compose it with {@link WebkitFuture#then} to convert
+   * the response, instead of their callers building a latch around a callback.
+   */
+  protected WebkitFuture<JSONObject> sendRequestFuture(JSONObject request) throws IOException,
+      JSONException {
+    return sendRequestFuture(request, getRequestTimeout(request.optString("method")));
+  }
+
+  /**
+   * Send the given request with its own timeout, in milliseconds, and return a future for its
+   * response.
+   * 
+   * @see #sendRequestFuture(JSONObject)
+   */
+  protected WebkitFuture<JSONObject> sendRequestFuture(JSONObject request, long timeout)
+      throws IOException, JSONException {
+    final WebkitFuture<JSONObject> future = new WebkitFuture<JSONObject>();
+
+    sendRequest(request, timeout, new Callback() {
+      @Override
+      public void handleResult(JSONObject response) throws JSONException {
+        WebkitResult<JSONObject> result = WebkitResult.createFrom(response);
+
+        if (response.has("result")) {
+          result.setResult(response.optJSONObject("result"));
         }
+
+        future.handleResult(result);
       }
+    });
 
-      throw new IOException(exception);
+    return future;
+  }
+
+  void endBatch(List<WebkitRequestWriter.Request> requests) {
+    batch.remove();
+
+    WebkitRequestWriter currentWriter = writer;
+
+    if (currentWriter != null && isConnected()) {
+      currentWriter.enqueue(requests);
+    } else {
+      for (WebkitRequestWriter.Request request : requests) {
+        failRequest(request.id, "connection terminated");
+      }
     }
   }
 
-  private int getNextRequestId() {
-    return ++requestId;
+  void transportClosed() {
+    transport = null;
+
+    abortWriter();
+    notifyClosed();
+  }
+
+  private void abortWriter() {
+    WebkitRequestWriter currentWriter = writer;
+
+    if (currentWriter != null) {
+      currentWriter.abort();
+    }
+
+    stopTimeouts();
+  }
+
+  private void checkTimeouts() {
+    long now = System.nanoTime();
+
+    for (Map.Entry<Integer, PendingRequest> entry : callbackMap.entrySet()) {
+      PendingRequest pending = entry.getValue();
+
+      if (pending.deadline != Long.MAX_VALUE && now - pending.deadline > 0) {
+        WIPTrace.trace("Request " + entry.getKey() + " (" + pending.method + ") timed out");
+
+        failRequest(entry.getKey(), pending.method + " timed out after "
+            + TimeUnit.NANOSECONDS.toMillis(now - pending.startTime) + " ms");
+      }
+    }
   }
 
-  private void processNotification(JSONObject object) throws JSONException {
+  private void failRequest(int id, String message) {
+    PendingRequest pending = callbackMap.remove(id);
+
+    if (pending != null) {
+      try {
+        pending.callback.handleResult(WebkitResult.createJsonErrorResult(message));
+      } catch (JSONException e) {
+
+      }
+    }
+  }
+
+  private synchronized void stopTimeouts() {
+    if (timeoutTimer != null) {
+      timeoutTimer.cancel();
+      timeoutTimer = null;
+    }
+  }
+
+  private void startWriter(WebkitTransport transport) {
+    this.transport = transport;
+
+    synchronized (this) {
+      stopTimeouts();
+
+      timeoutTimer = new Timer("Webkit request timeouts", true);
+      timeoutTimer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          checkTimeouts();
+        }
+      }, TIMEOUT_CHECK_PERIOD, TIMEOUT_CHECK_PERIOD);
+    }
+
+    writer = new WebkitRequestWriter(transport, new WebkitRequestWriter.Listener() {
+      @Override
+      public void requestFailed(int id, String message) {
+        failRequest(id, message);
+      }
+
+      @Override
+      public void requestWritten(String text) {
+        WebkitRecorder currentRecorder = recorder;
+
+        if (currentRecorder != null) {
+          currentRecorder.recordOutbound(text);
+        }
+      }
+    });
+    writer.start();
+  }
+
+  private void processNotification(WebkitMessage object) throws JSONException {
     // Two notifications we receive but don't do anything with:
     //   "Profiler.resetProfiles", "CSS.mediaQueryResultChanged"
 
     final String[] ignoreDomains = {"Profiler.", "Inspector."};
 
-    if (object.has("method")) {
-      String method = object.getString("method");
+    if (object.getMethod() != null) {
+      String method = object.getMethod();
       String prefix = method;
       int index = prefix.indexOf('.');
       if (index != -1) {
@@ -396,11 +736,8 @@ public class WebkitConnection {
       NotificationHandler handler = notificationHandlers.get(prefix);
 
       if (handler != null) {
-        if (object.has("params")) {
-          handler.handleNotification(method, object.getJSONObject("params"));
-        } else {
-          handler.handleNotification(method, null);
-        }
+        // Handled off the reader thread, so the responses behind it are not delayed.
+        eventDispatcher.dispatch(prefix, handler, object);
       } else {
         for (String domain : ignoreDomains) {
           if (domain.equals(prefix)) {
@@ -413,21 +750,22 @@ public class WebkitConnection {
     }
   }
 
-  private void processResponse(JSONObject result) throws JSONException {
+  private void processResponse(WebkitMessage object) throws JSONException {
     try {
-      int id = result.optInt("id", -1);
+      int id = object.getId();
 
-      Callback callback;
+      PendingRequest pending = callbackMap.remove(id);
 
-      synchronized (this) {
-        callback = callbackMap.remove(id);
-      }
+      if (pending != null) {
+        long responseTime = System.nanoTime();
+        getLatencyHistogram(pending.method).record(responseTime - pending.startTime);
+
+        pending.callback.handleResult(object.toJSONObject());
 
-      if (callback != null) {
-        callback.handleResult(result);
-      } else if (result.has("error")) {
+        getCallbackHistogram(pending.method).record(System.nanoTime() - responseTime);
+      } else if (object.hasError()) {
         // If we get an error back, and nobody was listening for the result, then log it.
-        WebkitResult<?> webkitResult = WebkitResult.createFrom(result);
+        WebkitResult<?> webkitResult = WebkitResult.createFrom(object.toJSONObject());
 
         WIPTrace.trace("Error from command id " + id + ": " + webkitResult.getError());
       }
@@ -33,7 +33,7 @@ import org.json.JSONObject;
  * issued while console domain is not enabled as well and reports them using messageAdded
  * notification upon enabling.
  */
-public class WebkitConsole extends WebkitDomain {
+public class WebkitConsole extends WebkitEnableableDomain {
 
   public static class CallFrame {
     /** JavaScript script column number. */
@@ -125,10 +125,12 @@ public class WebkitConsole extends WebkitDomain {
     listeners.add(listener);
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("Console.disable");
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("Console.enable");
   }
@@ -25,7 +25,10 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,7 +40,7 @@ import org.json.JSONObject;
  * Debugger domain exposes JavaScript debugging capabilities. It allows setting and removing
  * breakpoints, stepping through execution, exploring stack traces, etc.
  */
-public class WebkitDebugger extends WebkitDomain {
+public class WebkitDebugger extends WebkitEnableableDomain {
 
   public static interface DebuggerListener {
     /**
@@ -177,14 +180,57 @@ public class WebkitDebugger extends WebkitDomain {
 
   private static final String OBJECT_GROUP_KEY = "objectGroup";
 
+  private static boolean isSameScript(WebkitScript script1, WebkitScript script2) {
+    if (!script1.getUrl().equals(script2.getUrl())) {
+      return false;
+    }
+
+    if (script1.getSourceMapURL() == null ? script2.getSourceMapURL() != null
+        : !script1.getSourceMapURL().equals(script2.getSourceMapURL())) {
+      return false;
+    }
+
+    // Older browsers do not report the hash; the id and url have to do then.
+    return script1.getHash() == null || script2.getHash() == null
+        || script1.getHash().equals(script2.getHash());
+  }
+
+  private static String reverse(String str) {
+    return new StringBuilder(str).reverse().toString();
+  }
+
   private WebkitResteppingManager resteppingManager;
 
   private List<DebuggerListener> listeners = new ArrayList<DebuggerListener>();
 
-  private Map<String, WebkitScript> scriptMap = new HashMap<String, WebkitScript>();
+  private Map<String, WebkitScript> scriptMap = new ConcurrentHashMap<String, WebkitScript>();
+
+  /**
+   * The scripts by url, and by reversed url, for the lookups by url suffix. A url parsed several
+   * times maps to the last script parsed for it.
+   */
+  private Map<String, WebkitScript> scriptUrlMap = new ConcurrentHashMap<String, WebkitScript>();
+  private NavigableMap<String, WebkitScript> scriptReversedUrlMap = new ConcurrentSkipListMap<String, WebkitScript>();
+
+  /**
+   * The scripts of a previous connection to the same page, by id.
+   */
+  private Map<String, WebkitScript> retainedScriptMap = new ConcurrentHashMap<String, WebkitScript>();
+
   private Map<String, WebkitBreakpoint> breakpointMap = new HashMap<String, WebkitBreakpoint>();
 
-  private int remoteObjectCount;
+  /**
+   * Whether any remote object was created in the current object group. Set by any thread, and
+   * reset by the dispatcher thread when the debugger resumes.
+   */
+  private AtomicBoolean objectGroupUsed = new AtomicBoolean();
+
+  private int suspensionCount;
+
+  /**
+   * The object group of the current suspension; it is released when the debugger resumes.
+   */
+  private volatile String objectGroup = OBJECT_GROUP_KEY;
 
   public WebkitDebugger(WebkitConnection connection) {
     super(connection);
@@ -236,10 +282,12 @@ public class WebkitDebugger extends WebkitDomain {
     }
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("Debugger.disable");
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("Debugger.enable");
   }
@@ -258,7 +306,7 @@ public class WebkitDebugger extends WebkitDomain {
           "params",
           new JSONObject().put("callFrameId", callFrameId).put("expression", expression).put(
               "objectGroup",
-              OBJECT_GROUP_KEY).put("returnByValue", false).put("includeCommandLineAPI", true).put(
+              useObjectGroup()).put("returnByValue", false).put("includeCommandLineAPI", true).put(
               "doNotPauseOnExceptionsAndMuteConsole",
               false));
 
@@ -268,8 +316,6 @@ public class WebkitDebugger extends WebkitDomain {
           callback.handleResult(convertEvaluateOnCallFrameResult(result));
         }
       });
-
-      remoteObjectCount++;
     } catch (JSONException exception) {
       throw new IOException(exception);
     }
@@ -315,13 +361,35 @@ public class WebkitDebugger extends WebkitDomain {
   }
 
   public WebkitScript getScriptByUrl(String url) {
-    for (WebkitScript script : getAllScripts()) {
-      if (url.equals(script.getUrl())) {
-        return script;
+    return scriptUrlMap.get(url);
+  }
+
+  /**
+   * Return a script whose url ends with the given suffix. If several do, the one with the shortest
+   * url is returned, as the closest match.
+   * 
+   * @param suffix
+   * @return the matching script, or null
+   */
+  public WebkitScript getScriptByUrlSuffix(String suffix) {
+    if (suffix.length() == 0) {
+      return null;
+    }
+
+    String prefix = reverse(suffix);
+    WebkitScript match = null;
+
+    for (Map.Entry<String, WebkitScript> entry : scriptReversedUrlMap.tailMap(prefix).entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) {
+        break;
+      }
+
+      if (match == null || match.getUrl().length() > entry.getKey().length()) {
+        match = entry.getValue();
       }
     }
 
-    return null;
+    return match;
   }
 
   /**
@@ -369,35 +437,23 @@ public class WebkitDebugger extends WebkitDomain {
    */
   public void populateScriptSource(WebkitScript script) throws IOException {
     if (!script.hasScriptSource()) {
-      final IOException[] error = new IOException[1];
-      final String[] source = new String[1];
+      WebkitFuture<String> source = new WebkitFuture<String>();
 
-      final CountDownLatch latch = new CountDownLatch(1);
-
-      getScriptSource(script.getScriptId(), new WebkitCallback<String>() {
-        @Override
-        public void handleResult(WebkitResult<String> result) {
-          if (result.isError()) {
-            error[0] = new IOException("error retrieving script source");
-          } else {
-            source[0] = result.getResult();
-          }
+      getScriptSource(script.getScriptId(), source);
 
-          latch.countDown();
-        }
-      });
+      WebkitResult<String> result;
 
       try {
-        latch.await();
+        result = source.get();
       } catch (InterruptedException e) {
         throw new IOException(e);
       }
 
-      if (error[0] != null) {
-        throw error[0];
+      if (result.isError()) {
+        throw new IOException("error retrieving script source");
       }
 
-      script.setScriptSource(source[0]);
+      script.setScriptSource(result.getResult());
     }
   }
 
@@ -461,6 +517,18 @@ public class WebkitDebugger extends WebkitDomain {
     }
   }
 
+  /**
+   * Take over the scripts of a previous connection to the same page. When this connection reports
+   * a script with the same id, url and hash, the previous script object is used instead, along
+   * with the source already fetched for it. The scripts are forgotten once the global object is
+   * cleared.
+   * 
+   * @param debugger the debugger of the previous connection
+   */
+  public void retainScripts(WebkitDebugger debugger) {
+    retainedScriptMap.putAll(debugger.scriptMap);
+  }
+
   /**
    * Sets JavaScript breakpoint at given location specified either by URL or URL regex. Once this
    * command is issued, all existing parsed scripts will have breakpoints resolved and returned in
@@ -662,6 +730,16 @@ public class WebkitDebugger extends WebkitDomain {
     sendSimpleCommand("Debugger.stepOver");
   }
 
+  /**
+   * Return the object group to create remote objects in, such as the results of evaluations. Each
+   * suspension gets its own group, released at once when the debugger resumes.
+   */
+  public String useObjectGroup() {
+    objectGroupUsed.set(true);
+
+    return objectGroup;
+  }
+
   protected void handleDebuggerNotification(String method, JSONObject params) throws JSONException {
     if (method.equals(DEBUGGER_RESUMED)) {
       for (DebuggerListener listener : listeners) {
@@ -681,7 +759,14 @@ public class WebkitDebugger extends WebkitDomain {
       // We get a blizzard of empty script parsed events from Webkit due to the way they integrated
       // the Dart VM into the Webkit debugger.
       if (script.getUrl().length() > 0) {
+        WebkitScript retainedScript = retainedScriptMap.remove(script.getScriptId());
+        if (retainedScript != null && isSameScript(retainedScript, script)) {
+          script = retainedScript;
+        }
+
         scriptMap.put(script.getScriptId(), script);
+        scriptUrlMap.put(script.getUrl(), script);
+        scriptReversedUrlMap.put(reverse(script.getUrl()), script);
 
         for (DebuggerListener listener : listeners) {
           listener.debuggerScriptParsed(script);
@@ -694,6 +779,8 @@ public class WebkitDebugger extends WebkitDomain {
         listener.debuggerBreakpointResolved(breakpoint);
       }
     } else if (method.equals(DEBUGGER_PAUSED)) {
+      handlePaused();
+
       PausedReasonType reason = PausedReasonType.value(params.getString("reason"));
 
       List<WebkitCallFrame> frames = WebkitCallFrame.createFrom(params.getJSONArray("callFrames"));
@@ -729,14 +816,15 @@ public class WebkitDebugger extends WebkitDomain {
   private void clearGlobalObjects() {
     breakpointMap.clear();
     scriptMap.clear();
+    scriptUrlMap.clear();
+    scriptReversedUrlMap.clear();
+    retainedScriptMap.clear();
   }
 
   private void clearRemoteObjects() {
-    if (remoteObjectCount > 0) {
-      remoteObjectCount = 0;
-
+    if (objectGroupUsed.getAndSet(false)) {
       try {
-        getConnection().getRuntime().releaseObjectGroup(OBJECT_GROUP_KEY);
+        getConnection().getRuntime().releaseObjectGroup(objectGroup);
       } catch (IOException e) {
         // This is a best-effort call.
 
@@ -866,6 +954,13 @@ public class WebkitDebugger extends WebkitDomain {
     return result;
   }
 
+  private void handlePaused() {
+    // Objects created while running, e.g. by the console, are released with the first suspension.
+    clearRemoteObjects();
+
+    objectGroup = OBJECT_GROUP_KEY + "-" + (++suspensionCount);
+  }
+
   private void handleResumed() {
     clearRemoteObjects();
   }
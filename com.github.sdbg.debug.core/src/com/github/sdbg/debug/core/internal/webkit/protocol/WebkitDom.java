@@ -21,7 +21,6 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitNode.WebkitAttr
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -48,7 +47,7 @@ import org.json.JSONObject;
  * <p>
  * Note that iframe owner elements will return corresponding document elements as their child nodes.
  */
-public class WebkitDom extends WebkitDomain {
+public class WebkitDom extends WebkitEnableableDomain {
 
   public static interface DomListener {
     /**
@@ -269,30 +268,11 @@ public class WebkitDom extends WebkitDomain {
   }
 
   public WebkitNode getDocumentSync() throws IOException {
-    @SuppressWarnings("unchecked")
-    final WebkitResult<WebkitNode>[] result = new WebkitResult[1];
-    final CountDownLatch latch = new CountDownLatch(1);
+    WebkitFuture<WebkitNode> document = new WebkitFuture<WebkitNode>();
 
-    getDocument(new WebkitCallback<WebkitNode>() {
-      @Override
-      public void handleResult(WebkitResult<WebkitNode> r) {
-        result[0] = r;
-
-        latch.countDown();
-      }
-    });
-
-    try {
-      latch.await();
-    } catch (InterruptedException e) {
-
-    }
+    getDocument(document);
 
-    if (result[0].isError()) {
-      throw new IOException(result[0].getErrorMessage());
-    } else {
-      return result[0].getResult();
-    }
+    return document.getResult();
   }
 
   public void getOuterHtml(int nodeId, final WebkitCallback<String> callback) throws IOException {
@@ -586,10 +566,12 @@ public class WebkitDom extends WebkitDomain {
     }
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("DOM.disable");
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("DOM.enable");
   }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.IOException;
+
+/**
+ * The parent class of the WIP domains which have to be enabled before they send their notifications
+ * (console, debugger, page, ...).
+ * <p>
+ * Such a domain is enabled on demand: every client needing the notifications calls
+ * {@link #acquire()}, and {@link #release()} once it no longer does. The domain is enabled by the
+ * first client, and disabled again after the last one, so that the browser does not flood the
+ * connection with notifications nobody looks at.
+ */
+public abstract class WebkitEnableableDomain extends WebkitDomain {
+  private int enableCount;
+
+  public WebkitEnableableDomain(WebkitConnection connection) {
+    super(connection);
+  }
+
+  /**
+   * Enable the domain, unless it is already enabled for another client. Each call must be balanced
+   * by a call to {@link #release()}.
+   */
+  public synchronized void acquire() throws IOException {
+    if (enableCount == 0) {
+      enable();
+    }
+
+    enableCount++;
+  }
+
+  /**
+   * Disable the domain.
+   */
+  public abstract void disable() throws IOException;
+
+  /**
+   * Enable the domain.
+   */
+  public abstract void enable() throws IOException;
+
+  /**
+   * @return whether any client acquired the domain
+   */
+  public synchronized boolean isAcquired() {
+    return enableCount > 0;
+  }
+
+  /**
+   * Release the domain acquired with {@link #acquire()}; it is disabled once no client needs it.
+   */
+  public synchronized void release() throws IOException {
+    if (enableCount == 0) {
+      throw new IllegalStateException(getClass().getSimpleName() + " is not acquired");
+    }
+
+    enableCount--;
+
+    if (enableCount == 0 && connection.isConnected()) {
+      disable();
+    }
+  }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.NotificationHandler;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the notifications of a connection off the socket reader thread, so a slow listener
+ * never delays the responses behind it. Each domain ("Debugger.", "Console.", ...) has its own
+ * queue; the notifications of a domain are handled one at a time, in the order they arrived.
+ * <p>
+ * The queues of the domains which can flood us, and whose notifications are not shown to the user,
+ * are bounded: when such a queue is full, its oldest notification is dropped, and a warning is
+ * logged. The Console messages are never dropped unless their queue is bounded explicitly. The
+ * depth of each queue is tracked, for diagnostics.
+ */
+public class WebkitEventDispatcher {
+  private class DomainQueue implements Runnable {
+    private final String domain;
+    private final ArrayDeque<Runnable> events = new ArrayDeque<Runnable>();
+
+    private boolean scheduled;
+
+    private int maxDepth;
+    private long dropped;
+
+    DomainQueue(String domain) {
+      this.domain = domain;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable event;
+
+        synchronized (this) {
+          event = events.poll();
+
+          if (event == null) {
+            scheduled = false;
+          }
+        }
+
+        if (event == null) {
+          synchronized (WebkitEventDispatcher.this) {
+            WebkitEventDispatcher.this.notifyAll();
+          }
+
+          return;
+        }
+
+        try {
+          event.run();
+        } catch (Throwable exception) {
+          SDBGDebugCorePlugin.logError(exception);
+        }
+      }
+    }
+
+    synchronized boolean isIdle() {
+      return !scheduled;
+    }
+
+    void add(Runnable event) {
+      boolean schedule;
+
+      synchronized (this) {
+        if (events.size() >= getMaxQueueSize(domain)) {
+          events.poll();
+
+          if (dropped++ == 0) {
+            SDBGDebugCorePlugin.logWarning("Event queue of " + domain
+                + " is full, dropping the oldest events");
+          }
+        }
+
+        events.add(event);
+        maxDepth = Math.max(maxDepth, events.size());
+
+        schedule = !scheduled;
+        scheduled = true;
+      }
+
+      if (schedule) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException exception) {
+          // The connection is closed.
+          synchronized (this) {
+            events.clear();
+            scheduled = false;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The default size of the bounded queues.
+   */
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+  private final ExecutorService executor = new ThreadPoolExecutor(
+      0,
+      Integer.MAX_VALUE,
+      30,
+      TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Webkit event dispatcher");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final Map<String, DomainQueue> queues = new ConcurrentHashMap<String, DomainQueue>();
+
+  private final Map<String, Integer> maxQueueSizes = new ConcurrentHashMap<String, Integer>();
+
+  WebkitEventDispatcher() {
+    maxQueueSizes.put("Network.", DEFAULT_MAX_QUEUE_SIZE);
+  }
+
+  /**
+   * @return the number of notifications of the given domain dropped so far
+   */
+  public long getDroppedCount(String domain) {
+    DomainQueue queue = queues.get(domain);
+
+    if (queue == null) {
+      return 0;
+    }
+
+    synchronized (queue) {
+      return queue.dropped;
+    }
+  }
+
+  /**
+   * @return the largest number of notifications of the given domain waiting at the same time
+   */
+  public int getMaxQueueDepth(String domain) {
+    DomainQueue queue = queues.get(domain);
+
+    if (queue == null) {
+      return 0;
+    }
+
+    synchronized (queue) {
+      return queue.maxDepth;
+    }
+  }
+
+  public int getMaxQueueSize(String domain) {
+    Integer size = maxQueueSizes.get(domain);
+
+    return size == null ? Integer.MAX_VALUE : size.intValue();
+  }
+
+  /**
+   * @return the number of notifications of the given domain waiting to be handled
+   */
+  public int getQueueDepth(String domain) {
+    DomainQueue queue = queues.get(domain);
+
+    if (queue == null) {
+      return 0;
+    }
+
+    synchronized (queue) {
+      return queue.events.size();
+    }
+  }
+
+  /**
+   * Bound the queue of the given domain; Integer.MAX_VALUE makes it unbounded.
+   */
+  public void setMaxQueueSize(String domain, int size) {
+    maxQueueSizes.put(domain, size);
+  }
+
+  /**
+   * Wait until all the notifications received so far are handled.
+   * 
+   * @return whether they were handled in time
+   */
+  public synchronized boolean waitUntilIdle(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long end = System.nanoTime() + unit.toNanos(timeout);
+
+    while (!isIdle()) {
+      long remaining = end - System.nanoTime();
+
+      if (remaining <= 0) {
+        return false;
+      }
+
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+
+    return true;
+  }
+
+  void dispatch(String domain, final NotificationHandler handler, final WebkitMessage message) {
+    DomainQueue queue = queues.get(domain);
+
+    if (queue == null) {
+      synchronized (queues) {
+        queue = queues.get(domain);
+
+        if (queue == null) {
+          queue = new DomainQueue(domain);
+          queues.put(domain, queue);
+        }
+      }
+    }
+
+    queue.add(new Runnable() {
+      @Override
+      public void run() {
+        long start = System.nanoTime();
+
+        try {
+          // The params are only decoded now, off the reader thread.
+          handler.handleNotification(message.getMethod(), message.getParams());
+
+          WebkitConnection.getCallbackHistogram(message.getMethod()).record(
+              System.nanoTime() - start);
+        } catch (Exception exception) {
+          SDBGDebugCorePlugin.logError(exception);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop the dispatcher once the notifications already queued are handled.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private boolean isIdle() {
+    for (DomainQueue queue : queues.values()) {
+      if (!queue.isIdle()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONException;
+
+/**
+ * A callback which can be waited on. Pass it wherever a {@link WebkitCallback} is expected, and
+ * wait for the result with {@link #get()}, instead of building a latch around the callback.
+ * <p>
+ * Futures can also be composed without waiting: {@link #addCallback(WebkitCallback)} is notified
+ * of the result, and {@link #then(Transform)} derives a future for a value computed from it.
+ */
+public class WebkitFuture<T> implements WebkitCallback<T>, Future<WebkitResult<T>> {
+
+  /**
+   * Computes the value of a derived future from the value of a future.
+   */
+  public static interface Transform<T, R> {
+    /**
+     * @throws IOException or JSONException if the value can not be computed; the derived future
+     *           then fails with the message of the exception
+     */
+    public R apply(T value) throws IOException, JSONException;
+  }
+
+  private final CountDownLatch latch = new CountDownLatch(1);
+
+  private volatile WebkitResult<T> result;
+
+  private List<WebkitCallback<T>> callbacks = new ArrayList<WebkitCallback<T>>();
+
+  public WebkitFuture() {
+
+  }
+
+  /**
+   * Notify the given callback of the result, on the thread which completes this future, or right
+   * away if it is already done.
+   */
+  public void addCallback(WebkitCallback<T> callback) {
+    synchronized (callbacks) {
+      if (result == null) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+
+    callback.handleResult(result);
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public WebkitResult<T> get() throws InterruptedException {
+    latch.await();
+
+    return result;
+  }
+
+  @Override
+  public WebkitResult<T> get(long timeout, TimeUnit unit) throws InterruptedException,
+      TimeoutException {
+    if (!latch.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+
+    return result;
+  }
+
+  /**
+   * Wait for the result, and return its value.
+   * 
+   * @throws IOException if the request failed or was interrupted
+   */
+  public T getResult() throws IOException {
+    try {
+      return getValue(get());
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Wait for the result, and return its value.
+   * 
+   * @throws IOException if the request failed, was interrupted or timed out
+   */
+  public T getResult(long timeout, TimeUnit unit) throws IOException {
+    try {
+      return getValue(get(timeout, unit));
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (TimeoutException e) {
+      throw new IOException("timed out waiting for the result", e);
+    }
+  }
+
+  @Override
+  public void handleResult(WebkitResult<T> result) {
+    List<WebkitCallback<T>> toNotify;
+
+    synchronized (callbacks) {
+      if (this.result != null) {
+        return;
+      }
+
+      this.result = result;
+
+      toNotify = new ArrayList<WebkitCallback<T>>(callbacks);
+      callbacks.clear();
+    }
+
+    latch.countDown();
+
+    for (WebkitCallback<T> callback : toNotify) {
+      callback.handleResult(result);
+    }
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public boolean isDone() {
+    return latch.getCount() == 0;
+  }
+
+  /**
+   * Return a future for the value computed from the value of this future. An error is passed on to
+   * the returned future as it is.
+   */
+  public <R> WebkitFuture<R> then(final Transform<? super T, R> transform) {
+    final WebkitFuture<R> future = new WebkitFuture<R>();
+
+    addCallback(new WebkitCallback<T>() {
+      @Override
+      public void handleResult(WebkitResult<T> result) {
+        WebkitResult<R> derived = new WebkitResult<R>();
+
+        if (result.isError()) {
+          derived.setError(result.getError());
+        } else {
+          try {
+            derived.setResult(transform.apply(result.getResult()));
+          } catch (IOException e) {
+            derived.setError(e.getMessage());
+          } catch (JSONException e) {
+            derived.setError(e.getMessage());
+          }
+        }
+
+        future.handleResult(derived);
+      }
+    });
+
+    return future;
+  }
+
+  private T getValue(WebkitResult<T> result) throws IOException {
+    if (result.isError()) {
+      throw new IOException(result.getErrorMessage());
+    }
+
+    return result.getResult();
+  }
+
+}
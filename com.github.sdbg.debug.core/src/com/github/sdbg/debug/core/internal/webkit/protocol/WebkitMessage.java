@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.Reader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * An incoming protocol message, decoded lazily.
+ * <p>
+ * Only the envelope of the message is scanned when it arrives: the "id" and "method" fields are
+ * read, and the other top-level values are merely skipped over. The "params" of a notification,
+ * and the message as a whole, are decoded on demand, straight from the original text; a
+ * notification nobody listens to is never decoded at all.
+ */
+class WebkitMessage {
+  /**
+   * A reader over a range of a string, so a part of the message can be decoded without copying it
+   * out first.
+   */
+  private static class SliceReader extends Reader {
+    private final String text;
+    private final int end;
+
+    private int pos;
+
+    SliceReader(String text, int start, int end) {
+      this.text = text;
+      this.pos = start;
+      this.end = end;
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public int read() {
+      return pos < end ? text.charAt(pos++) : -1;
+    }
+
+    @Override
+    public int read(char[] buf, int off, int len) {
+      if (pos >= end) {
+        return -1;
+      }
+
+      int count = Math.min(len, end - pos);
+      text.getChars(pos, pos + count, buf, off);
+      pos += count;
+
+      return count;
+    }
+  }
+
+  static WebkitMessage parse(String text) throws JSONException {
+    WebkitMessage message = new WebkitMessage(text);
+
+    message.scan();
+
+    return message;
+  }
+
+  private final String text;
+
+  private int id = -1;
+  private String method;
+
+  private int paramsStart = -1;
+  private int paramsEnd;
+
+  private boolean hasError;
+
+  private WebkitMessage(String text) {
+    this.text = text;
+  }
+
+  /**
+   * @return the id of the response, or -1 if this is not a response
+   */
+  int getId() {
+    return id;
+  }
+
+  /**
+   * @return the method of the notification, or null if this is not a notification
+   */
+  String getMethod() {
+    return method;
+  }
+
+  /**
+   * Decode the params of the notification.
+   * 
+   * @return the params, or null if the notification has none
+   */
+  JSONObject getParams() throws JSONException {
+    if (paramsStart == -1 || text.startsWith("null", paramsStart)) {
+      return null;
+    }
+
+    return new JSONObject(new JSONTokener(new SliceReader(text, paramsStart, paramsEnd)));
+  }
+
+  String getText() {
+    return text;
+  }
+
+  boolean hasError() {
+    return hasError;
+  }
+
+  boolean isResponse() {
+    return id != -1;
+  }
+
+  /**
+   * Decode the whole message.
+   */
+  JSONObject toJSONObject() throws JSONException {
+    return new JSONObject(text);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private void expect(int pos, char c) throws JSONException {
+    if (pos >= text.length() || text.charAt(pos) != c) {
+      throw new JSONException("Expected '" + c + "' at " + pos + " in " + getExcerpt());
+    }
+  }
+
+  private String getExcerpt() {
+    return text.length() > 100 ? text.substring(0, 100) + "..." : text;
+  }
+
+  private void scan() throws JSONException {
+    int pos = skipWhitespace(0);
+    expect(pos, '{');
+    pos = skipWhitespace(pos + 1);
+
+    if (pos < text.length() && text.charAt(pos) == '}') {
+      return;
+    }
+
+    while (true) {
+      expect(pos, '"');
+      int keyEnd = skipString(pos);
+      String key = text.substring(pos + 1, keyEnd - 1);
+
+      pos = skipWhitespace(keyEnd);
+      expect(pos, ':');
+      pos = skipWhitespace(pos + 1);
+
+      int valueEnd = skipValue(pos);
+
+      if ("id".equals(key)) {
+        try {
+          id = Integer.parseInt(text.substring(pos, valueEnd));
+        } catch (NumberFormatException e) {
+          throw new JSONException("Invalid id in " + getExcerpt());
+        }
+      } else if ("method".equals(key)) {
+        Object value = new JSONTokener(new SliceReader(text, pos, valueEnd)).nextValue();
+
+        if (value instanceof String) {
+          method = (String) value;
+        }
+      } else if ("params".equals(key)) {
+        paramsStart = pos;
+        paramsEnd = valueEnd;
+      } else if ("error".equals(key)) {
+        hasError = true;
+      }
+
+      pos = skipWhitespace(valueEnd);
+
+      if (pos < text.length() && text.charAt(pos) == ',') {
+        pos = skipWhitespace(pos + 1);
+      } else {
+        expect(pos, '}');
+        return;
+      }
+    }
+  }
+
+  /**
+   * Skip the object or array starting at the given position.
+   */
+  private int skipNested(int pos) throws JSONException {
+    int depth = 0;
+
+    while (pos < text.length()) {
+      char c = text.charAt(pos);
+
+      if (c == '"') {
+        pos = skipString(pos);
+        continue;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        if (--depth == 0) {
+          return pos + 1;
+        }
+      }
+
+      pos++;
+    }
+
+    throw new JSONException("Unterminated value in " + getExcerpt());
+  }
+
+  /**
+   * Skip the string starting at the given position; strings can be long (script sources), so the
+   * closing quote is searched for rather than scanned char by char.
+   */
+  private int skipString(int pos) throws JSONException {
+    int end = text.indexOf('"', pos + 1);
+
+    while (end != -1) {
+      int backslashes = 0;
+      while (text.charAt(end - 1 - backslashes) == '\\') {
+        backslashes++;
+      }
+
+      if (backslashes % 2 == 0) {
+        return end + 1;
+      }
+
+      end = text.indexOf('"', end + 1);
+    }
+
+    throw new JSONException("Unterminated string in " + getExcerpt());
+  }
+
+  private int skipValue(int pos) throws JSONException {
+    if (pos >= text.length()) {
+      throw new JSONException("Missing value in " + getExcerpt());
+    }
+
+    char c = text.charAt(pos);
+
+    if (c == '"') {
+      return skipString(pos);
+    } else if (c == '{' || c == '[') {
+      return skipNested(pos);
+    }
+
+    // A number, true, false or null.
+    int end = pos;
+    while (end < text.length() && ",}] \t\r\n".indexOf(text.charAt(end)) == -1) {
+      end++;
+    }
+
+    return end;
+  }
+
+  private int skipWhitespace(int pos) {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+
+    return pos;
+  }
+
+}
@@ -29,7 +29,7 @@ import java.util.List;
  * Network domain allows tracking network activities of the page. It exposes information about http,
  * file, data and other requests and responses, their headers, bodies, timing, etc.
  */
-public class WebkitNetwork extends WebkitDomain {
+public class WebkitNetwork extends WebkitEnableableDomain {
 
   public static interface NetworkListener {
 
@@ -185,6 +185,7 @@ public class WebkitNetwork extends WebkitDomain {
    * 
    * @throws IOException
    */
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("Network.disable");
   }
@@ -194,6 +195,7 @@ public class WebkitNetwork extends WebkitDomain {
    * 
    * @throws IOException
    */
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("Network.enable");
   }
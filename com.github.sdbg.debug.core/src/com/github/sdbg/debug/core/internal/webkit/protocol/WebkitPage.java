@@ -33,7 +33,7 @@ import org.json.JSONObject;
  * 
  * @see http://code.google.com/chrome/devtools/docs/protocol/tot/page.html
  */
-public class WebkitPage extends WebkitDomain {
+public class WebkitPage extends WebkitEnableableDomain {
 
   public static interface PageListener {
     public void domContentEventFired(int timestamp);
@@ -156,10 +156,12 @@ public class WebkitPage extends WebkitDomain {
     });
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("Page.disable");
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("Page.enable");
   }
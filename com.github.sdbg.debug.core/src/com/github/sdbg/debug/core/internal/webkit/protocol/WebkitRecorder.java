@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the traffic of a {@link WebkitConnection}: every incoming and outgoing message, with the
+ * time it was seen. The recording is a gzipped sequence of frames, and is read back by
+ * {@link WebkitReplay}.
+ * 
+ * @see WebkitConnection#setRecorder(WebkitRecorder)
+ */
+public class WebkitRecorder {
+  static final int MAGIC = 0x57495052; // "WIPR"
+  static final int FORMAT_VERSION = 1;
+
+  static final byte INBOUND = 0;
+  static final byte OUTBOUND = 1;
+
+  private final long start = System.nanoTime();
+
+  private DataOutputStream out;
+
+  public WebkitRecorder(File file) throws IOException {
+    out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(
+        file))));
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+  }
+
+  /**
+   * Stop recording, and flush the recording to its file.
+   */
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      try {
+        out.close();
+      } finally {
+        out = null;
+      }
+    }
+  }
+
+  void recordInbound(String text) {
+    record(INBOUND, text);
+  }
+
+  void recordOutbound(String text) {
+    record(OUTBOUND, text);
+  }
+
+  private synchronized void record(byte direction, String text) {
+    if (out == null) {
+      return;
+    }
+
+    try {
+      byte[] bytes = text.getBytes("UTF-8");
+
+      out.writeByte(direction);
+      out.writeLong((System.nanoTime() - start) / 1000);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } catch (IOException exception) {
+      WIPTrace.trace("Recording failed: " + exception);
+
+      try {
+        close();
+      } catch (IOException e) {
+
+      }
+    }
+  }
+
+}
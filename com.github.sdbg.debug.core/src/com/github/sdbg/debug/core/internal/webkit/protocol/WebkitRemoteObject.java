@@ -15,7 +15,6 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
@@ -43,6 +42,8 @@ public class WebkitRemoteObject {
 
   private int listLength = -1;
 
+  private WebkitPropertyDescriptor[] prefetchedProperties;
+
   public static WebkitRemoteObject createFrom(JSONObject params) throws JSONException {
     WebkitRemoteObject remoteObject = new WebkitRemoteObject();
 
@@ -71,6 +72,15 @@ public class WebkitRemoteObject {
     return obj;
   }
 
+  public static WebkitRemoteObject createUndefined() {
+    WebkitRemoteObject obj = new WebkitRemoteObject();
+
+    obj.type = "undefined";
+    obj.description = "undefined";
+
+    return obj;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (obj instanceof WebkitRemoteObject) {
@@ -89,39 +99,22 @@ public class WebkitRemoteObject {
   }
 
   /**
-   * Return the length of the list if this object is a list.
+   * Return the length of the list if this object is a list. If the length could not be fetched, 0
+   * is returned and the length is fetched again on the next call.
    * 
    * @param webkitConnection
    * @return
    */
   public int getListLength(WebkitConnection connection) {
     if (listLength == -1) {
-      final CountDownLatch latch = new CountDownLatch(1);
-
       try {
-        connection.getRuntime().callListLength(objectId, new WebkitCallback<Integer>() {
-          @Override
-          public void handleResult(WebkitResult<Integer> result) {
-            if (result.isError()) {
-              listLength = 0;
-            } else if (result.getResult() == null) {
-              listLength = 0;
-            } else {
-              listLength = result.getResult().intValue();
-            }
-
-            latch.countDown();
-          }
-        });
-      } catch (IOException e) {
-        listLength = 0;
-        latch.countDown();
-      }
-
-      try {
-        latch.await(3, TimeUnit.SECONDS);
-      } catch (InterruptedException e) {
+        Integer result = connection.getRuntime().callListLength(objectId).getResult(
+            WebkitRuntime.VALUE_CALL_TIMEOUT,
+            TimeUnit.MILLISECONDS);
 
+        listLength = result == null ? 0 : result.intValue();
+      } catch (IOException e) {
+        return 0;
       }
     }
 
@@ -132,6 +125,14 @@ public class WebkitRemoteObject {
     return objectId;
   }
 
+  /**
+   * @return the own properties of this object if they were fetched along with it, as part of a
+   *         snapshot, or null
+   */
+  public WebkitPropertyDescriptor[] getPrefetchedProperties() {
+    return prefetchedProperties;
+  }
+
   public Object getRawValue() {
     return rawValue;
   }
@@ -165,6 +166,13 @@ public class WebkitRemoteObject {
     return objectId.hashCode();
   }
 
+  /**
+   * @return whether the length of this list is known
+   */
+  public boolean hasListLength() {
+    return listLength != -1;
+  }
+
   public boolean hasObjectId() {
     return getObjectId() != null;
   }
@@ -244,4 +252,16 @@ public class WebkitRemoteObject {
   void setDescription(String value) {
     description = value;
   }
+
+  void setListLength(int listLength) {
+    this.listLength = listLength;
+  }
+
+  void setObjectId(String objectId) {
+    this.objectId = objectId;
+  }
+
+  void setPrefetchedProperties(WebkitPropertyDescriptor[] properties) {
+    prefetchedProperties = properties;
+  }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+
+/**
+ * Plays a recording made by a {@link WebkitRecorder} back to a {@link WebkitConnection}, with no
+ * browser involved. The connection is connected to the replay instead of a web socket; the
+ * recorded incoming messages are then fed to it, either at the recorded pace or as fast as
+ * possible. The requests the connection sends are collected, not answered: the recorded responses
+ * are matched to them by id, so the requests must be sent in the recorded order. A recorded
+ * response is only fed once its request has been sent, as it would be by the browser.
+ * 
+ * <pre>
+ * WebkitReplay replay = new WebkitReplay(file);
+ * WebkitConnection connection = new WebkitConnection(uri);
+ * replay.connect(connection);
+ * ... set up the domains and their listeners ...
+ * replay.run(false);
+ * connection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS);
+ * </pre>
+ */
+public class WebkitReplay {
+  /**
+   * A recorded message.
+   */
+  public static class Frame {
+    private final boolean inbound;
+    private final long time;
+    private final String text;
+
+    public Frame(boolean inbound, long time, String text) {
+      this.inbound = inbound;
+      this.time = time;
+      this.text = text;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * @return the time of the message, in microseconds since the recording started
+     */
+    public long getTime() {
+      return time;
+    }
+
+    public boolean isInbound() {
+      return inbound;
+    }
+
+    @Override
+    public String toString() {
+      return (inbound ? "<== " : "==> ") + text;
+    }
+  }
+
+  /**
+   * Read the frames of the given recording.
+   */
+  public static List<Frame> read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+        new FileInputStream(file))));
+
+    try {
+      if (in.readInt() != WebkitRecorder.MAGIC
+          || in.readInt() != WebkitRecorder.FORMAT_VERSION) {
+        throw new IOException("Not a recording: " + file);
+      }
+
+      List<Frame> frames = new ArrayList<Frame>();
+
+      while (true) {
+        int direction = in.read();
+
+        if (direction == -1) {
+          return frames;
+        }
+
+        long time = in.readLong();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        boolean inbound = direction == WebkitRecorder.INBOUND;
+        frames.add(new Frame(inbound, time, new String(bytes, "UTF-8")));
+      }
+    } catch (EOFException e) {
+      throw new IOException("Truncated recording: " + file);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * How long to wait for the request of a recorded response, in seconds.
+   */
+  private static final int REQUEST_TIMEOUT = 5;
+
+  private final List<Frame> frames;
+
+  private WebkitConnection connection;
+
+  private final List<String> sentRequests = new ArrayList<String>();
+  private final Set<Integer> sentIds = new HashSet<Integer>();
+
+  public WebkitReplay(File file) throws IOException {
+    this(read(file));
+  }
+
+  public WebkitReplay(List<Frame> frames) {
+    this.frames = frames;
+  }
+
+  /**
+   * Close the connection, as if the browser had gone away.
+   */
+  public void close() {
+    if (connection != null) {
+      connection.transportClosed();
+    }
+  }
+
+  /**
+   * Connect the given connection to this replay.
+   */
+  public void connect(WebkitConnection connection) {
+    this.connection = connection;
+
+    connection.connect(new WebkitTransport() {
+      @Override
+      public void close() {
+
+      }
+
+      @Override
+      public void send(String text) {
+        requestSent(text);
+      }
+    });
+  }
+
+  public List<Frame> getFrames() {
+    return frames;
+  }
+
+  /**
+   * @return the requests the connection has sent so far
+   */
+  public synchronized List<String> getSentRequests() {
+    return new ArrayList<String>(sentRequests);
+  }
+
+  /**
+   * Feed the recorded incoming messages to the connection.
+   * 
+   * @param realTime whether to keep the recorded pace, or to go as fast as possible
+   */
+  public void run(boolean realTime) throws InterruptedException {
+    long start = System.nanoTime();
+
+    for (Frame frame : frames) {
+      if (!frame.isInbound()) {
+        continue;
+      }
+
+      if (realTime) {
+        long delay = frame.getTime() - (System.nanoTime() - start) / 1000;
+
+        if (delay > 0) {
+          TimeUnit.MICROSECONDS.sleep(delay);
+        }
+      }
+
+      waitForRequest(frame.getText());
+
+      connection.processMessage(frame.getText());
+    }
+  }
+
+  private synchronized void requestSent(String text) {
+    sentRequests.add(text);
+
+    try {
+      sentIds.add(WebkitMessage.parse(text).getId());
+    } catch (JSONException e) {
+
+    }
+
+    notifyAll();
+  }
+
+  /**
+   * If the given message is a response, wait until its request has been sent.
+   */
+  private synchronized void waitForRequest(String text) throws InterruptedException {
+    int id;
+
+    try {
+      id = WebkitMessage.parse(text).getId();
+    } catch (JSONException e) {
+      return;
+    }
+
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(REQUEST_TIMEOUT);
+
+    while (id != -1 && !sentIds.contains(id)) {
+      long remaining = end - System.nanoTime();
+
+      if (remaining <= 0) {
+        WIPTrace.trace("Replaying a response to the unsent request " + id);
+        return;
+      }
+
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+  }
+
+}
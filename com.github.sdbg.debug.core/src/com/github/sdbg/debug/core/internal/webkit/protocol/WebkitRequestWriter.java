@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The single thread writing the requests of a connection to its transport. Callers only queue
+ * their requests; the writer drains everything queued so far in one pass and sends it back to
+ * back, serializing each request into the same reused buffer.
+ */
+class WebkitRequestWriter extends Thread {
+  static class Request {
+    final int id;
+    final JSONObject request;
+
+    Request(int id, JSONObject request) {
+      this.id = id;
+      this.request = request;
+    }
+  }
+
+  static interface Listener {
+    public void requestFailed(int id, String message);
+
+    public void requestWritten(String text);
+  }
+
+  /**
+   * Buffers larger than this are not kept around for the next request.
+   */
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+  private static final Request STOP = new Request(-1, null);
+
+  private final WebkitTransport transport;
+  private final Listener listener;
+
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+  private volatile boolean stopped;
+
+  WebkitRequestWriter(WebkitTransport transport, Listener listener) {
+    super("Webkit request writer");
+
+    this.transport = transport;
+    this.listener = listener;
+
+    setDaemon(true);
+  }
+
+  /**
+   * Stop the writer at once; the requests still queued are dropped.
+   */
+  void abort() {
+    stopped = true;
+    queue.clear();
+
+    interrupt();
+  }
+
+  /**
+   * Stop the writer once the requests queued so far have been sent, waiting for it at most the
+   * given number of milliseconds.
+   */
+  void close(long timeout) {
+    queue.add(STOP);
+
+    try {
+      join(timeout);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    abort();
+  }
+
+  void enqueue(Collection<Request> requests) {
+    queue.addAll(requests);
+  }
+
+  void enqueue(Request request) {
+    queue.add(request);
+  }
+
+  @Override
+  public void run() {
+    List<Request> requests = new ArrayList<Request>();
+    StringWriter buffer = new StringWriter(1024);
+
+    try {
+      while (!stopped) {
+        requests.add(queue.take());
+        queue.drainTo(requests);
+
+        for (Request request : requests) {
+          if (request == STOP || stopped) {
+            return;
+          }
+
+          buffer.getBuffer().setLength(0);
+          send(request, buffer);
+
+          if (buffer.getBuffer().capacity() > MAX_BUFFER_SIZE) {
+            buffer = new StringWriter(1024);
+          }
+        }
+
+        requests.clear();
+      }
+    } catch (InterruptedException e) {
+      // Aborted.
+    }
+  }
+
+  private void send(Request request, StringWriter buffer) {
+    try {
+      request.request.write(buffer);
+
+      // TODO: Too chatty SDBGDebugCorePlugin.log("==> " + buffer);
+
+      String text = buffer.toString();
+
+      transport.send(text);
+      listener.requestWritten(text);
+    } catch (JSONException exception) {
+      listener.requestFailed(request.id, exception.toString());
+    } catch (IOException exception) {
+      listener.requestFailed(request.id, exception.toString());
+    }
+  }
+
+}
@@ -17,6 +17,7 @@ package com.github.sdbg.debug.core.internal.webkit.protocol;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.Callback;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -90,6 +91,138 @@ public class WebkitRuntime extends WebkitDomain {
 
   }
 
+  /**
+   * The timeout of the calls made while showing a value, in milliseconds. The variables view and
+   * the detail pane wait 3 seconds for them, so they have to fail before that.
+   */
+  static final long VALUE_CALL_TIMEOUT = 2000;
+
+  /**
+   * Objects with more own properties than this are left out of a snapshot, and fetched on demand.
+   */
+  private static final int SNAPSHOT_MAX_PROPERTIES = 500;
+
+  /**
+   * Describes the own properties of this object, and of the following arguments, as a JSON string
+   * in the format of Runtime.getProperties. Object values are numbered, and their properties are
+   * described as well up to the given depth, except for arrays and functions. Accessors are never
+   * invoked: the class names and array lengths are read from property descriptors, along the
+   * prototype chain. The traps of proxies may still run. Objects are described as
+   * Runtime.getProperties describes them, e.g. "Array[5]". The objects follow the string in the
+   * returned array, so that their ids can be fetched all at once.
+   */
+  private static final String SNAPSHOT_FUNCTION = "function(depth, maxProperties) {"
+      + "  var roots = [this];"
+      + "  for (var i = 2; i < arguments.length; i++) {"
+      + "    roots.push(arguments[i]);"
+      + "  }"
+      + "  var refs = [];"
+      + "  function ownValue(object, name) {"
+      + "    var descriptor = Object.getOwnPropertyDescriptor(object, name);"
+      + "    return descriptor && 'value' in descriptor ? descriptor.value : undefined;"
+      + "  }"
+      + "  function className(value) {"
+      + "    for (var o = value; o; o = Object.getPrototypeOf(o)) {"
+      + "      if (Object.getOwnPropertyDescriptor(o, 'constructor')) {"
+      + "        var constructor = ownValue(o, 'constructor');"
+      + "        var name = typeof constructor === 'function' ? ownValue(constructor, 'name') : null;"
+      + "        return typeof name === 'string' && name ? name : 'Object';"
+      + "      }"
+      + "    }"
+      + "    return 'Object';"
+      + "  }"
+      + "  function inherits(value, constructor) {"
+      + "    for (var o = Object.getPrototypeOf(value); o; o = Object.getPrototypeOf(o)) {"
+      + "      if (o === constructor.prototype) {"
+      + "        return true;"
+      + "      }"
+      + "    }"
+      + "    return false;"
+      + "  }"
+      + "  function describe(value) {"
+      + "    var type = typeof value;"
+      + "    var result = {type: type};"
+      + "    if (value === null) {"
+      + "      result.subtype = 'null';"
+      + "      result.value = null;"
+      + "    } else if (type === 'object' || type === 'function') {"
+      + "      result.className = 'Object';"
+      + "      try {"
+      + "        result.className = className(value);"
+      + "      } catch (e) {"
+      + "      }"
+      + "      result.description = type === 'function' ? 'function' : result.className;"
+      + "      if (Array.isArray(value)) {"
+      + "        result.subtype = 'array';"
+      + "        result.length = ownValue(value, 'length');"
+      + "        result.description = result.className + '[' + result.length + ']';"
+      + "      } else if (inherits(value, Date)) {"
+      + "        result.subtype = 'date';"
+      + "      } else if (inherits(value, RegExp)) {"
+      + "        result.subtype = 'regexp';"
+      + "      } else if (typeof Node !== 'undefined' && inherits(value, Node)) {"
+      + "        result.subtype = 'node';"
+      + "      }"
+      + "      result.ref = refs.length;"
+      + "      refs.push(value);"
+      + "    } else if (type === 'number' || type === 'string' || type === 'boolean') {"
+      + "      result.value = value;"
+      + "      result.description = String(value);"
+      + "    } else if (type !== 'undefined') {"
+      + "      result.description = String(value);"
+      + "    }"
+      + "    return result;"
+      + "  }"
+      + "  function properties(object, level) {"
+      + "    var names = Object.getOwnPropertyNames(object);"
+      + "    if (names.length > maxProperties) {"
+      + "      return null;"
+      + "    }"
+      + "    var result = [];"
+      + "    for (var i = 0; i < names.length; i++) {"
+      + "      var property = {name: names[i]};"
+      + "      var descriptor = Object.getOwnPropertyDescriptor(object, names[i]);"
+      + "      if (descriptor) {"
+      + "        property.enumerable = descriptor.enumerable;"
+      + "        property.configurable = descriptor.configurable;"
+      + "        property.writable = !!descriptor.writable;"
+      + "        if ('value' in descriptor) {"
+      + "          property.value = describe(descriptor.value);"
+      + "          if (level < depth && property.value.ref !== undefined"
+      + "              && property.value.subtype !== 'array' && property.value.type !== 'function') {"
+      + "            property.value.properties = properties(descriptor.value, level + 1);"
+      + "          }"
+      + "        } else {"
+      + "          if (descriptor.get) {"
+      + "            property.get = describe(descriptor.get);"
+      + "          }"
+      + "          if (descriptor.set) {"
+      + "            property.set = describe(descriptor.set);"
+      + "          }"
+      + "        }"
+      + "      }"
+      + "      result.push(property);"
+      + "    }"
+      + "    var proto = Object.getPrototypeOf(object);"
+      + "    if (proto) {"
+      + "      result.push({name: '__proto__', value: describe(proto)});"
+      + "    }"
+      + "    return result;"
+      + "  }"
+      + "  var snapshot = [];"
+      + "  for (var i = 0; i < roots.length; i++) {"
+      + "    snapshot.push(properties(roots[i], 1));"
+      + "  }"
+      + "  return [JSON.stringify(snapshot)].concat(refs);"
+      + "}";
+
+  /**
+   * Copies a range of the elements of this list into a new array.
+   */
+  private static final String SLICE_FUNCTION = "function(offset, length) {"
+      + "  return Array.prototype.slice.call(this, offset, offset + length);"
+      + "}";
+
   public WebkitRuntime(WebkitConnection connection) {
     super(connection);
   }
@@ -140,93 +273,63 @@ public class WebkitRuntime extends WebkitDomain {
     }
   }
 
-  public void callListLength(String objectId, final WebkitCallback<Integer> callback)
+  /**
+   * Gets the length of the given list. The call fails if it is not answered within
+   * {@link #VALUE_CALL_TIMEOUT}.
+   */
+  public void callListLength(String objectId, WebkitCallback<Integer> callback)
       throws IOException {
+    callListLength(objectId).addCallback(callback);
+  }
+
+  /**
+   * Gets the length of the given list, as a future.
+   * 
+   * @see #callListLength(String, WebkitCallback)
+   */
+  public WebkitFuture<Integer> callListLength(String objectId) throws IOException {
     if (objectId == null) {
-      WebkitResult<Integer> result = new WebkitResult<Integer>();
-      result.setResult(new Integer(0));
-      callback.handleResult(result);
-      return;
+      return createFuture(new Integer(0));
     }
 
-    try {
-      JSONObject request = new JSONObject();
-
-      request.put("method", "Runtime.callFunctionOn");
-      request.put(
-          "params",
-          new JSONObject().put("objectId", objectId).put(
-              "functionDeclaration",
-              "function(){return this.length;}").put("returnByValue", false));
-
-      connection.sendRequest(request, new Callback() {
-        @Override
-        public void handleResult(JSONObject result) throws JSONException {
-          WebkitResult<WebkitRemoteObject> functionResult = convertEvaluateResult(result);
-
-          WebkitResult<Integer> r = new WebkitResult<Integer>();
-
-          if (functionResult.getWasThrown()) {
-            r.setError(functionResult.getResult().getValue());
-          } else {
-            r.setResult(functionResult.getResult() == null ? new Integer(0) : new Integer(
-                functionResult.getResult().getValue()));
+    return callValueFunction(objectId, "function(){return this.length;}").then(
+        new WebkitFuture.Transform<WebkitRemoteObject, Integer>() {
+          @Override
+          public Integer apply(WebkitRemoteObject value) {
+            return value == null ? new Integer(0) : new Integer(value.getValue());
           }
-
-          callback.handleResult(r);
-        }
-      });
-    } catch (JSONException exception) {
-      throw new IOException(exception);
-    }
+        });
   }
 
   /**
    * Calls the toString() method on the given remote object. This is a convenience method for the
-   * Runtime.callFunctionOn call.
+   * Runtime.callFunctionOn call. The call fails if it is not answered within
+   * {@link #VALUE_CALL_TIMEOUT}.
    * 
    * @param objectId
    * @throws IOException
    */
-  public void callToString(String objectId, final WebkitCallback<String> callback)
-      throws IOException {
+  public void callToString(String objectId, WebkitCallback<String> callback) throws IOException {
+    callToString(objectId).addCallback(callback);
+  }
+
+  /**
+   * Calls the toString() method on the given remote object, and returns a future for the string.
+   * 
+   * @see #callToString(String, WebkitCallback)
+   */
+  public WebkitFuture<String> callToString(String objectId) throws IOException {
     if (objectId == null) {
-      WebkitResult<String> result = new WebkitResult<String>();
-      result.setResult(null);
-      callback.handleResult(result);
-      return;
+      return createFuture(null);
     }
 
-    try {
-      JSONObject request = new JSONObject();
-
-      request.put("method", "Runtime.callFunctionOn");
-      request.put(
-          "params",
-          new JSONObject().put("objectId", objectId).put(
-              "functionDeclaration",
-              "function(){return this.toString();}").put("returnByValue", false));
-
-      connection.sendRequest(request, new Callback() {
-        @Override
-        public void handleResult(JSONObject result) throws JSONException {
-          WebkitResult<WebkitRemoteObject> functionResult = convertEvaluateResult(result);
-
-          WebkitResult<String> r = new WebkitResult<String>();
-
-          if (functionResult.getWasThrown()) {
-            r.setError(functionResult.getResult().getValue());
-          } else {
-            r.setResult(functionResult.getResult() == null ? "null"
-                : functionResult.getResult().getValue());
+    return callValueFunction(objectId, "function(){return this.toString();}").then(
+        new WebkitFuture.Transform<WebkitRemoteObject, String>() {
+          @Override
+          public String apply(WebkitRemoteObject value) {
+            return value == null ? "null" : value.getValue();
           }
-
-          callback.handleResult(r);
-        }
-      });
-    } catch (JSONException exception) {
-      throw new IOException(exception);
-    }
+        });
   }
 
   /**
@@ -268,6 +371,69 @@ public class WebkitRuntime extends WebkitDomain {
     }
   }
 
+  /**
+   * Returns a range of the elements of the given list, in two round trips whatever the length of
+   * the range: the elements are copied into a new array, whose properties are then fetched at
+   * once.
+   * 
+   * @param list the list
+   * @param offset the index of the first element
+   * @param length the number of elements
+   * @param callback if successful, the result holds the elements, with null for the holes of the
+   *          list and the indexes past its end
+   * @throws IOException
+   */
+  public void getElements(WebkitRemoteObject list, int offset, final int length,
+      final WebkitCallback<WebkitRemoteObject[]> callback) throws IOException {
+    List<CallArgument> arguments = new ArrayList<CallArgument>();
+    arguments.add(CallArgument.fromInt(offset));
+    arguments.add(CallArgument.fromInt(length));
+
+    callFunctionOn(
+        list.getObjectId(),
+        SLICE_FUNCTION,
+        arguments,
+        false,
+        new WebkitCallback<WebkitRemoteObject>() {
+          @Override
+          public void handleResult(WebkitResult<WebkitRemoteObject> result) {
+            if (result.isError() || result.getWasThrown() || result.getResult() == null
+                || !result.getResult().hasObjectId()) {
+              WebkitResult<WebkitRemoteObject[]> elementsResult = new WebkitResult<WebkitRemoteObject[]>();
+              elementsResult.setError(result.isError() ? result.getError()
+                  : "Unable to get the elements: " + result.getResult());
+              callback.handleResult(elementsResult);
+              return;
+            }
+
+            final String sliceId = result.getResult().getObjectId();
+
+            try {
+              getProperties(
+                  result.getResult(),
+                  true,
+                  false,
+                  new WebkitCallback<WebkitPropertyDescriptor[]>() {
+                    @Override
+                    public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
+                      callback.handleResult(convertElementsResult(result, length));
+
+                      try {
+                        releaseObject(sliceId);
+                      } catch (IOException e) {
+                        // The slice is released along with its group anyway.
+                      }
+                    }
+                  });
+            } catch (IOException e) {
+              WebkitResult<WebkitRemoteObject[]> elementsResult = new WebkitResult<WebkitRemoteObject[]>();
+              elementsResult.setError(e.toString());
+              callback.handleResult(elementsResult);
+            }
+          }
+        });
+  }
+
   /**
    * Returns properties of a given object. Object group of the result is inherited from the target
    * object.
@@ -310,6 +476,69 @@ public class WebkitRuntime extends WebkitDomain {
     }
   }
 
+  /**
+   * Returns the own properties of several objects at once, in two round trips: a
+   * Runtime.callFunctionOn describes all the properties, with the primitive values inline, and a
+   * Runtime.getProperties on its result returns the ids of all the objects referred to. The
+   * properties of these objects are included as well, up to the given depth, and are available
+   * through {@link WebkitRemoteObject#getPrefetchedProperties()}.
+   * <p>
+   * If successful, the result holds the properties of each object, in order; the properties of an
+   * object with too many of them to be included are null.
+   * 
+   * @param objects the objects, typically scopes
+   * @param depth 1 for the properties of the objects only, 2 to include the properties of their
+   *          property values, and so on
+   * @param callback
+   * @throws IOException
+   */
+  public void getPropertiesSnapshot(List<WebkitRemoteObject> objects, int depth,
+      final WebkitCallback<List<WebkitPropertyDescriptor[]>> callback) throws IOException {
+    List<CallArgument> arguments = new ArrayList<CallArgument>();
+    arguments.add(CallArgument.fromInt(depth));
+    arguments.add(CallArgument.fromInt(SNAPSHOT_MAX_PROPERTIES));
+
+    for (WebkitRemoteObject object : objects.subList(1, objects.size())) {
+      arguments.add(CallArgument.fromObjectId(object.getObjectId()));
+    }
+
+    callFunctionOn(
+        objects.get(0).getObjectId(),
+        SNAPSHOT_FUNCTION,
+        arguments,
+        false,
+        new WebkitCallback<WebkitRemoteObject>() {
+          @Override
+          public void handleResult(WebkitResult<WebkitRemoteObject> result) {
+            if (result.isError() || result.getWasThrown() || result.getResult() == null
+                || !result.getResult().hasObjectId()) {
+              WebkitResult<List<WebkitPropertyDescriptor[]>> snapshotResult = new WebkitResult<List<WebkitPropertyDescriptor[]>>();
+              snapshotResult.setError(result.isError() ? result.getError()
+                  : "Unable to take a snapshot: " + result.getResult());
+              callback.handleResult(snapshotResult);
+              return;
+            }
+
+            try {
+              getProperties(
+                  result.getResult(),
+                  true,
+                  false,
+                  new WebkitCallback<WebkitPropertyDescriptor[]>() {
+                    @Override
+                    public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
+                      callback.handleResult(convertSnapshotResult(result));
+                    }
+                  });
+            } catch (IOException e) {
+              WebkitResult<List<WebkitPropertyDescriptor[]>> snapshotResult = new WebkitResult<List<WebkitPropertyDescriptor[]>>();
+              snapshotResult.setError(e.toString());
+              callback.handleResult(snapshotResult);
+            }
+          }
+        });
+  }
+
   /**
    * Releases remote object with given id.
    * 
@@ -358,6 +587,40 @@ public class WebkitRuntime extends WebkitDomain {
     sendSimpleCommand("Runtime.run");
   }
 
+  /**
+   * Calls the given function on the given object, for a value which is not sent by value. The call
+   * fails if it is not answered within {@link #VALUE_CALL_TIMEOUT}, or if the function throws.
+   */
+  private WebkitFuture<WebkitRemoteObject> callValueFunction(String objectId,
+      String functionDeclaration) throws IOException {
+    try {
+      JSONObject request = new JSONObject();
+
+      request.put("method", "Runtime.callFunctionOn");
+      request.put("params", new JSONObject().put("objectId", objectId).put(
+          "functionDeclaration",
+          functionDeclaration).put("returnByValue", false));
+
+      return connection.sendRequestFuture(request, VALUE_CALL_TIMEOUT).then(
+          new WebkitFuture.Transform<JSONObject, WebkitRemoteObject>() {
+            @Override
+            public WebkitRemoteObject apply(JSONObject result) throws IOException, JSONException {
+              // {"result":<RemoteObject>,"wasThrown":<boolean>}
+              WebkitRemoteObject value = WebkitRemoteObject.createFrom(
+                  result.getJSONObject("result"));
+
+              if (JsonUtils.getBoolean(result, "wasThrown")) {
+                throw new IOException(value.getValue());
+              }
+
+              return value;
+            }
+          });
+    } catch (JSONException exception) {
+      throw new IOException(exception);
+    }
+  }
+
   protected WebkitResult<WebkitRemoteObject> convertEvaluateResult(JSONObject object)
       throws JSONException {
     WebkitResult<WebkitRemoteObject> result = WebkitResult.createFrom(object);
@@ -383,6 +646,16 @@ public class WebkitRuntime extends WebkitDomain {
     return result;
   }
 
+  private <T> WebkitFuture<T> createFuture(T value) {
+    WebkitFuture<T> future = new WebkitFuture<T>();
+
+    WebkitResult<T> result = new WebkitResult<T>();
+    result.setResult(value);
+    future.handleResult(result);
+
+    return future;
+  }
+
   private JSONArray argsToArray(List<CallArgument> arguments) throws JSONException {
     JSONArray arr = new JSONArray();
 
@@ -393,6 +666,119 @@ public class WebkitRuntime extends WebkitDomain {
     return arr;
   }
 
+  private WebkitResult<WebkitRemoteObject[]> convertElementsResult(
+      WebkitResult<WebkitPropertyDescriptor[]> propertiesResult, int length) {
+    WebkitResult<WebkitRemoteObject[]> result = new WebkitResult<WebkitRemoteObject[]>();
+
+    if (propertiesResult.isError()) {
+      result.setError(propertiesResult.getError());
+      return result;
+    }
+
+    WebkitRemoteObject[] elements = new WebkitRemoteObject[length];
+
+    for (WebkitPropertyDescriptor descriptor : propertiesResult.getResult()) {
+      try {
+        int index = Integer.parseInt(descriptor.getName());
+
+        if (index >= 0 && index < length) {
+          elements[index] = descriptor.getValue();
+        }
+      } catch (NumberFormatException e) {
+        // length, __proto__
+      }
+    }
+
+    result.setResult(elements);
+
+    return result;
+  }
+
+  private WebkitPropertyDescriptor[] convertSnapshot(JSONArray properties, String[] objectIds)
+      throws JSONException {
+    WebkitPropertyDescriptor[] descriptors = WebkitPropertyDescriptor.createFrom(properties);
+
+    for (int i = 0; i < descriptors.length; i++) {
+      JSONObject property = properties.getJSONObject(i);
+
+      if (property.has("get")) {
+        descriptors[i].getGetterFunction().setObjectId(
+            objectIds[property.getJSONObject("get").getInt("ref")]);
+      }
+
+      if (property.has("set")) {
+        descriptors[i].getSetterFunction().setObjectId(
+            objectIds[property.getJSONObject("set").getInt("ref")]);
+      }
+
+      JSONObject value = property.optJSONObject("value");
+
+      if (value != null && value.has("ref")) {
+        WebkitRemoteObject object = descriptors[i].getValue();
+        object.setObjectId(objectIds[value.getInt("ref")]);
+
+        if (value.has("length")) {
+          object.setListLength(value.getInt("length"));
+        }
+
+        JSONArray children = value.optJSONArray("properties");
+        if (children != null) {
+          object.setPrefetchedProperties(convertSnapshot(children, objectIds));
+        }
+      }
+    }
+
+    return descriptors;
+  }
+
+  private WebkitResult<List<WebkitPropertyDescriptor[]>> convertSnapshotResult(
+      WebkitResult<WebkitPropertyDescriptor[]> propertiesResult) {
+    WebkitResult<List<WebkitPropertyDescriptor[]>> result = new WebkitResult<List<WebkitPropertyDescriptor[]>>();
+
+    if (propertiesResult.isError()) {
+      result.setError(propertiesResult.getError());
+      return result;
+    }
+
+    // The snapshot is the first element of the returned array, and the objects follow.
+    String snapshot = null;
+    String[] objectIds = new String[propertiesResult.getResult().length];
+
+    for (WebkitPropertyDescriptor descriptor : propertiesResult.getResult()) {
+      try {
+        int index = Integer.parseInt(descriptor.getName());
+
+        if (index == 0) {
+          snapshot = descriptor.getValue().getValue();
+        } else if (index <= objectIds.length) {
+          objectIds[index - 1] = descriptor.getValue().getObjectId();
+        }
+      } catch (NumberFormatException e) {
+        // length, __proto__
+      }
+    }
+
+    try {
+      if (snapshot == null) {
+        throw new JSONException("No snapshot returned");
+      }
+
+      JSONArray roots = new JSONArray(snapshot);
+      List<WebkitPropertyDescriptor[]> properties = new ArrayList<WebkitPropertyDescriptor[]>();
+
+      for (int i = 0; i < roots.length(); i++) {
+        JSONArray root = roots.optJSONArray(i);
+        properties.add(root != null ? convertSnapshot(root, objectIds) : null);
+      }
+
+      result.setResult(properties);
+    } catch (JSONException e) {
+      result.setError(e.getMessage());
+    }
+
+    return result;
+  }
+
   private WebkitResult<WebkitPropertyDescriptor[]> convertGetPropertiesResult(
       WebkitRemoteObject parentObject, JSONObject object) throws JSONException {
     WebkitResult<WebkitPropertyDescriptor[]> result = WebkitResult.createFrom(object);
@@ -33,6 +33,7 @@ public class WebkitScript {
     script.endColumn = JsonUtils.getInt(params, "endColumn", -1);
     script.isContentScript = JsonUtils.getBoolean(params, "isContentScript");
     script.sourceMapURL = JsonUtils.getString(params, "sourceMapURL");
+    script.hash = JsonUtils.getString(params, "hash");
 
     script.patchupScriptUrl();
 
@@ -41,6 +42,8 @@ public class WebkitScript {
 
   private String sourceMapURL;
 
+  private String hash;
+
   private boolean isContentScript;
 
   private int endLine;
@@ -86,6 +89,13 @@ public class WebkitScript {
     return endLine;
   }
 
+  /**
+   * @return the hash of the script's contents, or null if the browser does not report it
+   */
+  public String getHash() {
+    return hash;
+  }
+
   public Object getPrivateData() {
     return privateData;
   }
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.IOException;
+
+/**
+ * The channel a connection writes its requests to: the web socket to the browser, or a stand-in
+ * such as a {@link WebkitReplay}. Incoming messages are handed to
+ * {@link WebkitConnection#processMessage(String)}.
+ */
+interface WebkitTransport {
+  public void close() throws IOException;
+
+  public void send(String text) throws IOException;
+}
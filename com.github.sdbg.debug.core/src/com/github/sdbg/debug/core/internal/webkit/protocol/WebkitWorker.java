@@ -28,7 +28,7 @@ import org.json.JSONObject;
  * A WIP Worker domain object.
  */
 @WebkitUnsupported
-public class WebkitWorker extends WebkitDomain {
+public class WebkitWorker extends WebkitEnableableDomain {
 
   public static interface WorkerListener {
     void disconnectedFromWorker();
@@ -93,6 +93,7 @@ public class WebkitWorker extends WebkitDomain {
     }
   }
 
+  @Override
   public void disable() throws IOException {
     sendSimpleCommand("Worker.disable");
   }
@@ -110,6 +111,7 @@ public class WebkitWorker extends WebkitDomain {
     }
   }
 
+  @Override
   public void enable() throws IOException {
     sendSimpleCommand("Worker.enable");
   }
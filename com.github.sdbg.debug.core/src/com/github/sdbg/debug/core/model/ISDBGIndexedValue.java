@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.model;
+
+import org.eclipse.debug.core.model.IIndexedValue;
+
+/**
+ * A list value whose length and ranges of elements can be fetched without blocking the calling
+ * thread.
+ */
+public interface ISDBGIndexedValue extends ISDBGValue, IIndexedValue {
+  /**
+   * Receives the number of elements of a list, once it is fetched.
+   */
+  public static interface ISizeCallback {
+    /**
+     * @param size the number of elements; 0 if it could not be fetched
+     */
+    public void sizeComputed(int size);
+  }
+
+  /**
+   * Fetch the number of elements of this list without blocking the calling thread.
+   */
+  public void computeSize(ISizeCallback callback);
+
+  /**
+   * Fetch a range of the elements of this list without blocking the calling thread. The first
+   * variable passed to the callback is the element at the given offset.
+   */
+  public void computeVariables(int offset, int length, IVariablesCallback callback);
+
+}
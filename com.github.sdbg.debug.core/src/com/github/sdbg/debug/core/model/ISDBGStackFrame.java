@@ -21,6 +21,11 @@ import org.eclipse.debug.core.model.IStackFrame;
  */
 public interface ISDBGStackFrame extends IStackFrame {
 
+  /**
+   * Fetch the variables of this frame without blocking the calling thread.
+   */
+  public void computeVariables(IVariablesCallback callback);
+
   /**
    * Return either the actual path or the mapped path, depending on whether source maps are
    * currently being used.
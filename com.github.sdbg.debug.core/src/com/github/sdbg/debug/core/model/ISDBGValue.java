@@ -28,6 +28,11 @@ public interface ISDBGValue extends IValue, IExpressionEvaluator {
   //&&&
   public void computeDetail(final IValueCallback callback);
 
+  /**
+   * Fetch the variables of this value without blocking the calling thread.
+   */
+  public void computeVariables(IVariablesCallback callback);
+
   /**
    * @return a user-presentable id for this value
    */
@@ -38,6 +43,12 @@ public interface ISDBGValue extends IValue, IExpressionEvaluator {
    */
   public int getListLength();
 
+  /**
+   * @return the full id of the remote object this value refers to, or null if there is none; it
+   *         identifies the object within a suspension, unlike {@link #getId()}
+   */
+  public String getObjectId();
+
   /**
    * @return the raw value if this represents a primitive: i.e. Number, String or Boolean
    */
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.model;
+
+import org.eclipse.debug.core.model.IVariable;
+
+/**
+ * Receives the variables of a value or a stack frame, once they are fetched.
+ */
+public interface IVariablesCallback {
+
+  /**
+   * Called once the variables are fetched, possibly on another thread than the one which asked for
+   * them.
+   * 
+   * @param variables the variables; empty if they could not be fetched
+   */
+  public void variablesComputed(IVariable[] variables);
+
+}
@@ -15,6 +15,7 @@
 package com.github.sdbg.debug.core.util;
 
 import com.github.sdbg.debug.core.model.ISDBGValue;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import org.eclipse.debug.core.model.IVariable;
 import org.eclipse.debug.core.model.IWatchExpressionListener;
@@ -24,10 +25,12 @@ import org.eclipse.debug.core.model.IWatchExpressionListener;
  */
 public class DecoratingSDBGValue extends DecoratingValue implements ISDBGValue {
   private final ISDBGValue proxyValue;
+  private final IVariable[] variables;
 
   public DecoratingSDBGValue(ISDBGValue proxyValue, IVariable[] variables) {
     super(proxyValue, variables);
     this.proxyValue = proxyValue;
+    this.variables = variables;
   }
 
   @Override
@@ -35,6 +38,15 @@ public class DecoratingSDBGValue extends DecoratingValue implements ISDBGValue {
     proxyValue.computeDetail(callback);
   }
 
+  @Override
+  public void computeVariables(IVariablesCallback callback) {
+    if (variables != null) {
+      callback.variablesComputed(variables);
+    } else {
+      proxyValue.computeVariables(callback);
+    }
+  }
+
   @Override
   public void evaluateExpression(String expression, IWatchExpressionListener listener) {
     proxyValue.evaluateExpression(expression, listener);
@@ -50,6 +62,11 @@ public class DecoratingSDBGValue extends DecoratingValue implements ISDBGValue {
     return proxyValue.getListLength();
   }
 
+  @Override
+  public String getObjectId() {
+    return proxyValue.getObjectId();
+  }
+
   @Override
   public Object getRawValue() {
     return proxyValue.getRawValue();
@@ -13,6 +13,11 @@
  */
 package com.github.sdbg.utilities.instrumentation;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * The class {@code Instrumentation} implements support for logging instrumentation information.
  * <p>
@@ -126,6 +131,11 @@ public final class Instrumentation {
    */
   private static InstrumentationLogger CURRENT_LOGGER = NULL_LOGGER;
 
+  /**
+   * The latency histograms, by name.
+   */
+  private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<String, LatencyHistogram>();
+
   /**
    * Create a builder that can collect the data associated with an operation.
    * 
@@ -146,6 +156,15 @@ public final class Instrumentation {
     return CURRENT_LOGGER.createBuilder(name);
   }
 
+  /**
+   * Return the latency histograms created so far.
+   * 
+   * @return the histograms (not {@code null})
+   */
+  public static Collection<LatencyHistogram> getHistograms() {
+    return new ArrayList<LatencyHistogram>(HISTOGRAMS.values());
+  }
+
   /**
    * Get the currently active instrumentation logger
    */
@@ -162,6 +181,28 @@ public final class Instrumentation {
     return NULL_INSTRUMENTATION_BUILDER;
   }
 
+  /**
+   * Return the latency histogram with the given name, creating it if necessary. Unlike builders,
+   * histograms record their data whether or not a logger is installed.
+   * 
+   * @param name the name used to uniquely identify the operation (not {@code null})
+   * @return the histogram (not {@code null})
+   */
+  public static LatencyHistogram histogram(String name) {
+    LatencyHistogram histogram = HISTOGRAMS.get(name);
+
+    if (histogram == null) {
+      LatencyHistogram newHistogram = new LatencyHistogram(name);
+      histogram = HISTOGRAMS.putIfAbsent(name, newHistogram);
+
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+
+    return histogram;
+  }
+
   /**
    * Is this instrumentation system currently configured to drop instrumentation data provided to
    * it?
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.sdbg.utilities.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The class {@code LatencyHistogram} records the distribution of the latency of an operation, such
+ * as the round trip of a request. Latencies are counted in buckets whose bounds are powers of two
+ * microseconds, so recording a latency is a couple of atomic increments and never blocks; the
+ * percentiles are approximate to within a factor of two.
+ * <p>
+ * Histograms are shared by name, and obtained with {@link Instrumentation#histogram(String)}.
+ * Their summary can be written to the current instrumentation logger with {@link #log()}.
+ * 
+ * @coverage dart.engine.utilities
+ */
+public final class LatencyHistogram {
+  /**
+   * Bucket {@code i} counts the latencies below 2^i microseconds (and at least 2^(i-1)); the last
+   * bucket counts everything longer.
+   */
+  private static final int BUCKET_COUNT = 32;
+
+  private static int getBucket(long micros) {
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  private final String name;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return the number of latencies recorded
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return the longest latency recorded, in microseconds
+   */
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  /**
+   * @return the mean latency, in microseconds
+   */
+  public long getMeanMicros() {
+    long n = count.get();
+
+    return n == 0 ? 0 : totalMicros.get() / n;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Answer the given percentile of the recorded latencies; the answer is the upper bound of the
+   * bucket the percentile falls in.
+   * 
+   * @param percentile the percentile, between 0 and 100
+   * @return the percentile, in microseconds
+   */
+  public long getPercentileMicros(double percentile) {
+    long n = count.get();
+
+    if (n == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+      seen += buckets.get(i);
+
+      if (seen >= rank) {
+        return Math.min(1L << i, maxMicros.get());
+      }
+    }
+
+    return maxMicros.get();
+  }
+
+  /**
+   * Log a summary of the recorded latencies to the current instrumentation logger.
+   */
+  public void log() {
+    InstrumentationBuilder instrumentation = Instrumentation.builder(name);
+
+    instrumentation.metric("count", getCount());
+    instrumentation.metric("mean", getMeanMicros());
+    instrumentation.metric("p50", getPercentileMicros(50));
+    instrumentation.metric("p90", getPercentileMicros(90));
+    instrumentation.metric("p99", getPercentileMicros(99));
+    instrumentation.metric("max", getMaxMicros());
+    instrumentation.log();
+  }
+
+  /**
+   * Record a latency.
+   * 
+   * @param nanos the latency, in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.max(nanos / 1000, 0);
+
+    buckets.incrementAndGet(getBucket(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+
+    for (long max = maxMicros.get(); micros > max; max = maxMicros.get()) {
+      if (maxMicros.compareAndSet(max, micros)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Forget the recorded latencies.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+
+    count.set(0);
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return name + ": count=" + getCount() + ", mean=" + getMeanMicros() + "us, p50="
+        + getPercentileMicros(50) + "us, p99=" + getPercentileMicros(99) + "us, max="
+        + getMaxMicros() + "us";
+  }
+}
@@ -22,8 +22,10 @@ public class TestAll {
     TestSuite suite = new TestSuite("Tests in " + TestAll.class.getPackage().getName());
     //suite.addTest(com.github.sdbg.debug.core.configs.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.internal.webkit.model.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.webkit.protocol.TestAll.suite());
     //suite.addTest(com.github.sdbg.debug.core.server.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.internal.sourcemaps.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.util.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.util.TestAll.suite());
     return suite;
   }
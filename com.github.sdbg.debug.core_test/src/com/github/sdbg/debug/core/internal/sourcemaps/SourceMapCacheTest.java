@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+
+public class SourceMapCacheTest extends TestCase {
+  private static final String NAME = "solar.dart.js.map";
+
+  private File directory;
+
+  public void testComputeKey() throws Exception {
+    String key = computeKey(NAME);
+
+    assertEquals(40, key.length());
+    assertEquals(key, computeKey(NAME));
+    assertFalse(key.equals(computeKey("main.dart.map")));
+  }
+
+  public void testComputeFileKey() throws Exception {
+    File file = new File(directory, NAME);
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("{}".getBytes("UTF-8"));
+    out.close();
+
+    String key = SourceMapCache.computeKey(file);
+
+    assertEquals(40, key.length());
+    assertEquals(key, SourceMapCache.computeKey(file));
+
+    file.setLastModified(file.lastModified() - 60000);
+
+    assertFalse(key.equals(SourceMapCache.computeKey(file)));
+  }
+
+  public void testComputeKeyWhileParsing() throws Exception {
+    MessageDigest digest = SourceMapCache.createDigest();
+
+    SourceMap.createFrom(new Path(NAME), new InputStreamReader(new DigestInputStream(
+        getClass().getResourceAsStream(NAME),
+        digest), "UTF-8"));
+
+    assertEquals(computeKey(NAME), SourceMapCache.getKey(digest));
+  }
+
+  public void testCorruptFile() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    String key = computeKey(NAME);
+
+    cache.write(key, readMap(NAME));
+
+    File file = directory.listFiles()[0];
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[] {1, 2, 3});
+    out.close();
+
+    assertNull(cache.get(key, new Path(NAME)));
+    assertFalse(file.exists());
+  }
+
+  public void testEviction() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+
+    cache.write("a", readMap(NAME));
+    long size = directory.listFiles()[0].length();
+
+    // Room for two maps only.
+    cache = new SourceMapCache(directory, size * 2 + size / 2);
+
+    cache.write("b", readMap(NAME));
+    new File(directory, "a.smc").setLastModified(System.currentTimeMillis() - 60000);
+    new File(directory, "b.smc").setLastModified(System.currentTimeMillis() - 30000);
+
+    cache.write("c", readMap(NAME));
+
+    assertNull(cache.get("a", new Path(NAME)));
+    assertNotNull(cache.get("b", new Path(NAME)));
+    assertNotNull(cache.get("c", new Path(NAME)));
+  }
+
+  public void testMissing() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+
+    assertNull(cache.get(computeKey(NAME), new Path(NAME)));
+  }
+
+  public void testRoundTrip() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    String key = computeKey(NAME);
+    SourceMap expected = readMap(NAME);
+
+    cache.write(key, expected);
+
+    checkCachedMap(expected, cache.get(key, new Path(NAME)));
+    assertNull(cache.get("other", new Path(NAME)));
+  }
+
+  public void testRoundTripSmall() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    String contents = "{\"version\":3,\"sources\":[\"foo.js\"],\"names\":[\"bar\"],"
+        + "\"mappings\":\"AAAA,EAAEA;;ACCA\"}";
+    SourceMap expected = SourceMap.createFrom(new Path("foo.js.map"), new StringReader(contents));
+
+    assertEquals(3, expected.decodeAllEntries().size());
+
+    cache.write("small", expected);
+
+    SourceMap actual = cache.get("small", new Path("foo.js.map"));
+
+    checkCachedMap(expected, actual);
+    assertEquals(3, actual.decodeAllEntries().size());
+    assertEquals(1, directory.listFiles().length);
+  }
+
+  public void testRoundTripLazy() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    String key = computeKey(NAME);
+
+    SourceMapReader reader = new SourceMapReader(new InputStreamReader(
+        getClass().getResourceAsStream(NAME),
+        "UTF-8"), 100);
+    reader.read();
+
+    SourceMap map = new SourceMap(new Path(NAME), reader);
+    assertNotNull(map.getLazyMappings());
+
+    cache.write(key, map);
+
+    // Caching the map does not decode it, and the cached map is decoded lazily as well.
+    assertNotNull(map.getLazyMappings());
+
+    SourceMap actual = cache.get(key, new Path(NAME));
+    assertNotNull(actual.getLazyMappings());
+
+    checkCachedMap(readMap(NAME), actual);
+  }
+
+  public void testTempFilesDeleted() throws Exception {
+    File tempFile = new File(directory, "abc123.tmp");
+    assertTrue(tempFile.createNewFile());
+
+    // Left behind by a write which never completed.
+    new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+
+    assertFalse(tempFile.exists());
+  }
+
+  public void testWriteExisting() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = readMap(NAME);
+
+    cache.write("a", map);
+
+    File file = new File(directory, "a.smc");
+    file.setLastModified(System.currentTimeMillis() - 60000);
+    long lastModified = file.lastModified();
+
+    // The cached file is kept, as it may still be mapped; only its use is recorded.
+    cache.write("a", map);
+
+    assertEquals(1, directory.listFiles().length);
+    assertTrue(file.lastModified() > lastModified);
+    assertNotNull(cache.get("a", new Path(NAME)));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("sourcemaps", "");
+    directory.delete();
+    directory.mkdirs();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+  }
+
+  private void checkCachedMap(SourceMap expected, SourceMap actual) {
+    assertNotNull(actual);
+
+    assertEquals(expected.getVersion(), actual.getVersion());
+    assertEquals(expected.getFile(), actual.getFile());
+    assertEquals(expected.getSourceRoot(), actual.getSourceRoot());
+    assertEquals(Arrays.asList(expected.getSourceNames()), Arrays.asList(actual.getSourceNames()));
+
+    for (int line = 0; line < 4000; line++) {
+      for (int column = -1; column < 80; column += 9) {
+        SourceMapInfo expectedInfo = expected.getMappingFor(line, column);
+        SourceMapInfo actualInfo = actual.getMappingFor(line, column);
+
+        if (expectedInfo == null) {
+          assertNull(actualInfo);
+        } else {
+          assertEquals(expectedInfo.toString(), actualInfo.toString());
+          assertEquals(expectedInfo.getName(), actualInfo.getName());
+        }
+      }
+    }
+
+    for (String source : expected.getSourceNames()) {
+      for (int line = 0; line < 200; line++) {
+        List<SourceMapInfo> expectedInfos = expected.getReverseMappingsFor(source, line);
+        List<SourceMapInfo> actualInfos = actual.getReverseMappingsFor(source, line);
+
+        assertEquals(expectedInfos.toString(), actualInfos.toString());
+      }
+    }
+  }
+
+  private String computeKey(String name) throws Exception {
+    return SourceMapCache.computeKey(getClass().getResourceAsStream(name));
+  }
+
+  private SourceMap readMap(String name) throws Exception {
+    return SourceMap.createFrom(new Path(name), new InputStreamReader(
+        getClass().getResourceAsStream(name),
+        "UTF-8"));
+  }
+
+}
@@ -14,7 +14,327 @@
 
 package com.github.sdbg.debug.core.internal.sourcemaps;
 
-public class SourceMapTest /*&&&extends AbstractDartCoreTest*/{
+import com.github.sdbg.utilities.Streams;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class SourceMapTest extends TestCase /*&&&extends AbstractDartCoreTest*/{
+
+  public void testDecodeMain() throws Exception {
+    checkDecodersAgree(loadJson("main.dart.map"));
+  }
+
+  public void testDecodeMalformed() throws Exception {
+    try {
+      MappingsDecoder.decode("AAAA,A$AA");
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    try {
+      MappingsDecoder.decode("AAAA;AAg");
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testDecodeSimple() throws Exception {
+    checkDecodersAgree(new String[] {"foo.js", "bar.js"}, new String[] {
+        "src", "maps", "are", "fun"}, "AA,AB;;ABCDE;");
+    checkDecodersAgree(new String[] {"foo.js", "bar.js"}, new String[] {
+        "src", "maps", "are", "fun"}, ";;AACA,EAAEC,G,IACAA,K;A,gBACzBAAAA;;");
+  }
+
+  public void testDecodeSolar() throws Exception {
+    checkDecodersAgree(loadJson("solar.dart.js.map"));
+  }
+
+  public void testLazyMappingsMalformed() throws Exception {
+    String[] malformed = {"AAAA;AA$A", "AAAA,AAAg;AAAA", "AAAA;;AAg"};
+
+    for (String mappings : malformed) {
+      try {
+        new LazyMappings(mappings);
+        fail("expected IllegalArgumentException for " + mappings);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+
+    assertEquals(3, new LazyMappings("AAAA,CAAC;;AAAA").getLineCount());
+  }
+
+  public void testReadMain() throws Exception {
+    checkReaderAgrees("main.dart.map");
+  }
+
+  public void testReadMalformed() throws Exception {
+    String[] malformed = {
+        "", "{", "{\"sources\":[],\"names\":[]}", "{\"sources\":[\"a.js\"],\"names\":[],",
+        "{\"sources\":[],\"names\":[],\"mappings\":\"A$\"}",
+        "{\"sources\":[] \"names\":[],\"mappings\":\"\"}"};
+
+    for (String contents : malformed) {
+      try {
+        SourceMap.createFrom(new Path("foo.js.map"), new StringReader(contents));
+        fail("expected IOException for " + contents);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testReadSimple() throws Exception {
+    String contents = ")]}'\n{\n  \"version\" : 3,\n  \"file\": \"out.js\",\n"
+        + "  \"x_extension\": {\"a\": [1, -2.5e3, true, null, {\"b\": \"}]\\\"\"}]},\n"
+        + "  \"sourceRoot\" : \"src/\",\n"
+        + "  \"sources\": [\"foo.js\", \"b\\u0061r\\\\baz.js\"],\n"
+        + "  \"sourcesContent\": [\"var a = \\\"\\n\\\";\", null],\n"
+        + "  \"names\": [\"src\", \"maps\", \"are\", \"fun\"],\n"
+        + "  \"mappings\": \"AAAA,EAAEC,G;;ACCAA\"\n}\n";
+
+    SourceMap map = SourceMap.createFrom(new Path("foo.js.map"), new StringReader(contents));
+
+    assertEquals(3, map.getVersion());
+    assertEquals("out.js", map.getFile());
+    assertEquals("src/", map.getSourceRoot());
+    assertEquals("src/foo.js", map.getSourceNames()[0]);
+    assertEquals("src/bar\\baz.js", map.getSourceNames()[1]);
+    assertEquals("src/foo.js,0,2", map.getMappingFor(0, 2).toString());
+    assertEquals("maps", map.getMappingFor(0, 2).getName());
+    assertEquals("src/bar\\baz.js,1,2", map.getMappingFor(2, -1).toString());
+  }
+
+  public void testReadSolar() throws Exception {
+    checkReaderAgrees("solar.dart.js.map");
+  }
+
+  public void testReadXssiPrefix() throws Exception {
+    String json = "{\"sources\":[\"foo.js\"],\"names\":[],\"mappings\":\"AAAA\"}";
+
+    for (String prefix : new String[] {")]}'\n", ")]}\n", ")]}'", ")]}"}) {
+      SourceMap map = SourceMap.createFrom(new Path("foo.js.map"), new StringReader(prefix + json));
+
+      assertEquals("foo.js,0,0", map.getMappingFor(0, -1).toString());
+    }
+  }
+
+  public void testSolarLazyMappings() throws Exception {
+    SourceMap eager = new SourceMap(
+        new Path("solar.dart.js.map"),
+        loadJson("solar.dart.js.map"),
+        false);
+    SourceMap lazy = new SourceMap(
+        new Path("solar.dart.js.map"),
+        loadJson("solar.dart.js.map"),
+        true);
+
+    // Visit the lines out of order, so that blocks are decoded after skipping others.
+    for (int i = 0; i < 4000; i++) {
+      int line = (i * 997) % 4000;
+
+      for (int column = -1; column < 80; column += 9) {
+        SourceMapInfo expected = eager.getMappingFor(line, column);
+        SourceMapInfo actual = lazy.getMappingFor(line, column);
+
+        if (expected == null) {
+          assertNull(actual);
+        } else {
+          assertEquals(expected.toString(), actual.toString());
+          assertEquals(expected.getName(), actual.getName());
+        }
+      }
+    }
+
+    assertEquals(
+        eager.getReverseMappingsFor("file:///C:/Users/username/solar/solar.dart", 264).toString(),
+        lazy.getReverseMappingsFor("file:///C:/Users/username/solar/solar.dart", 264).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,264,19",
+        lazy.getMappingFor(1353, 6).toString());
+  }
+
+  public void testSolarMappings() throws Exception {
+    SourceMap map = new SourceMap(new Path("solar.dart.js.map"), loadJson("solar.dart.js.map"));
+
+    assertEquals(3, map.getVersion());
+    assertEquals(
+        "file:///C:/tools/eclipse_37/dart-sdk/lib/_internal/compiler/implementation/lib/regexp_helper.dart,84,36",
+        map.getMappingFor(100, -1).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,263,2",
+        map.getMappingFor(1351, -1).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,264,8",
+        map.getMappingFor(1351, 17).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,264,19",
+        map.getMappingFor(1353, 6).toString());
+    assertEquals("orbitSpeed", map.getMappingFor(1351, 17).getName());
+  }
+
+  public void testSolarReverseMappings() throws Exception {
+    SourceMap map = new SourceMap(new Path("solar.dart.js.map"), loadJson("solar.dart.js.map"));
+
+    List<SourceMapInfo> mappings = map.getReverseMappingsFor(
+        "file:///C:/Users/username/solar/solar.dart",
+        264);
+
+    // One entry per generated line the source line maps to
+    assertEquals(1, mappings.size());
+    assertEquals(1353, mappings.get(0).getLine());
+    assertEquals(0, map.getReverseMappingsFor("no_such_file.dart", 264).size());
+  }
+
+  public void testSolarReverseIndex() throws Exception {
+    JSONObject json = loadJson("solar.dart.js.map");
+    String[] sources = toStringArray(json.getJSONArray("sources"));
+    SourceMapEntryTable entries = MappingsDecoder.decode(json.getString("mappings"));
+    SourceMapReverseIndex index = new SourceMapReverseIndex(entries, sources.length);
+
+    for (int source = 0; source < sources.length; source++) {
+      for (int line = 0; line < 1000; line++) {
+        List<Integer> expected = new ArrayList<Integer>();
+
+        // At most one entry per generated line; the first one in generated order.
+        for (int i = 0; i < entries.size(); i++) {
+          if (entries.sourceIndexes[i] == source && entries.originalLines[i] == line) {
+            if (expected.isEmpty()
+                || entries.lines[expected.get(expected.size() - 1)] != entries.lines[i]) {
+              expected.add(i);
+            }
+          }
+        }
+
+        int[] actual = index.find(source, line);
+
+        assertEquals(expected.size(), actual.length);
+        for (int i = 0; i < actual.length; i++) {
+          assertEquals(expected.get(i).intValue(), actual[i]);
+        }
+      }
+    }
+  }
+
+  private void checkMapsAgree(SourceMap expected, SourceMap actual) {
+    assertEquals(expected.getVersion(), actual.getVersion());
+    assertEquals(expected.getFile(), actual.getFile());
+    assertEquals(expected.getSourceRoot(), actual.getSourceRoot());
+    assertEquals(Arrays.asList(expected.getSourceNames()), Arrays.asList(actual.getSourceNames()));
+
+    for (int line = 0; line < 4000; line++) {
+      for (int column = -1; column < 80; column += 9) {
+        SourceMapInfo expectedInfo = expected.getMappingFor(line, column);
+        SourceMapInfo actualInfo = actual.getMappingFor(line, column);
+
+        if (expectedInfo == null) {
+          assertNull(actualInfo);
+        } else {
+          assertEquals(expectedInfo.toString(), actualInfo.toString());
+          assertEquals(expectedInfo.getName(), actualInfo.getName());
+        }
+      }
+    }
+  }
+
+  private void checkReaderAgrees(String name) throws Exception {
+    SourceMap expected = new SourceMap(new Path(name), loadJson(name));
+
+    checkMapsAgree(
+        expected,
+        SourceMap.createFrom(new Path(name), new InputStreamReader(
+            getClass().getResourceAsStream(name),
+            "UTF-8")));
+
+    // Force the reader to fall back to lazy decoding after the first block of lines.
+    SourceMapReader reader = new SourceMapReader(new InputStreamReader(
+        getClass().getResourceAsStream(name),
+        "UTF-8"), 100);
+    reader.read();
+
+    assertNull(reader.getEntries());
+
+    SourceMap lazy = new SourceMap(new Path(name), reader);
+    checkMapsAgree(expected, lazy);
+
+    SourceMapEntryTable expectedEntries = expected.decodeAllEntries();
+    SourceMapEntryTable actualEntries = lazy.decodeAllEntries();
+
+    assertEquals(expectedEntries.size(), actualEntries.size());
+    for (int i = 0; i < expectedEntries.size(); i++) {
+      assertEquals(expectedEntries.lines[i], actualEntries.lines[i]);
+      assertEquals(expectedEntries.columns[i], actualEntries.columns[i]);
+      assertEquals(expectedEntries.endColumns[i], actualEntries.endColumns[i]);
+      assertEquals(expectedEntries.originalLines[i], actualEntries.originalLines[i]);
+      assertEquals(expectedEntries.nameIndexes[i], actualEntries.nameIndexes[i]);
+    }
+  }
+
+  private void checkDecodersAgree(JSONObject json) throws Exception {
+    checkDecodersAgree(
+        toStringArray(json.getJSONArray("sources")),
+        toStringArray(json.getJSONArray("names")),
+        json.getString("mappings"));
+  }
+
+  private void checkDecodersAgree(String[] sources, String[] names, String mappings) {
+    List<SourceMapInfoEntry> expected = SourceMapDecoder.decode(sources, names, mappings);
+    SourceMapEntryTable actual = MappingsDecoder.decode(mappings);
+
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < actual.size(); i++) {
+      SourceMapInfoEntry entry = expected.get(i);
+      SourceMapInfo info = entry.getInfo();
+
+      assertEquals(entry.line, actual.lines[i]);
+      assertEquals(entry.column, actual.columns[i]);
+      assertEquals(entry.endColumn, actual.endColumns[i]);
+      assertEquals(info.getFile(), getString(sources, actual.sourceIndexes[i]));
+      assertEquals(info.getLine(), actual.originalLines[i]);
+      assertEquals(info.getColumn(), actual.originalColumns[i]);
+
+      if (actual.nameIndexes[i] != -1) {
+        assertEquals(info.getName(), getString(names, actual.nameIndexes[i]));
+      } else {
+        assertNull(info.getName());
+      }
+    }
+  }
+
+  private String getString(String[] strs, int index) {
+    return index >= 0 && index < strs.length ? strs[index] : null;
+  }
+
+  private JSONObject loadJson(String name) throws Exception {
+    return new JSONObject(Streams.loadAndClose(new InputStreamReader(
+        getClass().getResourceAsStream(name),
+        "UTF-8")));
+  }
+
+  private String[] toStringArray(JSONArray arr) throws Exception {
+    String[] strs = new String[arr.length()];
+
+    for (int i = 0; i < arr.length(); i++) {
+      strs[i] = arr.getString(i);
+    }
+
+    return strs;
+  }
+
 //&&&  
 //
 //  private static String TEST_SOURCE = "{\nversion : 3,\nfile: \"out.js\",\n"
@@ -63,6 +63,38 @@ public class VlqDecoderTest extends TestCase {
     assertArrayEquals(new int[] {0, 0, 16, 1}, actual);
   }
 
+  public void testDecodeMappings() throws Exception {
+    SourceMapEntryTable table = MappingsDecoder.decode("AAgBC");
+
+    assertEquals(1, table.size());
+    assertEquals(0, table.columns[0]);
+    assertEquals(0, table.sourceIndexes[0]);
+    assertEquals(16, table.originalLines[0]);
+    assertEquals(1, table.originalColumns[0]);
+    assertEquals(-1, table.nameIndexes[0]);
+  }
+
+  public void testDecodeMappingsSelectedValues() {
+    int base = 1;
+    for (int i = 0; i < 30; i++) {
+      testSegment(new int[] {base - 1, base, -base, 1 - base, base});
+      base *= 2;
+    }
+  }
+
+  private void testSegment(int[] values) {
+    String segment = VlqDecoder.encode(values);
+    SourceMapEntryTable table = MappingsDecoder.decode(segment);
+
+    assertArrayEquals(values, VlqDecoder.decode(segment));
+    assertEquals(1, table.size());
+    assertEquals(values[0], table.columns[0]);
+    assertEquals(values[1], table.sourceIndexes[0]);
+    assertEquals(values[2], table.originalLines[0]);
+    assertEquals(values[3], table.originalColumns[0]);
+    assertEquals(values[4], table.nameIndexes[0]);
+  }
+
   private void testValue(int value) {
     try {
       String result = VlqDecoder.encode(new int[] {value});
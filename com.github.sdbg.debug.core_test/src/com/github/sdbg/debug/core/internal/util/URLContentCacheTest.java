@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.util;
+
+import com.github.sdbg.utilities.Streams;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.security.MessageDigest;
+
+import junit.framework.TestCase;
+
+public class URLContentCacheTest extends TestCase {
+  /**
+   * A minimal HTTP server, serving a single resource with an ETag.
+   */
+  private class Server implements Runnable {
+    private ServerSocket serverSocket;
+
+    private volatile String contents = "first";
+    private volatile int requestCount;
+    private volatile int notModifiedCount;
+
+    Server() throws IOException {
+      serverSocket = new ServerSocket(0);
+
+      Thread thread = new Thread(this, "Test HTTP server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+
+          try {
+            handle(socket);
+          } finally {
+            socket.close();
+          }
+        }
+      } catch (IOException e) {
+        // The server was closed.
+      }
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    URI getURI() {
+      return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/test.js.map");
+    }
+
+    private void handle(Socket socket) throws IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(),
+          "US-ASCII"));
+
+      String eTag = "\"" + contents.hashCode() + "\"";
+      String ifNoneMatch = null;
+
+      String line = reader.readLine();
+      for (; line != null && line.length() > 0; line = reader.readLine()) {
+        if (line.toLowerCase().startsWith("if-none-match:")) {
+          ifNoneMatch = line.substring("if-none-match:".length()).trim();
+        }
+      }
+
+      requestCount++;
+
+      OutputStream out = socket.getOutputStream();
+
+      if (eTag.equals(ifNoneMatch)) {
+        notModifiedCount++;
+        out.write(("HTTP/1.1 304 Not Modified\r\nETag: " + eTag
+            + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+      } else {
+        byte[] body = contents.getBytes("UTF-8");
+        out.write(("HTTP/1.1 200 OK\r\nETag: " + eTag + "\r\nContent-Length: " + body.length
+            + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+        out.write(body);
+      }
+
+      out.flush();
+    }
+  }
+
+  private File directory;
+
+  private Server server;
+
+  public void testChanged() throws Exception {
+    URLContentCache cache = new URLContentCache(directory, 1024 * 1024, 1024 * 1024);
+
+    assertEquals("first", read(cache));
+
+    server.contents = "second";
+
+    assertEquals("second", read(cache));
+    assertEquals(0, server.notModifiedCount);
+
+    assertEquals("second", read(cache));
+    assertEquals(1, server.notModifiedCount);
+  }
+
+  public void testDigest() throws Exception {
+    URLContentCache cache = new URLContentCache(directory, 1024 * 1024, 1024 * 1024);
+    String expected = URLContentCache.toHex(MessageDigest.getInstance("SHA-1").digest(
+        "first".getBytes("UTF-8")));
+
+    // Both when fetched and when served from the cache.
+    for (int i = 0; i < 2; i++) {
+      InputStream in = cache.getContents(server.getURI());
+
+      assertEquals(expected, URLContentCache.getDigest(in));
+      in.close();
+    }
+
+    assertEquals(1, server.notModifiedCount);
+  }
+
+  public void testDiskCache() throws Exception {
+    assertEquals("first", read(new URLContentCache(directory, 1024 * 1024, 1024 * 1024)));
+
+    // A new cache finds the contents on disk.
+    assertEquals("first", read(new URLContentCache(directory, 1024 * 1024, 1024 * 1024)));
+    assertEquals(1, server.notModifiedCount);
+  }
+
+  public void testDiskEviction() throws Exception {
+    URLContentCache cache = new URLContentCache(directory, 0, 0);
+
+    assertEquals("first", read(cache));
+    assertEquals("first", read(cache));
+
+    // Nothing could be kept, so the contents are fetched again after revalidating.
+    assertEquals(3, server.requestCount);
+    assertEquals(1, server.notModifiedCount);
+
+    // The entries are evicted along with the contents.
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  public void testMemoryCache() throws Exception {
+    URLContentCache cache = new URLContentCache(null, 1024 * 1024, 0);
+
+    assertEquals("first", read(cache));
+    assertEquals("first", read(cache));
+    assertEquals(2, server.requestCount);
+    assertEquals(1, server.notModifiedCount);
+  }
+
+  public void testNotCacheable() throws Exception {
+    File file = new File(directory, "test.txt");
+    OutputStream out = new FileOutputStream(file);
+    out.write("file".getBytes("UTF-8"));
+    out.close();
+
+    URLContentCache cache = new URLContentCache(directory, 1024 * 1024, 1024 * 1024);
+    InputStream in = cache.getContents(file.toURI());
+
+    assertNull(URLContentCache.getDigest(in));
+    assertEquals("file", Streams.loadAndClose(new InputStreamReader(in, "UTF-8")));
+  }
+
+  public void testTempFilesDeleted() throws Exception {
+    File tempFile = new File(directory, "fetch123.tmp");
+    assertTrue(tempFile.createNewFile());
+
+    // Left behind by a fetch which never completed.
+    new URLContentCache(directory, 1024 * 1024, 1024 * 1024);
+
+    assertFalse(tempFile.exists());
+  }
+
+  public void testURLStorageIdentity() throws Exception {
+    URLStorage storage = new URLStorage(URI.create("http://example.com/a.js"));
+
+    assertEquals(storage, new URLStorage(new URL("http://example.com/a.js")));
+    assertEquals(storage.hashCode(), new URLStorage(new URL("http://example.com/a.js")).hashCode());
+    assertFalse(storage.equals(new URLStorage(URI.create("http://example.com/b.js"))));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("http", "");
+    directory.delete();
+    directory.mkdirs();
+
+    server = new Server();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+  }
+
+  private String read(URLContentCache cache) throws IOException {
+    InputStream in = cache.getContents(server.getURI());
+
+    return Streams.loadAndClose(new InputStreamReader(in, "UTF-8"));
+  }
+
+}
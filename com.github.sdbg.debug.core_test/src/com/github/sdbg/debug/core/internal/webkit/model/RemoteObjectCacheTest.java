@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplay;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplayTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+
+public class RemoteObjectCacheTest extends WebkitReplayTestCase {
+  private static WebkitRemoteObject createObject(String objectId) throws Exception {
+    return WebkitRemoteObject.createFrom(new JSONObject().put("type", "object").put(
+        "objectId",
+        objectId));
+  }
+
+  public void testClear() throws Exception {
+    RemoteObjectCache cache = new RemoteObjectCache();
+    WebkitRemoteObject object = createObject("1");
+
+    cache.putDetail(object, "detail");
+    cache.putProperties(object, new WebkitPropertyDescriptor[0]);
+    cache.clear();
+
+    assertNull(cache.getDetail(object));
+    assertNull(cache.getProperties(object));
+  }
+
+  public void testDetail() throws Exception {
+    RemoteObjectCache cache = new RemoteObjectCache();
+
+    cache.putDetail(createObject("1"), "detail");
+
+    assertEquals("detail", cache.getDetail(createObject("1")));
+    assertNull(cache.getDetail(createObject("2")));
+    assertNull(cache.getDetail(WebkitRemoteObject.createNull()));
+  }
+
+  public void testListLength() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":1,\"error\":{\"message\":\"gone\"}}"));
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":2,\"result\":{\"result\":"
+        + "{\"type\":\"number\",\"value\":3}}}"));
+
+    connect(frames);
+
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          replay.run(false);
+        } catch (InterruptedException e) {
+
+        }
+      }
+    };
+    thread.start();
+
+    try {
+      RemoteObjectCache cache = new RemoteObjectCache();
+
+      // A failed request is neither remembered by the object nor cached.
+      WebkitRemoteObject list = createObject("1");
+      assertEquals(0, cache.getListLength(list, connection));
+      assertFalse(list.hasListLength());
+
+      assertEquals(3, cache.getListLength(createObject("1"), connection));
+      assertEquals(3, cache.getListLength(createObject("1"), connection));
+      assertEquals(2, replay.getSentRequests().size());
+    } finally {
+      thread.join();
+    }
+  }
+
+  public void testProperties() throws Exception {
+    RemoteObjectCache cache = new RemoteObjectCache();
+    WebkitPropertyDescriptor[] properties = new WebkitPropertyDescriptor[] {
+        WebkitPropertyDescriptor.createObjectDescriptor(createObject("3"), "b"),
+        WebkitPropertyDescriptor.createObjectDescriptor(createObject("4"), "a")};
+
+    cache.putProperties(createObject("1"), properties);
+
+    WebkitPropertyDescriptor[] cached = cache.getProperties(createObject("1"));
+    assertEquals(2, cached.length);
+    assertEquals("b", cached[0].getName());
+
+    // The callers sort the properties in place.
+    cached[0] = cached[1];
+    assertEquals("b", cache.getProperties(createObject("1"))[0].getName());
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.breakpoints.IBreakpointPathResolver;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplay;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplayTestCase;
+import com.github.sdbg.debug.core.model.IResourceResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.PlatformObject;
+import org.eclipse.debug.core.model.IBreakpoint;
+import org.eclipse.debug.core.model.ILineBreakpoint;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Replays a script with a source map to a {@link WebkitDebugTarget}, and checks that its
+ * {@link SourceMapManager} and {@link BreakpointManager} set the breakpoints of the mapped source.
+ */
+public class SourceMapBreakpointReplayTest extends WebkitReplayTestCase {
+  /**
+   * A line breakpoint in a source file, which lives without a marker or the debug plugin.
+   */
+  private static class TestBreakpoint extends PlatformObject implements ILineBreakpoint {
+    private final String path;
+
+    private final int line;
+
+    TestBreakpoint(String path, int line) {
+      this.path = path;
+      this.line = line;
+    }
+
+    @Override
+    public void delete() {
+
+    }
+
+    @Override
+    public int getCharEnd() {
+      return -1;
+    }
+
+    @Override
+    public int getCharStart() {
+      return -1;
+    }
+
+    @Override
+    public int getLineNumber() {
+      return line;
+    }
+
+    @Override
+    public IMarker getMarker() {
+      return null;
+    }
+
+    @Override
+    public String getModelIdentifier() {
+      return "test";
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+
+    @Override
+    public boolean isPersisted() {
+      return false;
+    }
+
+    @Override
+    public boolean isRegistered() {
+      return true;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+
+    }
+
+    @Override
+    public void setMarker(IMarker marker) {
+
+    }
+
+    @Override
+    public void setPersisted(boolean persisted) {
+
+    }
+
+    @Override
+    public void setRegistered(boolean registered) {
+
+    }
+  }
+
+  private static final IBreakpointPathResolver PATH_RESOLVER = new IBreakpointPathResolver() {
+    @Override
+    public String getPath(IBreakpoint breakpoint) {
+      return ((TestBreakpoint) breakpoint).path;
+    }
+
+    @Override
+    public boolean isSupported(IBreakpoint breakpoint) {
+      return breakpoint instanceof TestBreakpoint;
+    }
+  };
+
+  private static final IResourceResolver RESOLVER = new IResourceResolver() {
+    @Override
+    public String getUrlForFile(File file) {
+      return null;
+    }
+
+    @Override
+    public String getUrlForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public String getUrlRegexForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public IResource resolveUrl(String url) {
+      return null;
+    }
+  };
+
+  private SourceMapManagerTest.Server server;
+
+  private WebkitDebugTarget target;
+
+  public void testSetMappedBreakpoint() throws Exception {
+    // The first generated line maps to the first line of a.dart, the second one to its second line.
+    server.put("a.js.map", "{\"version\":3,\"sources\":[\"a.dart\"],\"names\":[],"
+        + "\"mappings\":\"AAAA;AACA\"}");
+    server.open();
+
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, new JSONObject().put(
+        "method",
+        "Debugger.scriptParsed").put(
+        "params",
+        new JSONObject().put("scriptId", "1").put("url", server.getUrl("a.js")).put(
+            "sourceMapURL",
+            "a.js.map").put("hash", "1234")).toString()));
+    // The response to setBreakpointByUrl; it is replayed once the map is loaded and the request is
+    // sent.
+    frames.add(new WebkitReplay.Frame(true, 0, new JSONObject().put("id", 1).put(
+        "result",
+        new JSONObject().put("breakpointId", "1:1:0:/a.js").put(
+            "locations",
+            new JSONArray().put(new JSONObject().put("scriptId", "1").put("lineNumber", 1).put(
+                "columnNumber",
+                0)))).toString()));
+
+    connect(frames);
+
+    // The breakpoint is known before the script is; nothing can be set yet.
+    TestBreakpoint breakpoint = new TestBreakpoint("a.dart", 2);
+    BreakpointManager breakpointManager = (BreakpointManager) target.getBreakpointManager();
+    breakpointManager.breakpointAdded(breakpoint);
+
+    assertTrue(replay.getSentRequests().isEmpty());
+
+    replay.run(false);
+    assertTrue(connection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS));
+
+    SourceMapManager sourceMapManager = target.getSourceMapManager();
+    assertTrue(sourceMapManager.isMapTarget("a.dart"));
+
+    // The breakpoint is set on the generated line of the script.
+    JSONObject request = getSentRequests(1).get(0);
+    assertEquals("Debugger.setBreakpointByUrl", request.getString("method"));
+    assertEquals("/a.js", request.getJSONObject("params").getString("urlRegex"));
+    assertEquals(1, request.getJSONObject("params").getInt("lineNumber"));
+    assertEquals(0, request.getJSONObject("params").getInt("columnNumber"));
+
+    // The id of the response is remembered, and the breakpoint is removed by it.
+    breakpointManager.breakpointRemoved(breakpoint, null);
+
+    request = getSentRequests(2).get(1);
+    assertEquals("Debugger.removeBreakpoint", request.getString("method"));
+    assertEquals("1:1:0:/a.js", request.getJSONObject("params").getString("breakpointId"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    BreakpointManager.setBreakpointPathResolvers(Collections.singletonList(PATH_RESOLVER));
+
+    server = new SourceMapManagerTest.Server();
+    target = new WebkitDebugTarget(connection, RESOLVER);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    target.getSourceMapManager().dispose();
+
+    server.open();
+    server.close();
+
+    BreakpointManager.setBreakpointPathResolvers(null);
+
+    super.tearDown();
+  }
+
+}
@@ -14,9 +14,202 @@
 
 package com.github.sdbg.debug.core.internal.webkit.model;
 
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScript;
+import com.github.sdbg.debug.core.model.IResourceResolver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IStorage;
+import org.json.JSONObject;
+
 public class SourceMapManagerTest extends TestCase {
+  /**
+   * A minimal HTTP server, which holds back its responses until it is opened.
+   */
+  static class Server implements Runnable {
+    private ServerSocket serverSocket;
+
+    private Map<String, String> contents = new ConcurrentHashMap<String, String>();
+
+    private CountDownLatch gate = new CountDownLatch(1);
+
+    Server() throws IOException {
+      serverSocket = new ServerSocket(0);
+
+      Thread thread = new Thread(this, "Test HTTP server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+
+          try {
+            handle(socket);
+          } finally {
+            socket.close();
+          }
+        }
+      } catch (IOException e) {
+        // The server was closed.
+      } catch (InterruptedException e) {
+        // The test is over.
+      }
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    String getUrl(String path) {
+      return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + path;
+    }
+
+    void open() {
+      gate.countDown();
+    }
+
+    void put(String path, String contents) {
+      this.contents.put("/" + path, contents);
+    }
+
+    private void handle(Socket socket) throws IOException, InterruptedException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(),
+          "US-ASCII"));
+
+      String path = reader.readLine().split(" ")[1];
+
+      // Skip the headers.
+      String line = reader.readLine();
+      while (line != null && line.length() > 0) {
+        line = reader.readLine();
+      }
+
+      gate.await();
+
+      OutputStream out = socket.getOutputStream();
+      String body = contents.get(path);
+
+      if (body == null) {
+        out.write("HTTP/1.1 404 Not Found\r\nConnection: close\r\n\r\n".getBytes("US-ASCII"));
+      } else {
+        byte[] bytes = body.getBytes("UTF-8");
+        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + bytes.length
+            + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+        out.write(bytes);
+      }
+
+      out.flush();
+    }
+  }
+
+  private static final IResourceResolver RESOLVER = new IResourceResolver() {
+    @Override
+    public String getUrlForFile(File file) {
+      return null;
+    }
+
+    @Override
+    public String getUrlForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public String getUrlRegexForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public IResource resolveUrl(String url) {
+      return null;
+    }
+  };
+
+  private static String createMap(String source) {
+    return "{\"version\":3,\"sources\":[\"" + source + "\"],\"names\":[],\"mappings\":\"AAAA\"}";
+  }
+
+  private Server server;
+
+  private SourceMapManager manager;
+
+  public void testAdopt() throws Exception {
+    IStorage script = createScript("1", "a.js");
+    server.put("a.js.map", createMap("a.dart"));
+    server.open();
+
+    String url = server.getUrl("a.js");
+    String mapUrl = server.getUrl("a.js.map");
+    final CountDownLatch loaded = new CountDownLatch(1);
+
+    manager.handleScriptParsed(script, url, mapUrl, "1", new Runnable() {
+      @Override
+      public void run() {
+        loaded.countDown();
+      }
+    });
+
+    assertTrue(loaded.await(10, TimeUnit.SECONDS));
+    disposeAndWait();
+
+    SourceMapManager newManager = new SourceMapManager(RESOLVER);
+
+    try {
+      // The maps of the previous connection are used right away.
+      newManager.adopt(manager);
+
+      assertTrue(newManager.isMapSource(script));
+      assertEquals("a.dart", newManager.getMappingFor(script, 0, 0).getPath());
+      assertTrue(newManager.isLoaded(script, url, mapUrl, "1"));
+
+      // A script which changed is loaded again.
+      assertFalse(newManager.isLoaded(script, url, mapUrl, "2"));
+      assertFalse(newManager.isLoaded(script, url, server.getUrl("b.js.map"), "1"));
+
+      // The adopted maps are forgotten with the global object.
+      newManager.handleGlobalObjectCleared();
+
+      assertFalse(newManager.isMapSource(script));
+      assertFalse(newManager.isLoaded(script, url, mapUrl, "1"));
+
+      // The previous manager is left alone.
+      assertTrue(manager.isMapSource(script));
+    } finally {
+      newManager.dispose();
+    }
+  }
+
+  public void testGlobalObjectClearedDiscardsLoad() throws Exception {
+    IStorage script = createScript("1", "a.js");
+    server.put("a.js.map", createMap("a.dart"));
+
+    manager.handleScriptParsed(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1", null);
+    manager.handleGlobalObjectCleared();
+
+    server.open();
+    disposeAndWait();
+
+    assertFalse(manager.isMapSource(script));
+    assertFalse(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1"));
+  }
 
   public void testGetMappingFor() {
     // TODO(devoncarew):
@@ -36,4 +229,111 @@ public class SourceMapManagerTest extends TestCase {
     //fail("Not yet implemented");
   }
 
+  public void testLoadInBackground() throws Exception {
+    IStorage script = createScript("1", "a.js");
+    server.put("a.js.map", createMap("a.dart"));
+
+    final CountDownLatch loaded = new CountDownLatch(1);
+    final CountDownLatch refreshed = new CountDownLatch(1);
+
+    manager.handleScriptParsed(
+        script,
+        server.getUrl("a.js"),
+        server.getUrl("a.js.map"),
+        "1",
+        new Runnable() {
+          @Override
+          public void run() {
+            loaded.countDown();
+          }
+        });
+
+    // Lookups don't wait for the map.
+    assertFalse(manager.isMapSource(script));
+    assertFalse(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1"));
+    assertNull(manager.getMappingFor(script, 0, 0));
+
+    assertTrue(manager.runWhenSourceMapsLoaded(Collections.singletonList(script), new Runnable() {
+      @Override
+      public void run() {
+        refreshed.countDown();
+      }
+    }));
+
+    server.open();
+
+    assertTrue(loaded.await(10, TimeUnit.SECONDS));
+    assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+
+    assertTrue(manager.isMapSource(script));
+    assertTrue(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1"));
+    assertFalse(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "2"));
+    assertEquals("a.dart", manager.getMappingFor(script, 0, 0).getPath());
+
+    // Nothing is pending anymore.
+    assertFalse(manager.runWhenSourceMapsLoaded(Collections.singletonList(script), new Runnable() {
+      @Override
+      public void run() {
+        fail();
+      }
+    }));
+  }
+
+  public void testSupersededLoad() throws Exception {
+    IStorage script = createScript("1", "a.js");
+    server.put("a.js.map", createMap("a.dart"));
+    server.put("b.js.map", createMap("b.dart"));
+
+    final CountDownLatch loaded = new CountDownLatch(1);
+
+    manager.handleScriptParsed(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1", null);
+    manager.handleScriptParsed(
+        script,
+        server.getUrl("a.js"),
+        server.getUrl("b.js.map"),
+        "2",
+        new Runnable() {
+          @Override
+          public void run() {
+            loaded.countDown();
+          }
+        });
+
+    server.open();
+
+    assertTrue(loaded.await(10, TimeUnit.SECONDS));
+    disposeAndWait();
+
+    assertEquals("b.dart", manager.getMappingFor(script, 0, 0).getPath());
+    assertFalse(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("a.js.map"), "1"));
+    assertTrue(manager.isLoaded(script, server.getUrl("a.js"), server.getUrl("b.js.map"), "2"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new Server();
+    manager = new SourceMapManager(RESOLVER);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.open();
+    manager.dispose();
+    server.close();
+  }
+
+  private IStorage createScript(String scriptId, String path) throws Exception {
+    return new WebkitScriptStorage(WebkitScript.createFrom(new JSONObject().put(
+        "scriptId",
+        scriptId).put("url", server.getUrl(path))), null);
+  }
+
+  /**
+   * Dispose the manager, and wait for the loads which are still running to finish.
+   */
+  private void disposeAndWait() throws InterruptedException {
+    manager.dispose();
+    assertTrue(manager.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
 }
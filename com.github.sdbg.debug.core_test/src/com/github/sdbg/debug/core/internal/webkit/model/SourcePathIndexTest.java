@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.sourcemaps.SourceMap;
+import com.github.sdbg.debug.core.internal.util.URLStorage;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.Path;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class SourcePathIndexTest extends TestCase {
+  private IStorage script1;
+  private IStorage script2;
+
+  private SourcePathIndex index;
+
+  public void testCopy() throws Exception {
+    SourcePathIndex copy = new SourcePathIndex(index);
+
+    copy.remove(script1);
+    copy.add(script2, script2, createMap("", "src/com/foo/Bar.java"));
+
+    assertFind("src/com/foo/Bar.java", script1, "Bar.java");
+    assertNull(index.find(script2, "Bar.java"));
+    assertNull(copy.find(script1, "Bar.java"));
+    assertFind(copy, "src/com/foo/Bar.java", script2, "Bar.java");
+  }
+
+  public void testFindFileName() throws Exception {
+    assertFind("src/com/foo/Bar.java", null, "Bar.java");
+    assertFind("src/com/foo/FooBar.java", null, "FooBar.java");
+    assertFind("src/com/foo/Bar.java", null, "ar.java");
+    assertNull(index.find(null, "Baz.java"));
+  }
+
+  public void testFindPath() throws Exception {
+    assertFind("src/com/foo/Bar.java", null, "com/foo/Bar.java");
+    assertFind("src/com/foo/Bar.java", null, "/foo/Bar.java");
+    assertFind("http://host/root/com/foo/Other.java", null, "com/foo/Other.java");
+    assertNull(index.find(null, "com/bar/Bar.java"));
+    assertNull(index.find(null, "foo/ar.java"));
+  }
+
+  public void testFindShortest() throws Exception {
+    index.add(script2, script2, createMap("", "lib/src/com/foo/Bar.java"));
+
+    assertFind("src/com/foo/Bar.java", null, "com/foo/Bar.java");
+    assertFind("lib/src/com/foo/Bar.java", script2, "com/foo/Bar.java");
+  }
+
+  public void testFindSourceRoot() throws Exception {
+    // The source root is not part of the matched path.
+    assertNull(index.find(null, "root/com/foo/Other.java"));
+  }
+
+  public void testRemove() throws Exception {
+    assertNotNull(index.find(script1, "Bar.java"));
+
+    index.remove(script1);
+
+    assertNull(index.find(null, "Bar.java"));
+    assertNotNull(index.find(null, "Other.java"));
+
+    index.clear();
+
+    assertNull(index.find(null, "Other.java"));
+  }
+
+  public void testReplace() throws Exception {
+    index.add(script1, script1, createMap("", "src/com/foo/Baz.java"));
+
+    assertNull(index.find(null, "Bar.java"));
+    assertFind("src/com/foo/Baz.java", script1, "Baz.java");
+  }
+
+  public void testScriptFilter() throws Exception {
+    assertNotNull(index.find(script1, "FooBar.java"));
+    assertNull(index.find(script2, "FooBar.java"));
+    assertNotNull(index.find(script2, "Other.java"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    script1 = new URLStorage(new URL("http://host/script1.js"));
+    script2 = new URLStorage(new URL("http://host/script2.js"));
+
+    index = new SourcePathIndex();
+    index.add(
+        script1,
+        new URLStorage(new URL("http://host/script1.js.map")),
+        createMap("", "src/com/foo/Bar.java", "src/com/foo/FooBar.java"));
+    index.add(
+        script2,
+        new URLStorage(new URL("http://host/script2.js.map")),
+        createMap("http://host/root/", "com/foo/Other.java"));
+  }
+
+  private void assertFind(String expectedPath, IStorage scriptStorage, String targetPath) {
+    assertFind(index, expectedPath, scriptStorage, targetPath);
+  }
+
+  private void assertFind(SourcePathIndex index, String expectedPath, IStorage scriptStorage,
+      String targetPath) {
+    SourcePathIndex.Source source = index.find(scriptStorage, targetPath);
+
+    assertNotNull(source);
+    assertEquals(expectedPath, source.path);
+  }
+
+  private SourceMap createMap(String sourceRoot, String... sources) throws Exception {
+    JSONObject json = new JSONObject();
+    json.put("version", 3);
+    json.put("sourceRoot", sourceRoot);
+    json.put("sources", new JSONArray(Arrays.asList(sources)));
+    json.put("names", new JSONArray());
+    json.put("mappings", "AAAA");
+
+    return new SourceMap(new Path("test.js.map"), json);
+  }
+
+}
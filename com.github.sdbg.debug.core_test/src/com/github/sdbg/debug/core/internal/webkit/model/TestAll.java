@@ -21,7 +21,12 @@ public class TestAll {
   public static Test suite() {
     TestSuite suite = new TestSuite("Tests in " + TestAll.class.getPackage().getName());
     suite.addTestSuite(SourceMapManagerTest.class);
+    suite.addTestSuite(SourceMapBreakpointReplayTest.class);
     suite.addTestSuite(BreakpointManagerTest.class);
+    suite.addTestSuite(SourcePathIndexTest.class);
+    suite.addTestSuite(RemoteObjectCacheTest.class);
+    suite.addTestSuite(WebkitDebugIndexedValueTest.class);
+    suite.addTestSuite(WebkitDebugValueTest.class);
     return suite;
   }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplay;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitReplayTestCase;
+import com.github.sdbg.debug.core.model.ISDBGIndexedValue.ISizeCallback;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.debug.core.model.IVariable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class WebkitDebugIndexedValueTest extends WebkitReplayTestCase {
+  private static WebkitReplay.Frame createResponse(int id, Object result) throws Exception {
+    return new WebkitReplay.Frame(true, 0, new JSONObject().put("id", id).put(
+        "result",
+        new JSONObject().put("result", result)).toString());
+  }
+
+  private Thread replayThread;
+
+  private WebkitDebugTarget target;
+
+  public void testComputeSize() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":1,\"error\":{\"message\":\"gone\"}}"));
+    frames.add(createResponse(2, new JSONObject().put("type", "number").put("value", 3)));
+
+    WebkitDebugIndexedValue value = createList(frames);
+
+    // A length which could not be fetched is not cached.
+    assertEquals(0, computeSize(value));
+    assertNull(target.getRemoteObjectCache().getListLength(value.value));
+
+    assertEquals(3, computeSize(value));
+    assertEquals(3, computeSize(value));
+    assertEquals(3, value.getSize());
+    assertEquals(2, replay.getSentRequests().size());
+  }
+
+  public void testComputeVariables() throws Exception {
+    JSONArray properties = new JSONArray();
+    properties.put(new JSONObject().put("name", "0").put(
+        "value",
+        new JSONObject().put("type", "number").put("value", 10)));
+    properties.put(new JSONObject().put("name", "length").put(
+        "value",
+        new JSONObject().put("type", "number").put("value", 2)));
+
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createResponse(1, new JSONObject().put("type", "object").put("subtype", "array").put(
+        "objectId",
+        "slice")));
+    frames.add(createResponse(2, properties));
+
+    WebkitDebugIndexedValue value = createList(frames);
+
+    // Only the range is fetched; the second element is a hole.
+    IVariable[] variables = computeVariables(value, 10, 2);
+
+    assertEquals(2, variables.length);
+    assertEquals("[10]", variables[0].getName());
+    assertEquals("10", variables[0].getValue().getValueString());
+    assertEquals("[11]", variables[1].getName());
+    assertEquals("undefined", variables[1].getValue().getReferenceTypeName());
+
+    JSONObject request = new JSONObject(replay.getSentRequests().get(0));
+    assertEquals("Runtime.callFunctionOn", request.getString("method"));
+
+    JSONArray arguments = request.getJSONObject("params").getJSONArray("arguments");
+    assertEquals(10, arguments.getJSONObject(0).getInt("value"));
+    assertEquals(2, arguments.getJSONObject(1).getInt("value"));
+
+    // An empty range is not asked for.
+    assertEquals(0, computeVariables(value, 12, 0).length);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    target = new WebkitDebugTarget(connection);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+
+    if (replayThread != null) {
+      replayThread.join();
+    }
+  }
+
+  private int computeSize(WebkitDebugIndexedValue value) throws Exception {
+    final int[] size = new int[1];
+    final CountDownLatch computed = new CountDownLatch(1);
+
+    value.computeSize(new ISizeCallback() {
+      @Override
+      public void sizeComputed(int result) {
+        size[0] = result;
+        computed.countDown();
+      }
+    });
+
+    assertTrue(computed.await(10, TimeUnit.SECONDS));
+
+    return size[0];
+  }
+
+  private IVariable[] computeVariables(WebkitDebugIndexedValue value, int offset, int length)
+      throws Exception {
+    final IVariable[][] variables = new IVariable[1][];
+    final CountDownLatch computed = new CountDownLatch(1);
+
+    value.computeVariables(offset, length, new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] result) {
+        variables[0] = result;
+        computed.countDown();
+      }
+    });
+
+    assertTrue(computed.await(10, TimeUnit.SECONDS));
+
+    return variables[0];
+  }
+
+  /**
+   * Create a list whose requests are answered with the given responses, replayed in the
+   * background as the list asks for them.
+   */
+  private WebkitDebugIndexedValue createList(List<WebkitReplay.Frame> frames) throws Exception {
+    connect(frames);
+
+    replayThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          replay.run(false);
+        } catch (InterruptedException e) {
+
+        }
+      }
+    };
+    replayThread.start();
+
+    JSONObject list = new JSONObject().put("type", "object").put("subtype", "array").put(
+        "objectId",
+        "list");
+
+    return new WebkitDebugIndexedValue(target, null, WebkitRemoteObject.createFrom(list));
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+public class WebkitDebugValueTest extends TestCase {
+  private static WebkitDebugValue createObject(String objectId) throws Exception {
+    return createValue(new JSONObject().put("type", "object").put("objectId", objectId));
+  }
+
+  private static WebkitDebugValue createValue(JSONObject object) throws Exception {
+    return WebkitDebugValue.create(null, null, WebkitRemoteObject.createFrom(object));
+  }
+
+  public void testObjectId() throws Exception {
+    String objectId1 = "{\"injectedScriptId\":1,\"id\":5}";
+    String objectId2 = "{\"injectedScriptId\":2,\"id\":5}";
+
+    // Objects of different frames or workers can share the short id.
+    assertEquals(createObject(objectId1).getId(), createObject(objectId2).getId());
+    assertEquals(objectId1, createObject(objectId1).getObjectId());
+    assertEquals(objectId2, createObject(objectId2).getObjectId());
+
+    // Not every object id is JSON.
+    assertNull(createObject("5.1").getId());
+    assertEquals("5.1", createObject("5.1").getObjectId());
+
+    assertNull(createValue(new JSONObject().put("type", "number").put("value", 1)).getObjectId());
+    assertNull(WebkitDebugValue.create(null, null, null).getObjectId());
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An in-process stand-in for the DevTools server of a browser, for load and latency tests. It
+ * serves the tab list at /json like Chromium does, and speaks the web socket protocol on
+ * /devtools/page/1.
+ * <p>
+ * Every request is answered with an empty result, unless a {@link Responder} is registered for its
+ * method. Notifications are sent to all the connected clients with {@link #sendEvent}, or in bulk
+ * with the helpers creating scriptParsed storms and deep paused stacks.
+ */
+public class MockDevToolsServer {
+  /**
+   * Computes the result of a request; a null result leaves the request unanswered.
+   */
+  public static interface Responder {
+    public JSONObject respond(JSONObject params) throws JSONException;
+  }
+
+  private class Client extends Thread {
+    private final Socket socket;
+    private OutputStream out;
+
+    Client(Socket socket) {
+      super("Mock DevTools client");
+
+      this.socket = socket;
+
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+
+        Map<String, String> headers = new HashMap<String, String>();
+        String path = readRequest(in, headers);
+
+        if ("/json".equals(path)) {
+          writeHttp("200 OK", getTabs().toString());
+        } else if (WEB_SOCKET_PATH.equals(path) && headers.containsKey("sec-websocket-key")) {
+          clients.add(this);
+          writeHttpUpgrade(headers.get("sec-websocket-key"));
+
+          for (String message = readFrame(in); message != null; message = readFrame(in)) {
+            handleRequest(new JSONObject(message));
+          }
+        } else {
+          writeHttp("404 Not Found", "");
+        }
+      } catch (IOException e) {
+        // The client went away.
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      } finally {
+        clients.remove(this);
+        close();
+      }
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+
+      }
+    }
+
+    synchronized void send(String message) throws IOException {
+      byte[] bytes = message.getBytes("UTF-8");
+
+      out.write(0x81);
+
+      if (bytes.length < 126) {
+        out.write(bytes.length);
+      } else if (bytes.length < 65536) {
+        out.write(126);
+        out.write(bytes.length >> 8);
+        out.write(bytes.length);
+      } else {
+        out.write(127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          out.write((int) ((long) bytes.length >> shift));
+        }
+      }
+
+      out.write(bytes);
+      out.flush();
+    }
+
+    private void handleRequest(JSONObject request) throws JSONException, IOException {
+      requestCount++;
+
+      String method = request.getString("method");
+      Responder responder = responders.get(method);
+
+      JSONObject result = responder != null ? responder.respond(request.optJSONObject("params"))
+          : new JSONObject();
+
+      if (result != null) {
+        send(new JSONObject().put("id", request.getInt("id")).put("result", result).toString());
+      }
+    }
+
+    private String readFrame(DataInputStream in) throws IOException {
+      int opcode = in.read();
+
+      if (opcode == -1 || (opcode & 0x0F) == 0x08) {
+        return null;
+      }
+
+      int lengthByte = in.readUnsignedByte();
+      long length = lengthByte & 0x7F;
+
+      if (length == 126) {
+        length = in.readUnsignedShort();
+      } else if (length == 127) {
+        length = in.readLong();
+      }
+
+      byte[] mask = new byte[4];
+      if ((lengthByte & 0x80) != 0) {
+        in.readFully(mask);
+      }
+
+      byte[] bytes = new byte[(int) length];
+      in.readFully(bytes);
+
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] ^= mask[i % 4];
+      }
+
+      return new String(bytes, "UTF-8");
+    }
+
+    private String readRequest(InputStream in, Map<String, String> headers) throws IOException {
+      String requestLine = readLine(in);
+      String[] parts = requestLine.split(" ");
+
+      for (String line = readLine(in); line.length() > 0; line = readLine(in)) {
+        int index = line.indexOf(':');
+
+        if (index != -1) {
+          String name = line.substring(0, index).trim().toLowerCase();
+          headers.put(name, line.substring(index + 1).trim());
+        }
+      }
+
+      return parts.length > 1 ? parts[1] : null;
+    }
+
+    private void writeHttp(String status, String body) throws IOException {
+      byte[] bytes = body.getBytes("UTF-8");
+
+      out.write(("HTTP/1.1 " + status + "\r\nContent-Type:application/json; charset=UTF-8\r\n"
+          + "Content-Length:" + bytes.length + "\r\n\r\n").getBytes("UTF-8"));
+      out.write(bytes);
+      out.flush();
+    }
+
+    private void writeHttpUpgrade(String key) throws IOException {
+      String accept;
+
+      try {
+        accept = toBase64(MessageDigest.getInstance("SHA-1").digest(
+            (key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes("UTF-8")));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+
+      out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+          + "Connection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(
+          "UTF-8"));
+      out.flush();
+    }
+  }
+
+  private static final String WEB_SOCKET_PATH = "/devtools/page/1";
+
+  private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+      + "abcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder builder = new StringBuilder();
+
+    for (int c = in.read(); c != '\n'; c = in.read()) {
+      if (c == -1) {
+        throw new IOException("unexpected end of request");
+      }
+
+      if (c != '\r') {
+        builder.append((char) c);
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private static String toBase64(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i < bytes.length; i += 3) {
+      int n = (bytes[i] & 0xFF) << 16;
+      n |= i + 1 < bytes.length ? (bytes[i + 1] & 0xFF) << 8 : 0;
+      n |= i + 2 < bytes.length ? bytes[i + 2] & 0xFF : 0;
+
+      builder.append(BASE64.charAt((n >> 18) & 0x3F));
+      builder.append(BASE64.charAt((n >> 12) & 0x3F));
+      builder.append(i + 1 < bytes.length ? BASE64.charAt((n >> 6) & 0x3F) : '=');
+      builder.append(i + 2 < bytes.length ? BASE64.charAt(n & 0x3F) : '=');
+    }
+
+    return builder.toString();
+  }
+
+  private final ServerSocket serverSocket;
+
+  private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+
+  private final Map<String, Responder> responders = new ConcurrentHashMap<String, Responder>();
+
+  private volatile int requestCount;
+
+  public MockDevToolsServer() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+
+    Thread acceptor = new Thread("Mock DevTools server") {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            new Client(serverSocket.accept()).start();
+          }
+        } catch (SocketException e) {
+          // Stopped.
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * @return the number of clients connected over a web socket
+   */
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * @return the number of requests answered so far
+   */
+  public int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Answer the requests for the given method with the given responder.
+   */
+  public void respond(String method, Responder responder) {
+    responders.put(method, responder);
+  }
+
+  /**
+   * Answer Runtime.getProperties with the given number of properties.
+   */
+  public void respondWithProperties(final int count) {
+    respond("Runtime.getProperties", new Responder() {
+      @Override
+      public JSONObject respond(JSONObject params) throws JSONException {
+        JSONArray properties = new JSONArray();
+
+        for (int i = 0; i < count; i++) {
+          properties.put(new JSONObject().put("name", "property" + i).put("configurable", true).put(
+              "enumerable",
+              true).put("writable", true).put(
+              "value",
+              new JSONObject().put("type", "number").put("value", i).put("description", "" + i)));
+        }
+
+        return new JSONObject().put("result", properties);
+      }
+    });
+  }
+
+  /**
+   * Send Debugger.paused with a stack of the given depth.
+   */
+  public void sendPaused(int depth) throws IOException, JSONException {
+    JSONArray callFrames = new JSONArray();
+
+    for (int i = 0; i < depth; i++) {
+      callFrames.put(new JSONObject().put("callFrameId", "{\"ordinal\":" + i + "}").put(
+          "functionName",
+          "function" + i).put(
+          "location",
+          new JSONObject().put("scriptId", "0").put("lineNumber", i).put("columnNumber", 0)).put(
+          "scopeChain",
+          new JSONArray().put(new JSONObject().put("type", "local").put(
+              "object",
+              new JSONObject().put("type", "object").put("objectId", "scope" + i)))).put(
+          "this",
+          new JSONObject().put("type", "object").put("objectId", "this" + i)));
+    }
+
+    sendEvent("Debugger.paused", new JSONObject().put("callFrames", callFrames).put(
+        "reason",
+        "other"));
+  }
+
+  /**
+   * Send the given notification to all the clients.
+   */
+  public void sendEvent(String method, JSONObject params) throws IOException, JSONException {
+    String message = new JSONObject().put("method", method).put("params", params).toString();
+
+    for (Client client : clients) {
+      client.send(message);
+    }
+  }
+
+  /**
+   * Send Debugger.scriptParsed for the given number of scripts.
+   */
+  public void sendScriptsParsed(int count) throws IOException, JSONException {
+    for (int i = 0; i < count; i++) {
+      sendEvent("Debugger.scriptParsed", new JSONObject().put("scriptId", Integer.toString(i)).put(
+          "url",
+          "http://localhost/script" + i + ".js").put("startLine", 0).put("startColumn", 0).put(
+          "endLine",
+          100).put("endColumn", 0));
+    }
+  }
+
+  public void stop() {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+
+    }
+
+    for (Client client : new ArrayList<Client>(clients)) {
+      client.close();
+    }
+  }
+
+  private JSONArray getTabs() throws JSONException {
+    String webSocketUrl = "ws://127.0.0.1:" + getPort() + WEB_SOCKET_PATH;
+
+    return new JSONArray().put(new JSONObject().put("id", "1").put("title", "Mock").put(
+        "type",
+        "page").put("url", "http://localhost/index.html").put(
+        "devtoolsFrontendUrl",
+        "/devtools/devtools.html?ws=127.0.0.1:" + getPort() + WEB_SOCKET_PATH).put(
+        "webSocketDebuggerUrl",
+        webSocketUrl));
+  }
+
+}
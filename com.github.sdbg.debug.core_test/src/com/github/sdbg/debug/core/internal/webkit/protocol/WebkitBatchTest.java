@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class WebkitBatchTest extends WebkitReplayTestCase {
+  private static final int REQUEST_COUNT = 100;
+
+  public void testBatchHoldsRequests() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    WebkitBatch batch = connection.beginBatch();
+
+    try {
+      connection.getDebugger().getScriptSource("1", new WebkitFuture<String>());
+      connection.getDebugger().getScriptSource("2", new WebkitFuture<String>());
+
+      // The writer sends in order, so the batched requests would be written before the probe.
+      sendProbe();
+      assertEquals(1, replay.getSentRequests().size());
+    } finally {
+      batch.end();
+    }
+
+    getSentRequests(3);
+    assertEquals(Arrays.asList(3, 1, 2), getSentIds());
+  }
+
+  public void testEndAfterClose() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    WebkitFuture<String> source = new WebkitFuture<String>();
+
+    WebkitBatch batch = connection.beginBatch();
+
+    try {
+      connection.getDebugger().getScriptSource("1", source);
+
+      replay.close();
+    } finally {
+      batch.end();
+    }
+
+    assertTrue(batch.waitForResults(5, TimeUnit.SECONDS));
+    assertTrue(source.get().isError());
+    assertTrue(replay.getSentRequests().isEmpty());
+  }
+
+  public void testNestedBatch() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    WebkitBatch batch = connection.beginBatch();
+
+    try {
+      connection.getDebugger().getScriptSource("1", new WebkitFuture<String>());
+
+      WebkitBatch inner = connection.beginBatch();
+      assertSame(batch, inner);
+
+      try {
+        connection.getDebugger().getScriptSource("2", new WebkitFuture<String>());
+      } finally {
+        inner.end();
+      }
+
+      // Only the outermost batch sends the requests.
+      sendProbe();
+      assertEquals(1, replay.getSentRequests().size());
+    } finally {
+      batch.end();
+    }
+
+    getSentRequests(3);
+    assertEquals(Arrays.asList(3, 1, 2), getSentIds());
+
+    // A new batch is begun once the outermost one has ended.
+    WebkitBatch next = connection.beginBatch();
+    assertNotSame(batch, next);
+    next.end();
+  }
+
+  public void testRequestOrder() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      connection.getDebugger().getScriptSource(Integer.toString(i), new WebkitFuture<String>());
+    }
+
+    getSentRequests(REQUEST_COUNT);
+
+    List<Integer> ids = getSentIds();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      assertEquals(i + 1, ids.get(i).intValue());
+      assertTrue(replay.getSentRequests().get(i).contains("\"scriptId\":\"" + i + "\""));
+    }
+  }
+
+  public void testWaitForResults() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":1,\"result\":{\"scriptSource\":\"a\"}}"));
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":2,\"result\":{\"scriptSource\":\"b\"}}"));
+
+    connect(frames);
+
+    WebkitFuture<String> source1 = new WebkitFuture<String>();
+    WebkitFuture<String> source2 = new WebkitFuture<String>();
+    WebkitFuture<String> source3 = new WebkitFuture<String>();
+
+    WebkitBatch batch = connection.beginBatch();
+
+    try {
+      connection.getDebugger().getScriptSource("1", source1);
+      connection.getDebugger().getScriptSource("2", source2);
+      connection.getDebugger().getScriptSource("3", source3);
+    } finally {
+      batch.end();
+    }
+
+    replay.run(false);
+
+    // The third request is never answered.
+    assertFalse(batch.waitForResults(50, TimeUnit.MILLISECONDS));
+    assertTrue(source1.isDone());
+    assertTrue(source2.isDone());
+    assertEquals("a", source1.getResult());
+    assertEquals("b", source2.getResult());
+
+    replay.close();
+
+    assertTrue(batch.waitForResults(5, TimeUnit.SECONDS));
+    assertTrue(source3.get().isError());
+  }
+
+  private List<Integer> getSentIds() throws Exception {
+    List<Integer> ids = new ArrayList<Integer>();
+
+    for (String request : replay.getSentRequests()) {
+      ids.add(WebkitMessage.parse(request).getId());
+    }
+
+    return ids;
+  }
+
+  /**
+   * Send a request from another thread, outside the batch of the test thread, and wait until it
+   * is written.
+   */
+  private void sendProbe() throws Exception {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          connection.getDebugger().resume();
+        } catch (Exception e) {
+
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+
+    getSentRequests(1);
+  }
+
+}
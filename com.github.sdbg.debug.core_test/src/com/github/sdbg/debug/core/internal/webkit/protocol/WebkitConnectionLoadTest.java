@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.DebuggerListenerAdapter;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.PausedReasonType;
+import com.github.sdbg.utilities.instrumentation.Instrumentation;
+import com.github.sdbg.utilities.instrumentation.InstrumentationBuilder;
+import com.github.sdbg.utilities.instrumentation.LatencyHistogram;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Drives a {@link WebkitConnection} against a {@link MockDevToolsServer} under a synthetic load,
+ * and logs the connect time, the pause-to-frames latency and the throughput to the current
+ * instrumentation logger. The scenarios take a while, so they are not part of {@link TestAll};
+ * run this class on its own.
+ */
+public class WebkitConnectionLoadTest extends TestCase {
+  private static final int SCRIPT_COUNT = 2000;
+  private static final int STACK_DEPTH = 100;
+  private static final int PROPERTY_COUNT = 500;
+  private static final int REQUEST_COUNT = 1000;
+
+  private static InstrumentationBuilder createBuilder(String scenario) {
+    return Instrumentation.builder(WebkitConnectionLoadTest.class.getSimpleName() + "." + scenario);
+  }
+
+  private MockDevToolsServer server;
+
+  private WebkitConnection connection;
+
+  public void testConnect() throws Exception {
+    long start = System.nanoTime();
+
+    List<ChromiumTabInfo> tabs = ChromiumConnector.getAvailableTabs(server.getPort());
+    assertEquals(1, tabs.size());
+
+    connection = new WebkitConnection(new URI(tabs.get(0).getWebSocketDebuggerUrl()));
+    connection.connect();
+
+    long elapsed = System.nanoTime() - start;
+
+    assertTrue(connection.isConnected());
+    assertEquals(1, server.getClientCount());
+
+    createBuilder("connect").metric("ms", TimeUnit.NANOSECONDS.toMillis(elapsed)).log();
+  }
+
+  public void testPauseToFrames() throws Exception {
+    connect();
+    server.respondWithProperties(PROPERTY_COUNT);
+
+    final List<WebkitCallFrame> pausedFrames = new ArrayList<WebkitCallFrame>();
+    final CountDownLatch paused = new CountDownLatch(1);
+
+    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
+      @Override
+      public void debuggerPaused(PausedReasonType reason, List<WebkitCallFrame> frames,
+          WebkitRemoteObject exception) {
+        pausedFrames.addAll(frames);
+        paused.countDown();
+      }
+    });
+
+    long start = System.nanoTime();
+    server.sendPaused(STACK_DEPTH);
+
+    assertTrue(paused.await(30, TimeUnit.SECONDS));
+    long pausedTime = System.nanoTime() - start;
+
+    WebkitFuture<WebkitPropertyDescriptor[]> properties;
+    properties = new WebkitFuture<WebkitPropertyDescriptor[]>();
+    connection.getRuntime().getProperties(
+        pausedFrames.get(0).getScopeChain()[0].getObject(),
+        true,
+        false,
+        properties);
+
+    assertEquals(PROPERTY_COUNT, properties.getResult(30, TimeUnit.SECONDS).length);
+    long framesTime = System.nanoTime() - start;
+
+    assertEquals(STACK_DEPTH, pausedFrames.size());
+
+    InstrumentationBuilder instrumentation = createBuilder("pause");
+    instrumentation.metric("frames", STACK_DEPTH);
+    instrumentation.metric("framesMs", TimeUnit.NANOSECONDS.toMillis(pausedTime));
+    instrumentation.metric("variables", PROPERTY_COUNT);
+    instrumentation.metric("variablesMs", TimeUnit.NANOSECONDS.toMillis(framesTime));
+    instrumentation.log();
+  }
+
+  public void testRequestThroughput() throws Exception {
+    connect();
+    server.respond("Debugger.getScriptSource", new MockDevToolsServer.Responder() {
+      @Override
+      public JSONObject respond(JSONObject params) throws JSONException {
+        return new JSONObject().put("scriptSource", "// " + params.getString("scriptId"));
+      }
+    });
+
+    List<WebkitFuture<String>> sources = new ArrayList<WebkitFuture<String>>();
+
+    LatencyHistogram latencies = WebkitConnection.getLatencyHistogram("Debugger.getScriptSource");
+    latencies.reset();
+
+    long start = System.nanoTime();
+
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      WebkitFuture<String> source = new WebkitFuture<String>();
+      connection.getDebugger().getScriptSource(Integer.toString(i), source);
+      sources.add(source);
+    }
+
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      assertEquals("// " + i, sources.get(i).getResult(30, TimeUnit.SECONDS));
+    }
+
+    long elapsed = System.nanoTime() - start;
+
+    assertEquals(REQUEST_COUNT, server.getRequestCount());
+    assertEquals(REQUEST_COUNT, latencies.getCount());
+
+    InstrumentationBuilder instrumentation = createBuilder("requests");
+    instrumentation.metric("count", REQUEST_COUNT);
+    instrumentation.metric("ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+    instrumentation.log();
+
+    latencies.log();
+  }
+
+  public void testScriptParsedThroughput() throws Exception {
+    connect();
+
+    final CountDownLatch parsed = new CountDownLatch(SCRIPT_COUNT);
+
+    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
+      @Override
+      public void debuggerScriptParsed(WebkitScript script) {
+        parsed.countDown();
+      }
+    });
+
+    long start = System.nanoTime();
+    server.sendScriptsParsed(SCRIPT_COUNT);
+
+    assertTrue(parsed.await(60, TimeUnit.SECONDS));
+    long elapsed = System.nanoTime() - start;
+
+    assertEquals(SCRIPT_COUNT, connection.getDebugger().getAllScripts().size());
+
+    InstrumentationBuilder instrumentation = createBuilder("scriptParsed");
+    instrumentation.metric("count", SCRIPT_COUNT);
+    instrumentation.metric("ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+    instrumentation.log();
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new MockDevToolsServer();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (connection != null) {
+      connection.close();
+    }
+
+    server.stop();
+  }
+
+  private void connect() throws Exception {
+    connection = new WebkitConnection(new URI("ws://127.0.0.1:" + server.getPort()
+        + "/devtools/page/1"));
+    connection.connect();
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+public class WebkitConnectionTest extends WebkitReplayTestCase {
+  public void testRequestTimeout() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":2,\"result\":{\"result\":[]}}"));
+
+    connect(frames);
+
+    connection.setRequestTimeout("Debugger.getScriptSource", 500);
+
+    // The first request is never answered.
+    WebkitFuture<String> source = new WebkitFuture<String>();
+    connection.getDebugger().getScriptSource("1", source);
+
+    WebkitResult<String> result = source.get(10, TimeUnit.SECONDS);
+    assertNotNull(result);
+    assertTrue(result.isError());
+
+    // Other methods keep their default timeout.
+    assertEquals(
+        WebkitConnection.METADATA_REQUEST_TIMEOUT,
+        connection.getRequestTimeout("Runtime.getProperties"));
+
+    WebkitFuture<WebkitPropertyDescriptor[]> properties;
+    properties = new WebkitFuture<WebkitPropertyDescriptor[]>();
+    connection.getRuntime().getProperties(
+        WebkitRemoteObject.createFrom(new JSONObject().put("type", "object").put("objectId", "1")),
+        true,
+        false,
+        properties);
+
+    replay.run(false);
+
+    assertFalse(properties.get(10, TimeUnit.SECONDS).isError());
+  }
+
+  public void testNoDefaultTimeout() throws Exception {
+    assertEquals(0, WebkitConnection.DEFAULT_REQUEST_TIMEOUT);
+    assertEquals(0, connection.getRequestTimeout("Runtime.evaluate"));
+    assertEquals(0, connection.getRequestTimeout("Debugger.evaluateOnCallFrame"));
+    assertEquals(0, connection.getRequestTimeout("Runtime.callFunctionOn"));
+    assertEquals(0, connection.getRequestTimeout("Debugger.getScriptSource"));
+    assertEquals(0, connection.getRequestTimeout("Debugger.setScriptSource"));
+
+    connection.setRequestTimeout(1000);
+
+    assertEquals(1000, connection.getRequestTimeout("Runtime.evaluate"));
+    assertEquals(
+        WebkitConnection.METADATA_REQUEST_TIMEOUT,
+        connection.getRequestTimeout("Runtime.releaseObjectGroup"));
+  }
+
+  public void testValueCallTimeout() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    WebkitRemoteObject list = WebkitRemoteObject.createFrom(new JSONObject().put(
+        "type",
+        "object").put("subtype", "array").put("objectId", "1"));
+
+    // Fails before the 3 seconds the variables view waits for it.
+    long start = System.nanoTime();
+    assertEquals(0, list.getListLength(connection));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(elapsed >= WebkitRuntime.VALUE_CALL_TIMEOUT);
+    assertTrue(elapsed < 3000);
+    assertFalse(list.hasListLength());
+
+    WebkitFuture<String> detail = new WebkitFuture<String>();
+    connection.getRuntime().callToString("1", detail);
+
+    WebkitResult<String> result = detail.get(3, TimeUnit.SECONDS);
+    assertNotNull(result);
+    assertTrue(result.isError());
+  }
+
+}
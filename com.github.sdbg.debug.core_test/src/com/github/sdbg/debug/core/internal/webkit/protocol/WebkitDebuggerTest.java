@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.DebuggerListenerAdapter;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.PausedReasonType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class WebkitDebuggerTest extends WebkitReplayTestCase {
+
+  private static WebkitReplay.Frame createEvent(String method, JSONObject params) throws Exception {
+    return new WebkitReplay.Frame(true, 0, new JSONObject().put("method", method).put(
+        "params",
+        params).toString());
+  }
+
+  private static WebkitReplay.Frame createPaused() throws Exception {
+    JSONObject callFrame = new JSONObject().put("callFrameId", "{\"ordinal\":0}").put(
+        "functionName",
+        "main").put(
+        "location",
+        new JSONObject().put("scriptId", "0").put("lineNumber", 0).put("columnNumber", 0)).put(
+        "scopeChain",
+        new JSONArray()).put(
+        "this",
+        new JSONObject().put("type", "object").put("objectId", "this"));
+
+    return createEvent("Debugger.paused", new JSONObject().put(
+        "callFrames",
+        new JSONArray().put(callFrame)).put("reason", "other"));
+  }
+
+  private static WebkitReplay.Frame createResult(int id) throws Exception {
+    return new WebkitReplay.Frame(true, 0, new JSONObject().put("id", id).put(
+        "result",
+        new JSONObject().put(
+            "result",
+            new JSONObject().put("type", "object").put("objectId", "result"))).toString());
+  }
+
+  public void testObjectGroupPerSuspension() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createPaused());
+    frames.add(createResult(1));
+    frames.add(createEvent("Debugger.resumed", new JSONObject()));
+    frames.add(createPaused());
+    frames.add(createResult(3));
+    frames.add(createEvent("Debugger.resumed", new JSONObject()));
+
+    connect(frames);
+
+    final Semaphore paused = new Semaphore(0);
+
+    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
+      @Override
+      public void debuggerPaused(PausedReasonType reason, List<WebkitCallFrame> frames,
+          WebkitRemoteObject exception) {
+        paused.release();
+      }
+    });
+
+    // The responses are only fed once their requests have been sent.
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          replay.run(false);
+        } catch (InterruptedException e) {
+
+        }
+      }
+    };
+    thread.start();
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(paused.tryAcquire(10, TimeUnit.SECONDS));
+
+      WebkitFuture<WebkitRemoteObject> value = new WebkitFuture<WebkitRemoteObject>();
+      connection.getDebugger().evaluateOnCallFrame("{\"ordinal\":0}", "this", value);
+      assertNotNull(value.getResult(10, TimeUnit.SECONDS));
+    }
+
+    thread.join(10000);
+
+    // Each suspension has its own group, released when it ends.
+    List<JSONObject> requests = getSentRequests(4);
+    assertEquals("Debugger.evaluateOnCallFrame", requests.get(0).getString("method"));
+    assertEquals("Runtime.releaseObjectGroup", requests.get(1).getString("method"));
+    assertEquals("Debugger.evaluateOnCallFrame", requests.get(2).getString("method"));
+    assertEquals("Runtime.releaseObjectGroup", requests.get(3).getString("method"));
+
+    List<String> groups = new ArrayList<String>();
+
+    for (JSONObject request : requests) {
+      groups.add(request.getJSONObject("params").getString("objectGroup"));
+    }
+
+    assertEquals(groups.get(0), groups.get(1));
+    assertEquals(groups.get(2), groups.get(3));
+    assertFalse(groups.get(0).equals(groups.get(2)));
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WebkitDomainTest extends WebkitReplayTestCase {
+  public void testAcquireAndRelease() throws Exception {
+    WebkitConsole console = connection.getConsole();
+
+    console.acquire();
+    console.acquire();
+    assertTrue(console.isAcquired());
+
+    console.release();
+    assertTrue(console.isAcquired());
+
+    console.release();
+    assertFalse(console.isAcquired());
+
+    console.acquire();
+
+    List<String> requests = closeAndGetSentRequests();
+    assertEquals(3, requests.size());
+    assertTrue(requests.get(0).contains("\"Console.enable\""));
+    assertTrue(requests.get(1).contains("\"Console.disable\""));
+    assertTrue(requests.get(2).contains("\"Console.enable\""));
+  }
+
+  public void testReleaseAfterClose() throws Exception {
+    WebkitDebugger debugger = connection.getDebugger();
+
+    debugger.acquire();
+    replay.close();
+    debugger.release();
+
+    assertFalse(debugger.isAcquired());
+
+    for (String request : closeAndGetSentRequests()) {
+      assertFalse(request.contains("\"Debugger.disable\""));
+    }
+  }
+
+  public void testReleaseUnacquired() throws Exception {
+    try {
+      connection.getCSS().release();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertTrue(closeAndGetSentRequests().isEmpty());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    connect(new ArrayList<WebkitReplay.Frame>());
+  }
+
+  private List<String> closeAndGetSentRequests() throws Exception {
+    // Closing the connection lets the requests already queued reach the replay.
+    connection.close();
+
+    return replay.getSentRequests();
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.NotificationHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class WebkitEventDispatcherTest extends WebkitReplayTestCase {
+  private static final int EVENT_COUNT = 200;
+
+  private static final int FLOOD_COUNT = 1500;
+
+  public void testDomainOrder() throws Exception {
+    final List<Integer> debuggerEvents = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> consoleEvents = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch consoleDone = new CountDownLatch(1);
+    final boolean[] consoleFirst = new boolean[1];
+
+    connection.registerNotificationHandler("Debugger.", new NotificationHandler() {
+      @Override
+      public void handleNotification(String method, JSONObject params) throws JSONException {
+        if (debuggerEvents.isEmpty()) {
+          // Only returns if the Console notifications are not stuck behind this one.
+          try {
+            consoleFirst[0] = consoleDone.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+
+          }
+        }
+
+        debuggerEvents.add(params.getInt("n"));
+      }
+    });
+
+    connection.registerNotificationHandler("Console.", new NotificationHandler() {
+      @Override
+      public void handleNotification(String method, JSONObject params) throws JSONException {
+        consoleEvents.add(params.getInt("n"));
+
+        if (consoleEvents.size() == EVENT_COUNT) {
+          consoleDone.countDown();
+        }
+      }
+    });
+
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    for (int i = 0; i < EVENT_COUNT; i++) {
+      frames.add(createEvent("Debugger.event", i));
+      frames.add(createEvent("Console.event", i));
+    }
+
+    connect(frames);
+    replay.run(false);
+
+    assertTrue(connection.getEventDispatcher().waitUntilIdle(10, TimeUnit.SECONDS));
+    assertTrue(consoleFirst[0]);
+
+    assertEquals(EVENT_COUNT, debuggerEvents.size());
+    assertEquals(EVENT_COUNT, consoleEvents.size());
+
+    for (int i = 0; i < EVENT_COUNT; i++) {
+      assertEquals(i, debuggerEvents.get(i).intValue());
+      assertEquals(i, consoleEvents.get(i).intValue());
+    }
+
+    assertEquals(0, connection.getEventDispatcher().getDroppedCount("Debugger."));
+    assertEquals(0, connection.getEventDispatcher().getDroppedCount("Console."));
+  }
+
+  public void testDropOldest() throws Exception {
+    final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch release = new CountDownLatch(1);
+
+    connection.registerNotificationHandler("Console.", new NotificationHandler() {
+      @Override
+      public void handleNotification(String method, JSONObject params) throws JSONException {
+        events.add(params.getInt("n"));
+
+        if (events.size() == 1) {
+          try {
+            // Let the replay go on, and hold the queue until the test has looked at it.
+            connection.getDebugger().resume();
+
+            release.await(10, TimeUnit.SECONDS);
+          } catch (Exception e) {
+
+          }
+        }
+      }
+    });
+
+    // The flood is only fed once the response to the request sent by the first handler can be;
+    // by then the first notification is out of the queue.
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createEvent("Console.event", -1));
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":1,\"result\":{}}"));
+    for (int i = 0; i < FLOOD_COUNT; i++) {
+      frames.add(createEvent("Console.event", i));
+    }
+
+    connect(frames);
+
+    WebkitEventDispatcher dispatcher = connection.getEventDispatcher();
+    int maxSize = WebkitEventDispatcher.DEFAULT_MAX_QUEUE_SIZE;
+    dispatcher.setMaxQueueSize("Console.", maxSize);
+
+    try {
+      replay.run(false);
+
+      assertEquals(1, replay.getSentRequests().size());
+      assertFalse(dispatcher.waitUntilIdle(50, TimeUnit.MILLISECONDS));
+
+      assertEquals(maxSize, dispatcher.getMaxQueueSize("Console."));
+      assertEquals(maxSize, dispatcher.getQueueDepth("Console."));
+      assertEquals(maxSize, dispatcher.getMaxQueueDepth("Console."));
+      assertEquals(FLOOD_COUNT - maxSize, dispatcher.getDroppedCount("Console."));
+    } finally {
+      release.countDown();
+    }
+
+    assertTrue(dispatcher.waitUntilIdle(5, TimeUnit.SECONDS));
+    assertEquals(0, dispatcher.getQueueDepth("Console."));
+
+    // The oldest notifications were dropped; the ones kept are handled in order.
+    assertEquals(maxSize + 1, events.size());
+    assertEquals(-1, events.get(0).intValue());
+    for (int i = 1; i <= maxSize; i++) {
+      assertEquals(FLOOD_COUNT - maxSize + i - 1, events.get(i).intValue());
+    }
+  }
+
+  public void testUnboundedDomain() throws Exception {
+    WebkitEventDispatcher dispatcher = connection.getEventDispatcher();
+
+    assertEquals(Integer.MAX_VALUE, dispatcher.getMaxQueueSize("Debugger."));
+    assertEquals(Integer.MAX_VALUE, dispatcher.getMaxQueueSize("Console."));
+    assertEquals(
+        WebkitEventDispatcher.DEFAULT_MAX_QUEUE_SIZE,
+        dispatcher.getMaxQueueSize("Network."));
+    assertEquals(0, dispatcher.getDroppedCount("Debugger."));
+    assertEquals(0, dispatcher.getQueueDepth("Debugger."));
+
+    dispatcher.setMaxQueueSize("Debugger.", 10);
+    assertEquals(10, dispatcher.getMaxQueueSize("Debugger."));
+
+    assertTrue(dispatcher.waitUntilIdle(0, TimeUnit.SECONDS));
+  }
+
+  private WebkitReplay.Frame createEvent(String method, int n) {
+    return new WebkitReplay.Frame(true, 0, "{\"method\":\"" + method + "\",\"params\":{\"n\":" + n
+        + "}}");
+  }
+
+}
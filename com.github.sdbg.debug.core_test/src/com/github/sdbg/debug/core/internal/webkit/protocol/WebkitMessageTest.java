@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class WebkitMessageTest extends TestCase {
+
+  public void testEmpty() throws Exception {
+    WebkitMessage message = WebkitMessage.parse(" { } ");
+
+    assertFalse(message.isResponse());
+    assertNull(message.getMethod());
+    assertNull(message.getParams());
+  }
+
+  public void testEscapedStrings() throws Exception {
+    WebkitMessage message = WebkitMessage.parse("{\"params\":{\"text\":\"a \\\"}\\\\\"},"
+        + "\"method\":\"Console.message\\u0041dded\"}");
+
+    assertEquals("Console.messageAdded", message.getMethod());
+    assertEquals("a \"}\\", message.getParams().getString("text"));
+  }
+
+  public void testInvalid() throws Exception {
+    checkInvalid("");
+    checkInvalid("[]");
+    checkInvalid("{\"id\":1");
+    checkInvalid("{\"id\":\"1\"}");
+    checkInvalid("{\"method\":\"Debugger.paused\",\"params\":{\"a\":[1,2}");
+    checkInvalid("{\"method\":\"Debugger.paused\",\"params\":\"unterminated}");
+  }
+
+  public void testNotification() throws Exception {
+    WebkitMessage message = WebkitMessage.parse("{\"method\":\"Debugger.scriptParsed\","
+        + "\"params\":{\"scriptId\":\"32\",\"url\":\"http://a/b.js\",\"ranges\":[[1,2],{}]}}");
+
+    assertFalse(message.isResponse());
+    assertEquals("Debugger.scriptParsed", message.getMethod());
+
+    JSONObject params = message.getParams();
+    assertEquals("32", params.getString("scriptId"));
+    assertEquals("http://a/b.js", params.getString("url"));
+    assertEquals(2, params.getJSONArray("ranges").length());
+  }
+
+  public void testNullParams() throws Exception {
+    WebkitMessage message = WebkitMessage.parse("{\"method\":\"Debugger.resumed\","
+        + "\"params\":null}");
+
+    assertEquals("Debugger.resumed", message.getMethod());
+    assertNull(message.getParams());
+  }
+
+  public void testResponse() throws Exception {
+    WebkitMessage message = WebkitMessage.parse("{\"result\":{\"scriptSource\":\"var a = {};\"},"
+        + " \"id\" : 42 }");
+
+    assertTrue(message.isResponse());
+    assertEquals(42, message.getId());
+    assertFalse(message.hasError());
+    assertEquals("var a = {};", message.toJSONObject().getJSONObject("result").getString(
+        "scriptSource"));
+  }
+
+  public void testResponseError() throws Exception {
+    WebkitMessage message = WebkitMessage.parse("{\"id\":7,\"error\":{\"code\":-32601,"
+        + "\"message\":\"'Foo.bar' wasn't found\"}}");
+
+    assertEquals(7, message.getId());
+    assertTrue(message.hasError());
+  }
+
+  private void checkInvalid(String text) {
+    try {
+      WebkitMessage.parse(text);
+      fail("expected an exception for " + text);
+    } catch (JSONException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.DebuggerListenerAdapter;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitDebugger.PausedReasonType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class WebkitReplayTest extends WebkitReplayTestCase {
+  private static final int SCRIPT_COUNT = 2000;
+
+  private File file;
+
+  public void testRecordAndRead() throws Exception {
+    WebkitRecorder recorder = new WebkitRecorder(file);
+    recorder.recordOutbound("{\"id\":1,\"method\":\"Debugger.enable\"}");
+    recorder.recordInbound("{\"id\":1,\"result\":{}}");
+    recorder.recordInbound("{\"method\":\"Debugger.resumed\",\"params\":{\"\u00e9\":\"\u20ac\"}}");
+    recorder.close();
+
+    // Recording after close is ignored.
+    recorder.recordInbound("{}");
+
+    List<WebkitReplay.Frame> frames = WebkitReplay.read(file);
+
+    assertEquals(3, frames.size());
+    assertFalse(frames.get(0).isInbound());
+    assertEquals("{\"id\":1,\"method\":\"Debugger.enable\"}", frames.get(0).getText());
+    assertTrue(frames.get(1).isInbound());
+    assertEquals("{\"method\":\"Debugger.resumed\",\"params\":{\"\u00e9\":\"\u20ac\"}}", frames.get(
+        2).getText());
+    assertTrue(frames.get(1).getTime() <= frames.get(2).getTime());
+  }
+
+  public void testRecordConnection() throws Exception {
+    connect(createFrames(1));
+
+    WebkitRecorder recorder = new WebkitRecorder(file);
+    connection.setRecorder(recorder);
+
+    connection.getDebugger().resume();
+    replay.run(false);
+    assertTrue(connection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS));
+
+    connection.close();
+    recorder.close();
+
+    List<WebkitReplay.Frame> frames = WebkitReplay.read(file);
+
+    assertEquals(replay.getFrames().size() + 1, frames.size());
+    assertEquals(1, replay.getSentRequests().size());
+    assertTrue(replay.getSentRequests().get(0).contains("Debugger.resume"));
+  }
+
+  public void testReplayDebugger() throws Exception {
+    final List<WebkitScript> parsedScripts = new ArrayList<WebkitScript>();
+    final List<WebkitCallFrame> pausedFrames = new ArrayList<WebkitCallFrame>();
+    final PausedReasonType[] pausedReason = new PausedReasonType[1];
+
+    connect(createFrames(SCRIPT_COUNT));
+
+    connection.getDebugger().addDebuggerListener(new DebuggerListenerAdapter() {
+      @Override
+      public void debuggerPaused(PausedReasonType reason, List<WebkitCallFrame> frames,
+          WebkitRemoteObject exception) {
+        pausedReason[0] = reason;
+        pausedFrames.addAll(frames);
+      }
+
+      @Override
+      public void debuggerScriptParsed(WebkitScript script) {
+        parsedScripts.add(script);
+      }
+    });
+
+    replay.run(false);
+    assertTrue(connection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS));
+
+    // Notifications of a domain are handled in order.
+    assertEquals(SCRIPT_COUNT, parsedScripts.size());
+    for (int i = 0; i < SCRIPT_COUNT; i++) {
+      assertEquals(Integer.toString(i), parsedScripts.get(i).getScriptId());
+    }
+
+    assertEquals(SCRIPT_COUNT, connection.getDebugger().getAllScripts().size());
+    assertEquals("http://localhost/script7.js", connection.getDebugger().getScript("7").getUrl());
+
+    WebkitScript script = connection.getDebugger().getScript("7");
+    assertSame(script, connection.getDebugger().getScriptByUrl("http://localhost/script7.js"));
+    assertSame(script, connection.getDebugger().getScriptByUrlSuffix("/script7.js"));
+    assertSame(script, connection.getDebugger().getScriptByUrlSuffix("pt7.js"));
+    assertNull(connection.getDebugger().getScriptByUrl("script7.js"));
+    assertNull(connection.getDebugger().getScriptByUrlSuffix("script7"));
+
+    assertEquals(PausedReasonType.other, pausedReason[0]);
+    assertEquals(20, pausedFrames.size());
+    assertEquals("function19", pausedFrames.get(19).getFunctionName());
+    assertEquals(19, pausedFrames.get(19).getLocation().getLineNumber());
+  }
+
+  public void testReplayRealTime() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"method\":\"Debugger.resumed\"}"));
+    frames.add(new WebkitReplay.Frame(true, 200000, "{\"method\":\"Debugger.resumed\"}"));
+
+    connect(frames);
+
+    long start = System.nanoTime();
+    replay.run(true);
+
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+  }
+
+  public void testReplayResponses() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":1,\"result\":{\"scriptSource\":"
+        + "\"a();\"}}"));
+    frames.add(new WebkitReplay.Frame(true, 0, "{\"id\":2,\"error\":{\"message\":\"no script\"}}"));
+
+    connect(frames);
+
+    WebkitFuture<String> source1 = new WebkitFuture<String>();
+    WebkitFuture<String> source2 = new WebkitFuture<String>();
+    connection.getDebugger().getScriptSource("1", source1);
+    connection.getDebugger().getScriptSource("2", source2);
+
+    replay.run(false);
+
+    assertEquals("a();", source1.getResult(5, TimeUnit.SECONDS));
+    assertTrue(source2.get(5, TimeUnit.SECONDS).isError());
+
+    List<String> requests = replay.getSentRequests();
+    assertEquals(2, requests.size());
+    assertTrue(requests.get(0).contains("Debugger.getScriptSource"));
+  }
+
+  public void testRetainScripts() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createScriptParsed("1", "http://localhost/a.js", "1234"));
+    frames.add(createScriptParsed("2", "http://localhost/b.js", "5678"));
+
+    WebkitDebugger debugger = connection.getDebugger();
+
+    connect(frames);
+    replay.run(false);
+    assertTrue(connection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS));
+
+    WebkitScript script1 = debugger.getScript("1");
+    script1.setScriptSource("a();");
+
+    // The second script changed while the connection was away.
+    frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createScriptParsed("1", "http://localhost/a.js", "1234"));
+    frames.add(createScriptParsed("2", "http://localhost/b.js", "abcd"));
+
+    WebkitConnection newConnection = new WebkitConnection(connection);
+    newConnection.getDebugger().retainScripts(debugger);
+
+    replay = new WebkitReplay(frames);
+    replay.connect(newConnection);
+
+    try {
+      replay.run(false);
+      assertTrue(newConnection.getEventDispatcher().waitUntilIdle(5, TimeUnit.SECONDS));
+
+      assertSame(script1, newConnection.getDebugger().getScript("1"));
+      assertEquals("a();", newConnection.getDebugger().getScript("1").getScriptSource());
+
+      WebkitScript script2 = newConnection.getDebugger().getScript("2");
+      assertNotSame(debugger.getScript("2"), script2);
+      assertEquals("abcd", script2.getHash());
+    } finally {
+      newConnection.close();
+    }
+  }
+
+  public void testReplayTermination() throws Exception {
+    connect(new ArrayList<WebkitReplay.Frame>());
+
+    WebkitFuture<String> source = new WebkitFuture<String>();
+    connection.getDebugger().getScriptSource("1", source);
+
+    replay.close();
+
+    assertTrue(source.get(5, TimeUnit.SECONDS).isError());
+    assertFalse(connection.isConnected());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = File.createTempFile("recording", ".wip");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+
+    file.delete();
+  }
+
+  private List<WebkitReplay.Frame> createFrames(int scriptCount) {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    long time = 0;
+
+    for (int i = 0; i < scriptCount; i++) {
+      frames.add(new WebkitReplay.Frame(true, time++, "{\"method\":\"Debugger.scriptParsed\","
+          + "\"params\":{\"scriptId\":\"" + i + "\",\"url\":\"http://localhost/script" + i
+          + ".js\",\"startLine\":0,\"startColumn\":0,\"endLine\":100,\"endColumn\":0}}"));
+    }
+
+    StringBuilder callFrames = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      if (i > 0) {
+        callFrames.append(',');
+      }
+
+      callFrames.append("{\"callFrameId\":\"{\\\"ordinal\\\":" + i + "}\",\"functionName\":"
+          + "\"function" + i + "\",\"location\":{\"scriptId\":\"" + (i % scriptCount)
+          + "\",\"lineNumber\":" + i + ",\"columnNumber\":2},\"scopeChain\":[{\"type\":\"local\","
+          + "\"object\":{\"type\":\"object\",\"objectId\":\"scope" + i + "\"}}],"
+          + "\"this\":{\"type\":\"object\",\"objectId\":\"this" + i + "\"}}");
+    }
+
+    frames.add(new WebkitReplay.Frame(true, time++, "{\"method\":\"Debugger.paused\",\"params\":"
+        + "{\"callFrames\":[" + callFrames + "],\"reason\":\"other\"}}"));
+
+    return frames;
+  }
+
+  private WebkitReplay.Frame createScriptParsed(String scriptId, String url, String hash) {
+    return new WebkitReplay.Frame(true, 0, "{\"method\":\"Debugger.scriptParsed\",\"params\":"
+        + "{\"scriptId\":\"" + scriptId + "\",\"url\":\"" + url + "\",\"hash\":\"" + hash
+        + "\"}}");
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+/**
+ * A test case whose connection talks to a {@link WebkitReplay} instead of a browser.
+ */
+public abstract class WebkitReplayTestCase extends TestCase {
+  protected WebkitConnection connection;
+
+  protected WebkitReplay replay;
+
+  /**
+   * Connect the connection of the test to a replay of the given frames.
+   */
+  protected void connect(List<WebkitReplay.Frame> frames) {
+    replay = new WebkitReplay(frames);
+    replay.connect(connection);
+  }
+
+  /**
+   * Wait until the given number of requests is written, and return them.
+   */
+  protected List<JSONObject> getSentRequests(int count) throws Exception {
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while (replay.getSentRequests().size() < count && System.nanoTime() < end) {
+      Thread.sleep(10);
+    }
+
+    List<JSONObject> requests = new ArrayList<JSONObject>();
+
+    for (String request : replay.getSentRequests()) {
+      requests.add(new JSONObject(request));
+    }
+
+    assertEquals(count, requests.size());
+
+    return requests;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    connection = new WebkitConnection(new URI("ws://localhost:9222/devtools/page/1"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    connection.close();
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class WebkitRuntimeTest extends WebkitReplayTestCase {
+  private static final int ELEMENT_COUNT = 100;
+
+  private static WebkitRemoteObject createObject(String objectId) throws Exception {
+    return WebkitRemoteObject.createFrom(new JSONObject().put("type", "object").put(
+        "objectId",
+        objectId));
+  }
+
+  private static WebkitReplay.Frame createResponse(int id, Object result) throws Exception {
+    return new WebkitReplay.Frame(true, 0, new JSONObject().put("id", id).put(
+        "result",
+        new JSONObject().put("result", result)).toString());
+  }
+
+  public void testCallListLength() throws Exception {
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createResponse(1, new JSONObject().put("type", "number").put("value", 3)));
+    JSONObject exception = new JSONObject().put("type", "string").put("value", "TypeError");
+    frames.add(new WebkitReplay.Frame(true, 0, new JSONObject().put("id", 2).put(
+        "result",
+        new JSONObject().put("result", exception).put("wasThrown", true)).toString()));
+
+    connect(frames);
+
+    WebkitFuture<Integer> length = connection.getRuntime().callListLength("list");
+
+    // Callbacks added before and after the response are both notified.
+    WebkitFuture<Integer> before = new WebkitFuture<Integer>();
+    length.addCallback(before);
+
+    WebkitFuture<Integer> thrown = connection.getRuntime().callListLength("other");
+
+    replay.run(false);
+
+    assertEquals(3, length.getResult(10, TimeUnit.SECONDS).intValue());
+    assertEquals(3, before.getResult(10, TimeUnit.SECONDS).intValue());
+
+    WebkitFuture<Integer> after = new WebkitFuture<Integer>();
+    length.addCallback(after);
+    assertTrue(after.isDone());
+
+    // An exception thrown by the function fails the derived future.
+    WebkitResult<Integer> result = thrown.get(10, TimeUnit.SECONDS);
+    assertTrue(result.isError());
+    assertEquals("TypeError", result.getErrorMessage());
+
+    assertEquals(0, connection.getRuntime().callListLength(null).getResult().intValue());
+  }
+
+  public void testGetElements() throws Exception {
+    JSONArray properties = new JSONArray();
+
+    // Every other element is a hole.
+    for (int i = 0; i < ELEMENT_COUNT; i += 2) {
+      properties.put(new JSONObject().put("name", Integer.toString(i)).put(
+          "value",
+          new JSONObject().put("type", "number").put("value", i)));
+    }
+
+    properties.put(new JSONObject().put("name", "length").put(
+        "value",
+        new JSONObject().put("type", "number").put("value", ELEMENT_COUNT)));
+
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createResponse(1, new JSONObject().put("type", "object").put("subtype", "array").put(
+        "objectId",
+        "slice")));
+    frames.add(createResponse(2, properties));
+
+    connect(frames);
+
+    WebkitFuture<WebkitRemoteObject[]> future = new WebkitFuture<WebkitRemoteObject[]>();
+    connection.getRuntime().getElements(createObject("list"), 10, ELEMENT_COUNT, future);
+
+    replay.run(false);
+
+    WebkitRemoteObject[] elements = future.getResult(10, TimeUnit.SECONDS);
+
+    assertEquals(ELEMENT_COUNT, elements.length);
+    assertEquals("0", elements[0].getValue());
+    assertNull(elements[1]);
+    assertEquals("2", elements[2].getValue());
+
+    // Two round trips whatever the length, and the slice is released.
+    List<JSONObject> requests = getSentRequests(3);
+    assertEquals("Runtime.callFunctionOn", requests.get(0).getString("method"));
+    assertEquals("Runtime.getProperties", requests.get(1).getString("method"));
+    assertEquals("Runtime.releaseObject", requests.get(2).getString("method"));
+
+    JSONObject params = requests.get(0).getJSONObject("params");
+    assertEquals("list", params.getString("objectId"));
+    assertEquals(10, params.getJSONArray("arguments").getJSONObject(0).getInt("value"));
+    assertEquals(ELEMENT_COUNT, params.getJSONArray("arguments").getJSONObject(1).getInt("value"));
+    assertEquals("slice", requests.get(1).getJSONObject("params").getString("objectId"));
+    assertEquals("slice", requests.get(2).getJSONObject("params").getString("objectId"));
+  }
+
+  public void testPropertiesSnapshot() throws Exception {
+    JSONArray snapshot = new JSONArray();
+    snapshot.put(new JSONArray().put(
+        new JSONObject().put("name", "i").put("enumerable", true).put(
+            "value",
+            new JSONObject().put("type", "number").put("value", 1).put("description", "1"))).put(
+        new JSONObject().put("name", "o").put("enumerable", true).put(
+            "value",
+            new JSONObject().put("type", "object").put("className", "Object").put("ref", 0).put(
+                "properties",
+                new JSONArray().put(new JSONObject().put("name", "s").put("enumerable", true).put(
+                    "value",
+                    new JSONObject().put("type", "string").put("value", "a")))))));
+    // Too many properties for the second object.
+    snapshot.put(JSONObject.NULL);
+
+    List<WebkitReplay.Frame> frames = new ArrayList<WebkitReplay.Frame>();
+    frames.add(createResponse(1, new JSONObject().put("type", "object").put("subtype", "array").put(
+        "objectId",
+        "snapshot")));
+    frames.add(createResponse(2, new JSONArray().put(
+        new JSONObject().put("name", "0").put(
+            "value",
+            new JSONObject().put("type", "string").put("value", snapshot.toString()))).put(
+        new JSONObject().put("name", "1").put(
+            "value",
+            new JSONObject().put("type", "object").put("objectId", "object1"))).put(
+        new JSONObject().put("name", "length").put(
+            "value",
+            new JSONObject().put("type", "number").put("value", 2)))));
+
+    connect(frames);
+
+    List<WebkitRemoteObject> scopes = new ArrayList<WebkitRemoteObject>();
+    scopes.add(createObject("scope0"));
+    scopes.add(createObject("scope1"));
+
+    WebkitFuture<List<WebkitPropertyDescriptor[]>> future;
+    future = new WebkitFuture<List<WebkitPropertyDescriptor[]>>();
+    connection.getRuntime().getPropertiesSnapshot(scopes, 2, future);
+
+    replay.run(false);
+
+    List<WebkitPropertyDescriptor[]> properties = future.getResult(10, TimeUnit.SECONDS);
+
+    // One call describes all the scopes; the objects they refer to come with its result.
+    List<JSONObject> requests = getSentRequests(2);
+    assertEquals("Runtime.callFunctionOn", requests.get(0).getString("method"));
+    assertEquals("Runtime.getProperties", requests.get(1).getString("method"));
+
+    JSONObject params = requests.get(0).getJSONObject("params");
+    assertEquals("scope0", params.getString("objectId"));
+    assertEquals(2, params.getJSONArray("arguments").getJSONObject(0).getInt("value"));
+    assertEquals("scope1", params.getJSONArray("arguments").getJSONObject(2).getString("objectId"));
+    assertEquals("snapshot", requests.get(1).getJSONObject("params").getString("objectId"));
+
+    assertEquals(2, properties.size());
+    assertNull(properties.get(1));
+
+    WebkitPropertyDescriptor[] locals = properties.get(0);
+    assertEquals(2, locals.length);
+    assertEquals("i", locals[0].getName());
+    assertEquals("1", locals[0].getValue().getValue());
+    assertNull(locals[0].getValue().getPrefetchedProperties());
+
+    WebkitRemoteObject object = locals[1].getValue();
+    assertEquals("object1", object.getObjectId());
+    assertEquals(1, object.getPrefetchedProperties().length);
+    assertEquals("a", object.getPrefetchedProperties()[0].getValue().getValue());
+  }
+
+}
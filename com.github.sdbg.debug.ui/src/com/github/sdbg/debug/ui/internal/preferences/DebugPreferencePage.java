@@ -26,6 +26,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
@@ -44,6 +45,8 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
 
   private Text excludeFromLogicalStructureText;
 
+  private Spinner scopeSnapshotDepthSpinner;
+
 //  private Button defaultBrowserButton;
 //  private Text browserNameText;
 //  private Button selectBrowserButton;
@@ -69,6 +72,7 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     SDBGDebugCorePlugin.getPlugin().setUseSmartStepInOut(useSmartStepInOutButton.getSelection());
     SDBGDebugCorePlugin.getPlugin().setExcludeFromLogicalStructure(
         excludeFromLogicalStructureText.getText());
+    SDBGDebugCorePlugin.getPlugin().setScopeSnapshotDepth(scopeSnapshotDepthSpinner.getSelection());
 
 //    SDBGDebugCorePlugin.getPlugin().setBrowserPreferences(
 //        defaultBrowserButton.getSelection(),
@@ -122,6 +126,18 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     GridDataFactory.swtDefaults().span(2, 1).align(SWT.FILL, SWT.CENTER).applyTo(
         excludeFromLogicalStructureText);
 
+    Label scopeSnapshotDepthLabel = new Label(group, SWT.NONE);
+    scopeSnapshotDepthLabel.setText("Levels of variables to fetch when pausing (0 for none):");
+
+    scopeSnapshotDepthSpinner = new Spinner(group, SWT.BORDER);
+    scopeSnapshotDepthSpinner.setValues(
+        SDBGDebugCorePlugin.DEFAULT_SCOPE_SNAPSHOT_DEPTH,
+        0,
+        SDBGDebugCorePlugin.MAX_SCOPE_SNAPSHOT_DEPTH,
+        0,
+        1,
+        1);
+
 //    createBrowserConfig(composite, labelWidth);
 
     initFromPrefs();
@@ -198,6 +214,7 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     useSmartStepOverButton.setSelection(SDBGDebugCorePlugin.getPlugin().getUseSmartStepOver());
     useSmartStepInOutButton.setSelection(SDBGDebugCorePlugin.getPlugin().getUseSmartStepInOut());
     excludeFromLogicalStructureText.setText(SDBGDebugCorePlugin.getPlugin().getExcludeFromLogicalStructure());
+    scopeSnapshotDepthSpinner.setSelection(SDBGDebugCorePlugin.getPlugin().getScopeSnapshotDepth());
   }
 //
 //  private void setEnablement(boolean value) {
@@ -465,6 +465,7 @@ public class SDBGDebugModelPresentation implements IDebugModelPresentation,
         });
 
         try {
+          // The toString() call of a Webkit value times out on its own before this.
           latch.await(3, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
           return null;
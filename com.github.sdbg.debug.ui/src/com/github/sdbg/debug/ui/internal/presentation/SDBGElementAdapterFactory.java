@@ -14,16 +14,18 @@
 
 package com.github.sdbg.debug.ui.internal.presentation;
 
+import com.github.sdbg.debug.core.model.ISDBGStackFrame;
 import com.github.sdbg.debug.core.model.ISDBGVariable;
 
 import org.eclipse.core.runtime.IAdapterFactory;
 import org.eclipse.core.runtime.IAdapterManager;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.debug.core.model.IExpression;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IElementContentProvider;
 import org.eclipse.debug.internal.ui.viewers.model.provisional.IElementLabelProvider;
 
 /**
- * An adaptor factory to map from SDBG debug elements to presentation label providers.
+ * An adaptor factory to map from SDBG debug elements to presentation label and content providers.
  */
 @SuppressWarnings("restriction")
 public class SDBGElementAdapterFactory implements IAdapterFactory {
@@ -32,12 +34,16 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
   private static IElementLabelProvider VARIABLE_LABEL_PROVIDER = new SDBGVariableLabelProvider();
   private static IElementLabelProvider EXPRESSION_LABEL_PROVIDER = new SDBGExpressionLabelProvider();
 
+  private static IElementContentProvider VARIABLE_CONTENT_PROVIDER = new SDBGVariableContentProvider();
+  private static IElementContentProvider STACK_FRAME_CONTENT_PROVIDER = new SDBGStackFrameContentProvider();
+
   public static void init() {
     SDBGElementAdapterFactory factory = new SDBGElementAdapterFactory();
 
     IAdapterManager manager = Platform.getAdapterManager();
     manager.registerAdapters(factory, ISDBGVariable.class);
     manager.registerAdapters(factory, IExpression.class);
+    manager.registerAdapters(factory, ISDBGStackFrame.class);
   }
 
   public SDBGElementAdapterFactory() {
@@ -52,6 +58,12 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
       } else if (adaptableObject instanceof IExpression) {
         return EXPRESSION_LABEL_PROVIDER;
       }
+    } else if (adapterType.equals(IElementContentProvider.class)) {
+      if (adaptableObject instanceof ISDBGVariable) {
+        return VARIABLE_CONTENT_PROVIDER;
+      } else if (adaptableObject instanceof ISDBGStackFrame) {
+        return STACK_FRAME_CONTENT_PROVIDER;
+      }
     }
 
     // If we don't return the default debug adapter we won't be able to expand any variables.
@@ -61,6 +73,6 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
   @SuppressWarnings("rawtypes")
   @Override
   public Class[] getAdapterList() {
-    return new Class[] {IElementLabelProvider.class};
+    return new Class[] {IElementLabelProvider.class, IElementContentProvider.class};
   }
 }
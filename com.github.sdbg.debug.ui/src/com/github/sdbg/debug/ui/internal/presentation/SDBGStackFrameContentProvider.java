@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.ui.internal.presentation;
+
+import com.github.sdbg.debug.core.model.ISDBGStackFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.debug.internal.ui.model.elements.StackFrameContentProvider;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenCountUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IHasChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IViewerUpdate;
+import org.eclipse.debug.ui.IDebugUIConstants;
+
+/**
+ * Provides the variables of SDBG stack frames as the replies of the browser arrive, instead of
+ * parking a job thread on each pending request.
+ */
+@SuppressWarnings("restriction")
+public class SDBGStackFrameContentProvider extends StackFrameContentProvider {
+  public SDBGStackFrameContentProvider() {
+  }
+
+  @Override
+  public void update(IChildrenCountUpdate[] updates) {
+    List<IChildrenCountUpdate> remaining = new ArrayList<IChildrenCountUpdate>();
+
+    for (IChildrenCountUpdate update : updates) {
+      ISDBGStackFrame frame = getFrame(update);
+
+      if (frame != null) {
+        frame.computeVariables(VariablesUpdates.childCount(update));
+      } else {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      super.update(remaining.toArray(new IChildrenCountUpdate[remaining.size()]));
+    }
+  }
+
+  @Override
+  public void update(IChildrenUpdate[] updates) {
+    List<IChildrenUpdate> remaining = new ArrayList<IChildrenUpdate>();
+
+    for (IChildrenUpdate update : updates) {
+      ISDBGStackFrame frame = getFrame(update);
+
+      if (frame != null) {
+        frame.computeVariables(VariablesUpdates.children(update));
+      } else {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      super.update(remaining.toArray(new IChildrenUpdate[remaining.size()]));
+    }
+  }
+
+  @Override
+  public void update(IHasChildrenUpdate[] updates) {
+    List<IHasChildrenUpdate> remaining = new ArrayList<IHasChildrenUpdate>();
+
+    for (IHasChildrenUpdate update : updates) {
+      ISDBGStackFrame frame = getFrame(update);
+
+      if (frame != null) {
+        frame.computeVariables(VariablesUpdates.hasChildren(update));
+      } else {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      super.update(remaining.toArray(new IHasChildrenUpdate[remaining.size()]));
+    }
+  }
+
+  /**
+   * @return the frame whose variables are the children of the updated element, if they are shown
+   *         in the Variables view; the Registers view is left to the default provider
+   */
+  private ISDBGStackFrame getFrame(IViewerUpdate update) {
+    if (IDebugUIConstants.ID_VARIABLE_VIEW.equals(update.getPresentationContext().getId())
+        && update.getElement() instanceof ISDBGStackFrame) {
+      return (ISDBGStackFrame) update.getElement();
+    } else {
+      return null;
+    }
+  }
+
+}
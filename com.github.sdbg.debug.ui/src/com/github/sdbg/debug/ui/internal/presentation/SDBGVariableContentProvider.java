@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.ui.internal.presentation;
+
+import com.github.sdbg.debug.core.model.ISDBGIndexedValue;
+import com.github.sdbg.debug.core.model.ISDBGIndexedValue.ISizeCallback;
+import com.github.sdbg.debug.core.model.ISDBGValue;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.model.IDebugElement;
+import org.eclipse.debug.core.model.IIndexedValue;
+import org.eclipse.debug.core.model.IValue;
+import org.eclipse.debug.core.model.IVariable;
+import org.eclipse.debug.internal.ui.model.elements.VariableContentProvider;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenCountUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IPresentationContext;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IViewerUpdate;
+import org.eclipse.debug.internal.ui.views.variables.IndexedVariablePartition;
+import org.eclipse.jface.viewers.TreePath;
+
+/**
+ * Provides the children of SDBG variables as the replies of the browser arrive, instead of parking
+ * a job thread on each pending request.
+ * <p>
+ * Lists are split into the same partitions as the default provider splits them into; the length of
+ * a list is fetched once, and the elements only for the range being shown. Logical structures are
+ * computed in a job of their own once the variables of the value are fetched, as the structure
+ * delegates may still wait for the browser.
+ */
+@SuppressWarnings("restriction")
+public class SDBGVariableContentProvider extends VariableContentProvider {
+  public SDBGVariableContentProvider() {
+  }
+
+  @Override
+  public void update(IChildrenCountUpdate[] updates) {
+    List<IChildrenCountUpdate> remaining = new ArrayList<IChildrenCountUpdate>();
+
+    for (final IChildrenCountUpdate update : updates) {
+      final IValue value = getValue(update);
+
+      if (value instanceof ISDBGValue && isShowLogicalStructure(update.getPresentationContext())) {
+        updateLogicalChildren(
+            update,
+            (ISDBGValue) value,
+            VariablesUpdates.childCount(update),
+            new Runnable() {
+              @Override
+              public void run() {
+                updateValueChildCount(update, value);
+              }
+            });
+      } else if (!updateValueChildCount(update, value)) {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      super.update(remaining.toArray(new IChildrenCountUpdate[remaining.size()]));
+    }
+  }
+
+  @Override
+  public void update(IChildrenUpdate[] updates) {
+    List<IChildrenUpdate> remaining = new ArrayList<IChildrenUpdate>();
+
+    for (final IChildrenUpdate update : updates) {
+      final IValue value = getValue(update);
+
+      if (value instanceof ISDBGValue && isShowLogicalStructure(update.getPresentationContext())) {
+        updateLogicalChildren(
+            update,
+            (ISDBGValue) value,
+            VariablesUpdates.children(update),
+            new Runnable() {
+              @Override
+              public void run() {
+                updateValueChildren(update, value);
+              }
+            });
+      } else if (!updateValueChildren(update, value)) {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      super.update(remaining.toArray(new IChildrenUpdate[remaining.size()]));
+    }
+  }
+
+  /**
+   * Pass the size of the given list or partition on; only a list has to be asked for it.
+   */
+  private void computeSize(IIndexedValue value, ISizeCallback callback) {
+    if (value instanceof ISDBGIndexedValue) {
+      ((ISDBGIndexedValue) value).computeSize(callback);
+    } else {
+      int size = 0;
+
+      try {
+        size = value.getSize();
+      } catch (DebugException e) {
+        // Show the partition as empty.
+      }
+
+      callback.sizeComputed(size);
+    }
+  }
+
+  /**
+   * @return the number of children of the given list or partition of the given size: its
+   *         partitions, or its elements if it is not partitioned
+   */
+  private int getChildCount(IIndexedValue value, int size) {
+    if (size == 0) {
+      return 0;
+    }
+
+    int partitionSize = computeParitionSize(value);
+
+    return partitionSize > 1 ? (size + partitionSize - 1) / partitionSize : size;
+  }
+
+  /**
+   * @return the SDBG list which the updated element holds, or holds a partition of
+   */
+  private ISDBGIndexedValue getList(IViewerUpdate update) {
+    TreePath path = update.getElementPath();
+
+    for (int i = path.getSegmentCount() - 1; i >= 0; i--) {
+      if (!(path.getSegment(i) instanceof IVariable)) {
+        return null;
+      }
+
+      try {
+        IValue value = ((IVariable) path.getSegment(i)).getValue();
+
+        if (value instanceof ISDBGIndexedValue) {
+          return (ISDBGIndexedValue) value;
+        } else if (!(value instanceof IIndexedValue)) {
+          return null;
+        }
+      } catch (DebugException e) {
+        return null;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @return the value whose variables are the children of the updated element, if they can be
+   *         fetched in the background
+   */
+  private IValue getValue(IViewerUpdate update) {
+    IPresentationContext context = update.getPresentationContext();
+
+    if (!supportsContext(context) || !(update.getElement() instanceof IVariable)) {
+      return null;
+    }
+
+    try {
+      return ((IVariable) update.getElement()).getValue();
+    } catch (DebugException e) {
+      // Leave it to the default provider.
+    }
+
+    return null;
+  }
+
+  /**
+   * Complete the given update with the number of children of the given value, if they can be
+   * fetched in the background.
+   * 
+   * @return whether the update is taken care of
+   */
+  private boolean updateValueChildCount(IChildrenCountUpdate update, IValue value) {
+    if (value instanceof IIndexedValue && getList(update) != null) {
+      updateChildCount(update, (IIndexedValue) value);
+    } else if (value instanceof ISDBGValue) {
+      ((ISDBGValue) value).computeVariables(VariablesUpdates.childCount(update));
+    } else {
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Complete the given update with the children of the given value, if they can be fetched in the
+   * background.
+   * 
+   * @return whether the update is taken care of
+   */
+  private boolean updateValueChildren(IChildrenUpdate update, IValue value) {
+    ISDBGIndexedValue list = value instanceof IIndexedValue ? getList(update) : null;
+
+    if (list != null) {
+      updateChildren(update, (IIndexedValue) value, list);
+    } else if (value instanceof ISDBGValue) {
+      ((ISDBGValue) value).computeVariables(VariablesUpdates.children(update));
+    } else {
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Complete the given update with the children of the logical structure of the given value. The
+   * variables of the value are fetched first, without blocking, unless it is a list, whose elements
+   * are only fetched by range; the structure delegate then runs in a job, so that no viewer thread
+   * waits for it. If no structure applies to the value, its own children are provided by the given
+   * fallback instead, and lists keep their partitions.
+   */
+  private void updateLogicalChildren(final IViewerUpdate update, final ISDBGValue value,
+      final IVariablesCallback callback, final Runnable fallback) {
+    final Job job = new Job("Logical structure update") {
+      @Override
+      protected IStatus run(IProgressMonitor monitor) {
+        if (update.isCanceled()) {
+          update.done();
+          return Status.OK_STATUS;
+        }
+
+        try {
+          IValue logicalValue = getLogicalValue(value, update.getPresentationContext());
+
+          if (logicalValue == value) {
+            fallback.run();
+          } else if (logicalValue instanceof ISDBGValue) {
+            ((ISDBGValue) logicalValue).computeVariables(callback);
+          } else {
+            callback.variablesComputed(logicalValue.getVariables());
+          }
+        } catch (CoreException e) {
+          update.setStatus(e.getStatus());
+          update.done();
+        }
+
+        return Status.OK_STATUS;
+      }
+    };
+
+    job.setSystem(true);
+
+    if (value instanceof ISDBGIndexedValue) {
+      job.schedule();
+    } else {
+      value.computeVariables(new IVariablesCallback() {
+        @Override
+        public void variablesComputed(IVariable[] variables) {
+          job.schedule();
+        }
+      });
+    }
+  }
+
+  private void updateChildCount(final IChildrenCountUpdate update, final IIndexedValue value) {
+    computeSize(value, new ISizeCallback() {
+      @Override
+      public void sizeComputed(int size) {
+        if (!update.isCanceled()) {
+          update.setChildCount(getChildCount(value, size));
+        }
+
+        update.done();
+      }
+    });
+  }
+
+  /**
+   * Complete the given update with partitions of the given list or partition, or with its elements
+   * in the range of the update once they are fetched.
+   */
+  private void updateChildren(final IChildrenUpdate update, final IIndexedValue value,
+      final ISDBGIndexedValue list) {
+    computeSize(value, new ISizeCallback() {
+      @Override
+      public void sizeComputed(int size) {
+        int offset = value.getInitialOffset();
+        int partitionSize = size == 0 ? 1 : computeParitionSize(value);
+
+        if (partitionSize == 1) {
+          int length = Math.min(update.getLength(), size - update.getOffset());
+
+          list.computeVariables(
+              offset + update.getOffset(),
+              length,
+              VariablesUpdates.childrenRange(update));
+          return;
+        }
+
+        if (!update.isCanceled()) {
+          int end = Math.min(update.getOffset() + update.getLength(), getChildCount(value, size));
+
+          for (int i = update.getOffset(); i < end; i++) {
+            int start = i * partitionSize;
+
+            update.setChild(new IndexedVariablePartition(
+                (IDebugElement) update.getElement(),
+                value,
+                offset + start,
+                Math.min(partitionSize, size - start)), i);
+          }
+        }
+
+        update.done();
+      }
+    });
+  }
+
+}
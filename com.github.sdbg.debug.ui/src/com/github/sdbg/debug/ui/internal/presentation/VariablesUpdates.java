@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.ui.internal.presentation;
+
+import com.github.sdbg.debug.core.model.IVariablesCallback;
+
+import org.eclipse.debug.core.model.IVariable;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenCountUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IHasChildrenUpdate;
+
+/**
+ * Callbacks completing the viewer updates for the children of an element, once its variables are
+ * fetched; no thread waits for them in the meantime.
+ */
+@SuppressWarnings("restriction")
+class VariablesUpdates {
+  static IVariablesCallback childCount(final IChildrenCountUpdate update) {
+    return new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] variables) {
+        if (!update.isCanceled()) {
+          update.setChildCount(variables.length);
+        }
+
+        update.done();
+      }
+    };
+  }
+
+  static IVariablesCallback children(final IChildrenUpdate update) {
+    return new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] variables) {
+        if (!update.isCanceled()) {
+          int end = Math.min(update.getOffset() + update.getLength(), variables.length);
+
+          for (int i = update.getOffset(); i < end; i++) {
+            update.setChild(variables[i], i);
+          }
+        }
+
+        update.done();
+      }
+    };
+  }
+
+  /**
+   * Completes the given update with the variables of its own range, the first of which is the
+   * child at the offset of the update.
+   */
+  static IVariablesCallback childrenRange(final IChildrenUpdate update) {
+    return new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] variables) {
+        if (!update.isCanceled()) {
+          int length = Math.min(update.getLength(), variables.length);
+
+          for (int i = 0; i < length; i++) {
+            update.setChild(variables[i], update.getOffset() + i);
+          }
+        }
+
+        update.done();
+      }
+    };
+  }
+
+  static IVariablesCallback hasChildren(final IHasChildrenUpdate update) {
+    return new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] variables) {
+        if (!update.isCanceled()) {
+          update.setHasChilren(variables.length > 0);
+        }
+
+        update.done();
+      }
+    };
+  }
+
+  private VariablesUpdates() {
+  }
+
+}
@@ -25,9 +25,19 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.debug.core.DebugEvent;
 import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
+import org.eclipse.debug.core.model.IDebugElement;
+import org.eclipse.debug.core.model.IDebugTarget;
 import org.eclipse.debug.core.model.ILogicalStructureTypeDelegate;
 import org.eclipse.debug.core.model.ILogicalStructureTypeDelegate2;
 import org.eclipse.debug.core.model.IValue;
@@ -40,6 +50,9 @@ import org.eclipse.debug.core.model.IVariable;
  * variables). TODO: In future, implement logical structures for maps and collections as in
  * 
  * @skybrian's superdebug GWT module (see issue #6)
+ * <p>
+ * The translation of a value is remembered by its object id until its debug target resumes, as
+ * the UI asks for the same values many times per suspension.
  */
 public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
     ILogicalStructureTypeDelegate2, ISDBGLogicalStructureTypeExtensions {
@@ -162,7 +175,45 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
     boolean matches(String name);
   }
 
+  /**
+   * What is known about a value of the current suspension.
+   */
+  private static class ValueInfo {
+    volatile Boolean javaClass;
+    volatile Boolean javaObject;
+    volatile boolean longComputed;
+    volatile Long longValue;
+    volatile IVariable[] translated;
+  }
+
+  private ConcurrentMap<IDebugTarget, ConcurrentMap<String, ValueInfo>> valueInfos = new ConcurrentHashMap<IDebugTarget, ConcurrentMap<String, ValueInfo>>();
+
+  private volatile boolean excludePatternCompiled;
+  private volatile Pattern excludePattern;
+
   public GWTSDMStructureType() {
+    DebugPlugin.getDefault().addDebugEventListener(new IDebugEventSetListener() {
+      @Override
+      public void handleDebugEvents(DebugEvent[] events) {
+        for (DebugEvent event : events) {
+          if ((event.getKind() == DebugEvent.RESUME || event.getKind() == DebugEvent.TERMINATE)
+              && event.getSource() instanceof IDebugElement) {
+            valueInfos.remove(((IDebugElement) event.getSource()).getDebugTarget());
+          }
+        }
+      }
+    });
+
+    SDBGDebugCorePlugin.getPlugin().getPrefs().addPreferenceChangeListener(
+        new IPreferenceChangeListener() {
+          @Override
+          public void preferenceChange(PreferenceChangeEvent event) {
+            if (SDBGDebugCorePlugin.PREFS_EXCLUDE_FROM_LOGICAL_STRUCTURE.equals(event.getKey())) {
+              excludePatternCompiled = false;
+              valueInfos.clear();
+            }
+          }
+        });
   }
 
   @Override
@@ -179,6 +230,11 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
 
     boolean javaObject = isJavaObject(sValue);
     if (javaObject || sValue.isScope()) {
+      ValueInfo info = getValueInfo(sValue);
+      if (info != null && info.translated != null) {
+        return new GWTSDMValue(javaObject, sValue, info.translated);
+      }
+
       List<IVariable> translated = new ArrayList<IVariable>();
 
       if (javaObject) {
@@ -198,7 +254,12 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
         }
       }
 
-      return new GWTSDMValue(javaObject, sValue, translated.toArray(new IVariable[0]));
+      IVariable[] variables = translated.toArray(new IVariable[translated.size()]);
+      if (info != null) {
+        info.translated = variables;
+      }
+
+      return new GWTSDMValue(javaObject, sValue, variables);
     } else {
       Long longValue = getLong(sValue);
       if (longValue != null) {
@@ -254,6 +315,43 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
     }
   }
 
+  private Long computeLong(ISDBGValue value) throws DebugException {
+    if (!value.isObject() || value.isScope()) {
+      return null;
+    } else {
+      IVariable[] variables = value.getVariables();
+      if (variables.length != 4) {
+        return null;
+      }
+
+      long l = 0;
+      for (IVariable var : variables) {
+        String name = var.getName();
+        if (!name.equals("__proto__")) {
+          if (!name.equals("h") && !name.equals("m") && !name.equals("l")) {
+            return null;
+          }
+
+          IValue v = var.getValue();
+          if (!(value instanceof ISDBGValue)) {
+            return null;
+          }
+
+          ISDBGValue sv = (ISDBGValue) v;
+          Object rawValue = sv.getRawValue();
+          if (!(rawValue instanceof Number)) {
+            return null;
+          }
+
+          long ll = ((Number) rawValue).longValue();
+          l |= ll << (name.equals("h") ? 44 : name.equals("m") ? 22 : 0);
+        }
+      }
+
+      return l;
+    }
+  }
+
   // Returns all properties which look like Java fields of the supplied value
   //
   // The supplied value is assumed to be a Java object, i.e. isJavaObject(value) should hold true
@@ -284,41 +382,43 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
     }
   }
 
-  private Long getLong(ISDBGValue value) throws DebugException {
-    if (!value.isObject() || value.isScope()) {
-      return null;
-    } else {
-      IVariable[] variables = value.getVariables();
-      if (variables.length != 4) {
-        return null;
+  // Returns the compiled exclusion pattern, or null if nothing is excluded from the logical
+  // structure. The pattern is only compiled again when its preference changes
+  private Pattern getExcludePattern() {
+    if (!excludePatternCompiled) {
+      // Marked before reading the preference, so that a concurrent change is not lost
+      excludePatternCompiled = true;
+
+      Pattern pattern = null;
+      String excludeFromLogicalStructureStr = SDBGDebugCorePlugin.getPlugin().getExcludeFromLogicalStructure();
+      if (excludeFromLogicalStructureStr != null
+          && excludeFromLogicalStructureStr.trim().length() > 0) {
+        try {
+          pattern = Pattern.compile(excludeFromLogicalStructureStr);
+        } catch (PatternSyntaxException e) {
+          SDBGDebugCorePlugin.logError(e);
+        }
       }
 
-      long l = 0;
-      for (IVariable var : variables) {
-        String name = var.getName();
-        if (!name.equals("__proto__")) {
-          if (!name.equals("h") && !name.equals("m") && !name.equals("l")) {
-            return null;
-          }
-
-          IValue v = var.getValue();
-          if (!(value instanceof ISDBGValue)) {
-            return null;
-          }
+      excludePattern = pattern;
+    }
 
-          ISDBGValue sv = (ISDBGValue) v;
-          Object rawValue = sv.getRawValue();
-          if (!(rawValue instanceof Number)) {
-            return null;
-          }
+    return excludePattern;
+  }
 
-          long ll = ((Number) rawValue).longValue();
-          l |= ll << (name.equals("h") ? 44 : name.equals("m") ? 22 : 0);
-        }
-      }
+  private Long getLong(ISDBGValue value) throws DebugException {
+    ValueInfo info = getValueInfo(value);
+    if (info != null && info.longComputed) {
+      return info.longValue;
+    }
 
-      return l;
+    Long result = computeLong(value);
+    if (info != null) {
+      info.longValue = result;
+      info.longComputed = true;
     }
+
+    return result;
   }
 
   private IVariable getOwnProperty(IValue value, Matcher matcher) throws DebugException {
@@ -335,6 +435,36 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
     return getOwnProperty(value, new ExactMatcher(property));
   }
 
+  // Returns what is known about the supplied value in the current suspension, or null if the value
+  // has no object id to remember it by
+  private ValueInfo getValueInfo(ISDBGValue value) {
+    String id = value.getObjectId();
+    IDebugTarget target = value.getDebugTarget();
+    if (id == null || target == null) {
+      return null;
+    }
+
+    ConcurrentMap<String, ValueInfo> infos = valueInfos.get(target);
+    if (infos == null) {
+      infos = new ConcurrentHashMap<String, ValueInfo>();
+      ConcurrentMap<String, ValueInfo> existing = valueInfos.putIfAbsent(target, infos);
+      if (existing != null) {
+        infos = existing;
+      }
+    }
+
+    ValueInfo info = infos.get(id);
+    if (info == null) {
+      info = new ValueInfo();
+      ValueInfo existing = infos.putIfAbsent(id, info);
+      if (existing != null) {
+        info = existing;
+      }
+    }
+
+    return info;
+  }
+
   private boolean hasGWTSuffix(String name) {
     return name.endsWith("_g$");
   }
@@ -348,10 +478,10 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
       return false;
     }
 
-    String excludeFromLogicalStructureStr = SDBGDebugCorePlugin.getPlugin().getExcludeFromLogicalStructure();
-    if (excludeFromLogicalStructureStr != null
-        && excludeFromLogicalStructureStr.trim().length() > 0) {
-      return Pattern.matches(excludeFromLogicalStructureStr, value.getReferenceTypeName());
+    Pattern pattern = getExcludePattern();
+    if (pattern != null) {
+      String referenceTypeName = value.getReferenceTypeName();
+      return referenceTypeName != null && pattern.matcher(referenceTypeName).matches();
     } else {
       return false;
     }
@@ -370,21 +500,44 @@ public class GWTSDMStructureType implements ILogicalStructureTypeDelegate,
   }
 
   private boolean isJavaClass(ISDBGValue value) throws DebugException {
-    return value.isObject() && hasOwnProperty(value, new Matcher() {
+    ValueInfo info = getValueInfo(value);
+    if (info != null && info.javaClass != null) {
+      return info.javaClass;
+    }
+
+    boolean result = value.isObject() && hasOwnProperty(value, new Matcher() {
       @Override
       public boolean matches(String name) {
         return isGWTClass(name);
       }
     });
+
+    if (info != null) {
+      info.javaClass = result;
+    }
+
+    return result;
   }
 
   private boolean isJavaObject(ISDBGValue value) throws DebugException {
+    ValueInfo info = getValueInfo(value);
+    if (info != null && info.javaObject != null) {
+      return info.javaObject;
+    }
+
+    boolean result;
     if (value.isObject() && !value.isScope()) {
       IVariable proto = getOwnProperty(value, "__proto__");
-      return proto instanceof ISDBGVariable && isJavaClass((ISDBGValue) proto.getValue());
+      result = proto instanceof ISDBGVariable && isJavaClass((ISDBGValue) proto.getValue());
     } else {
-      return false;
+      result = false;
     }
+
+    if (info != null) {
+      info.javaObject = result;
+    }
+
+    return result;
   }
 
   private String removeGWTSuffix(String name) {